@@ -1,10 +1,10 @@
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.FileWriter;
 import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.Scanner;
+import java.nio.file.Paths;
+import java.util.Map;
 
 import plc.project.*;
 
@@ -25,48 +25,61 @@ public class Harness {
     public static void main(String[] args) {
         String source_file = args[0];
         String java_file = new String("Main.java");
-        String source = new String();
-        Scanner scanner;
+        CharSequence source = new String();
         String javac = new String("javac Main.java");
         String java = new String("java Main");
 
         System.out.println("==> Generating Java source from:  " + source_file);
         
         try {
-			File file = new File(source_file);
-			scanner = new Scanner(file);
-			StringBuilder source_contents = new StringBuilder((int) file.length());
-			
-			while (scanner.hasNextLine()) {
-				source_contents.append(scanner.nextLine() + System.lineSeparator()); 
-			}
-            source = source_contents.toString();
-            scanner.close();            
+            source = SourceFile.map(Paths.get(source_file));
 		} catch (IOException ioe) {}
         
-        Lexer lexer = new Lexer(source);
-        System.out.println(" -> Lexing Complete");
+        AstCache cache = new AstCache(Paths.get(".plc-cache"));
+        Ast.Source ast = cache.get(source);
+        if (ast != null) {
+            System.out.println(" -> Loaded Cached AST");
+        } else {
+            Lexer lexer = new Lexer(source);
+            System.out.println(" -> Lexing Complete");
 
-        Parser parser = new Parser(lexer.lex());
-        Ast ast = parser.parseSource();
-        System.out.println(" -> Parsing Complete");
+            Parser parser = new Parser(lexer.lex());
+            ast = parser.parseSourceParallel();
+            System.out.println(" -> Parsing Complete");
+
+            try {
+                cache.put(source, ast);
+            } catch (IOException ioe) {}
+        }
         
         Analyzer analyzer = new Analyzer(null);
         analyzer.visit(ast);
         System.out.println(" -> Analyzing Complete");
         
+        String generated = SourceCompiler.generate(ast);
         try {
             FileWriter fw = new FileWriter(java_file);
             PrintWriter pw = new PrintWriter(fw);
-
-            Generator generator = new Generator(pw);
-            generator.visit(ast);            
+            pw.write(generated);
             pw.flush();
             pw.close();
             System.out.println(" -> Generating Complete");
 
         } catch (IOException ioe) {}
 
+        SourceCompiler compiler = new SourceCompiler(Paths.get(".plc-cache"));
+        Map<String, byte[]> classes = compiler.get(generated);
+        if (classes != null) {
+            System.out.println(" -> Loaded Cached Classes");
+        } else {
+            classes = compiler.compile(generated);
+            System.out.println(" -> Compiling Complete");
+        }
+
+        System.out.println();
+        System.out.println("==> Running " + java_file);
+        int exit = SourceCompiler.run(classes);
+        System.out.println(" -> Exited with " + exit);
         System.out.println();
     }
 }
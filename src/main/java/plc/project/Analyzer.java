@@ -5,6 +5,7 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Collectors;
 
 /**
@@ -23,6 +24,14 @@ public final class Analyzer implements Ast.Visitor<Void> {
         scope.defineFunction("print", "System.out.println", Arrays.asList(Environment.Type.ANY), Environment.Type.NIL, args -> Environment.NIL);
     }
 
+    /**
+     * Creates an analyzer for the body of a single function, see check.
+     */
+    private Analyzer(Scope scope, Ast.Function function) {
+        this.scope = scope;
+        this.function = function;
+    }
+
     public Scope getScope() {
         return scope;
     }
@@ -38,8 +47,8 @@ public final class Analyzer implements Ast.Visitor<Void> {
            }
 
               if (!ast.getFunctions().isEmpty()) {
+                  analyze(ast.getFunctions());
                   for (Ast.Function function : ast.getFunctions()) {
-                    visit(function);
                     if (function.getName().equals("main") && function.getParameters().isEmpty() && function.getReturnTypeName().get().equals("Integer")) {
                          mainExists = true;
                     }
@@ -82,41 +91,94 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
 
         try {
-            List<Environment.Type> paramTypes = new ArrayList<>();
-            if (!ast.getParameterTypeNames().isEmpty()) {
-                ast.getParameterTypeNames().forEach(type -> paramTypes.add(Environment.getType(type))); // this obviously collects paramtypes and adds them to a list
-            }
-
-            if (ast.getReturnTypeName().isPresent()) {
-                retType = Environment.getType(ast.getReturnTypeName().get());
-            }
-            else {
-                retType = Environment.Type.NIL;
-            }
+            declare(ast);
+            check(ast);
+        }
+        catch (RuntimeException e) {
+            throw new RuntimeException(e.getMessage());
+            //System.out.println("caught an error: " + e.getMessage());
+        }
 
-            scope.defineFunction(ast.getName(), ast.getName(), paramTypes, retType, args -> Environment.NIL);
+        return null;
+    }
 
-            if (!ast.getStatements().isEmpty()) {
-                for (Ast.Statement statement : ast.getStatements()) {
-                    try {
-                        scope = new Scope(scope);
-                        visit(statement);
-                    }
-                    finally {
-                        scope = scope.getParent();
-                    }
+    /**
+     * Analyzes the functions of a source in two phases. The signatures are
+     * defined first, in order, after which the scope is only read, so the
+     * bodies are then checked in parallel on the common fork-join pool, each
+     * by an analyzer with its own scopes and state (and touching only its
+     * own part of the tree). Functions can therefore call functions defined
+     * after them. Errors are collected by function and the first in source
+     * order is thrown, so which is reported doesn't depend on scheduling.
+     */
+    private void analyze(List<Ast.Function> functions) {
+        RuntimeException[] errors = new RuntimeException[functions.size()];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int i = 0; i < functions.size(); i++) {
+            Ast.Function function = functions.get(i);
+            try {
+                declare(function);
+            } catch (RuntimeException e) {
+                errors[i] = new RuntimeException(e.getMessage());
+                continue;
+            }
+            int index = i;
+            tasks.add(ForkJoinTask.adapt(() -> {
+                try {
+                    new Analyzer(scope, function).check(function);
+                } catch (RuntimeException e) {
+                    errors[index] = new RuntimeException(e.getMessage());
                 }
+            }));
+        }
+        if (tasks.size() == 1) {
+            tasks.get(0).invoke(); // not worth handing to the pool
+        } else {
+            ForkJoinTask.invokeAll(tasks);
+        }
+        for (RuntimeException error : errors) {
+            if (error != null) {
+                throw error;
             }
+        }
+    }
 
-            ast.setFunction(scope.lookupFunction(ast.getName(), ast.getParameterTypeNames().size()));
+    /**
+     * Defines the signature of a function in the scope.
+     */
+    private void declare(Ast.Function ast) {
+        List<Environment.Type> paramTypes = new ArrayList<>();
+        if (!ast.getParameterTypeNames().isEmpty()) {
+            ast.getParameterTypeNames().forEach(type -> paramTypes.add(Environment.getType(type))); // this obviously collects paramtypes and adds them to a list
+        }
 
+        Environment.Type returnType;
+        if (ast.getReturnTypeName().isPresent()) {
+            returnType = Environment.getType(ast.getReturnTypeName().get());
         }
-        catch (RuntimeException e) {
-            throw new RuntimeException(e.getMessage());
-            //System.out.println("caught an error: " + e.getMessage());
+        else {
+            returnType = Environment.Type.NIL;
         }
 
-        return null;
+        ast.setFunction(scope.defineFunction(ast.getName(), ast.getName(), paramTypes, returnType, args -> Environment.NIL));
+    }
+
+    /**
+     * Checks the body of a function, which must have been declared.
+     */
+    private void check(Ast.Function ast) {
+        retType = ast.getFunction().getReturnType();
+        if (!ast.getStatements().isEmpty()) {
+            for (Ast.Statement statement : ast.getStatements()) {
+                try {
+                    scope = new Scope(scope);
+                    visit(statement);
+                }
+                finally {
+                    scope = scope.getParent();
+                }
+            }
+        }
     }
 
     @Override
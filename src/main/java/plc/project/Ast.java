@@ -125,7 +125,8 @@ public abstract class Ast {
         private final Optional<String> returnTypeName;
         private final List<Statement> statements;
         private Environment.Function function = null;
-        
+        private int frameSize = -1;
+
         public Function(String name, List<String> parameters, List<Statement> statements) {
             this(name, parameters, new ArrayList<>(), Optional.of("Any"), statements);
             for (int i = 0; i < parameters.size(); i++) {
@@ -173,6 +174,19 @@ public abstract class Ast {
             this.function = function;
         }
 
+        /**
+         * Returns the number of slots in the frame of a call, or -1 if the
+         * locals have not been resolved (see {@link Resolver}). Not part of
+         * equality, since it is derived from the rest of the tree.
+         */
+        public int getFrameSize() {
+            return frameSize;
+        }
+
+        public void setFrameSize(int frameSize) {
+            this.frameSize = frameSize;
+        }
+
 
         @Override
         public boolean equals(Object obj) {
@@ -235,6 +249,7 @@ public abstract class Ast {
             private final Optional<String> typeName;
             private Optional<Ast.Expression> value;
             private Environment.Variable variable = null;
+            private int slot = -1;
 
             public Declaration(String name, Optional<Ast.Expression> value) {
                 this(name, Optional.empty(), value);
@@ -268,6 +283,18 @@ public abstract class Ast {
             public void setVariable(Environment.Variable variable) {
                 this.variable = variable;
             }
+
+            /**
+             * Returns the slot of the variable in the frame of the enclosing
+             * function, or -1 if it is unresolved (see {@link Resolver}).
+             */
+            public int getSlot() {
+                return slot;
+            }
+
+            public void setSlot(int slot) {
+                this.slot = slot;
+            }
             
             
             @Override
@@ -658,6 +685,7 @@ public abstract class Ast {
             private final Optional<Ast.Expression> offset;
             private final String name;
             private Environment.Variable variable = null;
+            private int slot = -1;
 
             public Access(Optional<Ast.Expression> offset, String name) {
                 this.offset = offset;
@@ -683,6 +711,19 @@ public abstract class Ast {
                 this.variable = variable;
             }
 
+            /**
+             * Returns the slot of the variable in the frame of the enclosing
+             * function, or -1 if it is not a local and is looked up by name
+             * (see {@link Resolver}).
+             */
+            public int getSlot() {
+                return slot;
+            }
+
+            public void setSlot(int slot) {
+                this.slot = slot;
+            }
+
             @Override
             public Environment.Type getType() {
                 return getVariable().getType();
@@ -713,6 +754,7 @@ public abstract class Ast {
             private final String name;
             private final List<Ast.Expression> arguments;
             private Environment.Function function = null;
+            private CallSite callSite = null;
 
             public Function(String name, List<Ast.Expression> arguments) {
                 this.name = name;
@@ -738,6 +780,20 @@ public abstract class Ast {
                 this.function = function;
             }
 
+            /**
+             * Returns the call site caching what this call resolves to when
+             * interpreted, creating it on first use. Not part of equality,
+             * since it is derived from the rest of the tree.
+             */
+            public CallSite getCallSite() {
+                CallSite site = callSite;
+                if (site == null) {
+                    site = new CallSite(name, arguments.size());
+                    callSite = site;
+                }
+                return site;
+            }
+
             @Override
             public Environment.Type getType() {
                 return getFunction().getReturnType();
@@ -0,0 +1,115 @@
+package plc.project;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * An on-disk cache of parsed sources, stored in the format of {@link
+ * AstCodec} under the SHA-256 hash of the source text. A hit replaces lexing
+ * and parsing with reading and decoding a single file.
+ *
+ * The cache is best effort: a missing, stale, or corrupt entry is a miss, as
+ * is one written by a parser of another {@link Parser#GRAMMAR_VERSION}, and
+ * an entry is only written once the source has parsed successfully. Entries
+ * are written to a temporary file and moved into place, so concurrent
+ * compiles never see a partial entry.
+ */
+public final class AstCache {
+
+    private final Path directory;
+
+    public AstCache(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the cached AST of the source, or null if there is none.
+     */
+    public Ast.Source get(CharSequence source) {
+        return get(path(source));
+    }
+
+    public void put(CharSequence source, Ast.Source ast) throws IOException {
+        put(path(source), ast);
+    }
+
+    /**
+     * Returns the cached AST of the source, otherwise lexing and parsing it
+     * and caching the result. Failing to write the cache does not fail the
+     * parse.
+     */
+    public Ast.Source parse(CharSequence source) throws ParseException {
+        Path path = path(source);
+        Ast.Source ast = get(path);
+        if (ast == null) {
+            ast = new Parser(new Lexer(source).lexBuffer()).parseSourceParallel();
+            try {
+                put(path, ast);
+            } catch (IOException ignored) {}
+        }
+        return ast;
+    }
+
+    private Ast.Source get(Path path) {
+        try {
+            return AstCodec.decode(Files.readAllBytes(path));
+        } catch (IOException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void put(Path path, Ast.Source ast) throws IOException {
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, AstCodec.encode(ast));
+            try {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private Path path(CharSequence source) {
+        return directory.resolve(hash(source) + ".ast");
+    }
+
+    /**
+     * Returns the hex SHA-256 hash of the source's UTF-16 code units, which
+     * unlike an encoding into bytes is defined for any char sequence.
+     */
+    static String hash(CharSequence source) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e); // every Java platform supports SHA-256
+        }
+        byte[] buffer = new byte[8192];
+        int length = 0;
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            buffer[length++] = (byte) (c >>> 8);
+            buffer[length++] = (byte) c;
+            if (length == buffer.length) {
+                digest.update(buffer, 0, length);
+                length = 0;
+            }
+        }
+        digest.update(buffer, 0, length);
+        StringBuilder hex = new StringBuilder(64);
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+}
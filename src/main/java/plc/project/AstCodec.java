@@ -0,0 +1,553 @@
+package plc.project;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A compact binary format for {@link Ast.Source}, used by {@link AstCache} to
+ * skip lexing and parsing of unchanged sources.
+ *
+ * An encoding is the header ({@link #MAGIC}, {@link #VERSION} and the {@link
+ * Parser#GRAMMAR_VERSION} of the parser that produced the tree), a table of
+ * every string in the tree (names, type names, operators, and string
+ * literals), and then the tree itself in pre-order. Each node starts with a
+ * one byte tag; lengths, string table indices, and small integers are
+ * unsigned LEB128 varints, with signed values zigzag encoded first. Integer
+ * literals that fit in a long are stored as a varint and any others as their
+ * two's complement bytes; decimals are their scale followed by the unscaled
+ * value in the same way, so {@code 1.0} and {@code 1.00} stay distinct.
+ *
+ * Only what the parser produces is stored. The variables, functions, and
+ * types set by the {@link Analyzer} are not, so a decoded tree is equal to a
+ * freshly parsed one.
+ */
+public final class AstCodec {
+
+    public static final int MAGIC = 0x504C4341; // "PLCA"
+    public static final int VERSION = 2;
+
+    private static final byte ABSENT = 0;
+    private static final byte GLOBAL = 1;
+    private static final byte FUNCTION = 2;
+    private static final byte EXPRESSION_STATEMENT = 3;
+    private static final byte DECLARATION = 4;
+    private static final byte ASSIGNMENT = 5;
+    private static final byte IF = 6;
+    private static final byte SWITCH = 7;
+    private static final byte CASE = 8;
+    private static final byte WHILE = 9;
+    private static final byte RETURN = 10;
+    private static final byte NIL = 11;
+    private static final byte TRUE = 12;
+    private static final byte FALSE = 13;
+    private static final byte INTEGER = 14;
+    private static final byte BIG_INTEGER = 15;
+    private static final byte DECIMAL = 16;
+    private static final byte BIG_DECIMAL = 17;
+    private static final byte CHARACTER = 18;
+    private static final byte STRING = 19;
+    private static final byte GROUP = 20;
+    private static final byte BINARY = 21;
+    private static final byte ACCESS = 22;
+    private static final byte CALL = 23;
+    private static final byte LIST = 24;
+
+    private AstCodec() {}
+
+    public static byte[] encode(Ast.Source ast) {
+        return encode(ast, Parser.GRAMMAR_VERSION);
+    }
+
+    static byte[] encode(Ast.Source ast, int grammar) {
+        Encoder body = new Encoder();
+        body.source(ast);
+
+        Encoder header = new Encoder();
+        header.int32(MAGIC);
+        header.varint(VERSION);
+        header.varint(grammar);
+        header.varint(body.strings.size());
+        for (String string : body.strings.keySet()) {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            header.varint(bytes.length);
+            header.out.write(bytes, 0, bytes.length);
+        }
+        byte[] tree = body.out.toByteArray();
+        header.out.write(tree, 0, tree.length);
+        return header.out.toByteArray();
+    }
+
+    /**
+     * Decodes an encoded source, throwing an {@link IllegalArgumentException}
+     * if the data is not a valid encoding of the current version, or is of
+     * a tree produced by another version of the parser.
+     */
+    public static Ast.Source decode(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    public static Ast.Source decode(ByteBuffer bytes) {
+        try {
+            Decoder decoder = new Decoder(bytes);
+            if (bytes.getInt() != MAGIC || decoder.varint() != VERSION) {
+                throw new IllegalArgumentException("Not an encoded AST of version " + VERSION + ".");
+            } else if (decoder.varint() != Parser.GRAMMAR_VERSION) {
+                throw new IllegalArgumentException("Not an AST of grammar version " + Parser.GRAMMAR_VERSION + ".");
+            }
+            decoder.strings = new String[decoder.length()];
+            for (int i = 0; i < decoder.strings.length; i++) {
+                byte[] string = new byte[decoder.length()];
+                bytes.get(string);
+                decoder.strings[i] = new String(string, StandardCharsets.UTF_8);
+            }
+            Ast.Source ast = decoder.source();
+            if (bytes.hasRemaining()) {
+                throw new IllegalArgumentException("Unexpected data after the encoded AST.");
+            }
+            return ast;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | ArithmeticException e) {
+            throw new IllegalArgumentException("Truncated or corrupt encoded AST.", e);
+        }
+    }
+
+    private static final class Encoder {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final Map<String, Integer> strings = new LinkedHashMap<>();
+
+        private void source(Ast.Source ast) {
+            varint(ast.getGlobals().size());
+            for (Ast.Global global : ast.getGlobals()) {
+                out.write(GLOBAL);
+                string(global.getName());
+                string(global.getTypeName());
+                out.write(global.getMutable() ? 1 : 0);
+                expression(global.getValue());
+            }
+            varint(ast.getFunctions().size());
+            for (Ast.Function function : ast.getFunctions()) {
+                out.write(FUNCTION);
+                string(function.getName());
+                strings(function.getParameters());
+                strings(function.getParameterTypeNames());
+                string(function.getReturnTypeName());
+                statements(function.getStatements());
+            }
+        }
+
+        private void statements(List<Ast.Statement> statements) {
+            varint(statements.size());
+            for (Ast.Statement statement : statements) {
+                statement(statement);
+            }
+        }
+
+        private void statement(Ast.Statement statement) {
+            if (statement instanceof Ast.Statement.Expression) {
+                out.write(EXPRESSION_STATEMENT);
+                expression(((Ast.Statement.Expression) statement).getExpression());
+            } else if (statement instanceof Ast.Statement.Declaration) {
+                Ast.Statement.Declaration ast = (Ast.Statement.Declaration) statement;
+                out.write(DECLARATION);
+                string(ast.getName());
+                string(ast.getTypeName());
+                expression(ast.getValue());
+            } else if (statement instanceof Ast.Statement.Assignment) {
+                out.write(ASSIGNMENT);
+                expression(((Ast.Statement.Assignment) statement).getReceiver());
+                expression(((Ast.Statement.Assignment) statement).getValue());
+            } else if (statement instanceof Ast.Statement.If) {
+                Ast.Statement.If ast = (Ast.Statement.If) statement;
+                out.write(IF);
+                expression(ast.getCondition());
+                statements(ast.getThenStatements());
+                statements(ast.getElseStatements());
+            } else if (statement instanceof Ast.Statement.Switch) {
+                Ast.Statement.Switch ast = (Ast.Statement.Switch) statement;
+                out.write(SWITCH);
+                expression(ast.getCondition());
+                varint(ast.getCases().size());
+                for (Ast.Statement.Case value : ast.getCases()) {
+                    statement(value);
+                }
+            } else if (statement instanceof Ast.Statement.Case) {
+                out.write(CASE);
+                expression(((Ast.Statement.Case) statement).getValue());
+                statements(((Ast.Statement.Case) statement).getStatements());
+            } else if (statement instanceof Ast.Statement.While) {
+                out.write(WHILE);
+                expression(((Ast.Statement.While) statement).getCondition());
+                statements(((Ast.Statement.While) statement).getStatements());
+            } else if (statement instanceof Ast.Statement.Return) {
+                out.write(RETURN);
+                expression(((Ast.Statement.Return) statement).getValue());
+            } else {
+                throw new AssertionError("Unexpected statement: " + statement.getClass());
+            }
+        }
+
+        private void expression(Optional<Ast.Expression> expression) {
+            if (expression.isPresent()) {
+                expression(expression.get());
+            } else {
+                out.write(ABSENT);
+            }
+        }
+
+        private void expressions(List<Ast.Expression> expressions) {
+            varint(expressions.size());
+            for (Ast.Expression expression : expressions) {
+                expression(expression);
+            }
+        }
+
+        private void expression(Ast.Expression expression) {
+            if (expression instanceof Ast.Expression.Literal) {
+                literal(((Ast.Expression.Literal) expression).getLiteral());
+            } else if (expression instanceof Ast.Expression.Group) {
+                out.write(GROUP);
+                expression(((Ast.Expression.Group) expression).getExpression());
+            } else if (expression instanceof Ast.Expression.Binary) {
+                Ast.Expression.Binary ast = (Ast.Expression.Binary) expression;
+                out.write(BINARY);
+                string(ast.getOperator());
+                expression(ast.getLeft());
+                expression(ast.getRight());
+            } else if (expression instanceof Ast.Expression.Access) {
+                out.write(ACCESS);
+                string(((Ast.Expression.Access) expression).getName());
+                expression(((Ast.Expression.Access) expression).getOffset());
+            } else if (expression instanceof Ast.Expression.Function) {
+                out.write(CALL);
+                string(((Ast.Expression.Function) expression).getName());
+                expressions(((Ast.Expression.Function) expression).getArguments());
+            } else if (expression instanceof Ast.Expression.PlcList) {
+                out.write(LIST);
+                expressions(((Ast.Expression.PlcList) expression).getValues());
+            } else {
+                throw new AssertionError("Unexpected expression: " + expression.getClass());
+            }
+        }
+
+        private void literal(Object literal) {
+            if (literal == null) {
+                out.write(NIL);
+            } else if (literal instanceof Boolean) {
+                out.write((Boolean) literal ? TRUE : FALSE);
+            } else if (literal instanceof BigInteger) {
+                integer((BigInteger) literal, INTEGER, BIG_INTEGER);
+            } else if (literal instanceof BigDecimal) {
+                BigDecimal decimal = (BigDecimal) literal;
+                out.write(decimal.unscaledValue().bitLength() < 64 ? DECIMAL : BIG_DECIMAL);
+                varlong(zigzag(decimal.scale()));
+                integer(decimal.unscaledValue(), ABSENT, ABSENT);
+            } else if (literal instanceof Character) {
+                out.write(CHARACTER);
+                varint((Character) literal);
+            } else if (literal instanceof String) {
+                out.write(STRING);
+                string((String) literal);
+            } else {
+                throw new AssertionError("Unexpected literal: " + literal.getClass());
+            }
+        }
+
+        /**
+         * Writes an integer as a zigzag varint if it fits in a long, and as
+         * its length and two's complement bytes otherwise, preceded by the
+         * given tag unless it is {@link #ABSENT}.
+         */
+        private void integer(BigInteger value, byte small, byte big) {
+            if (value.bitLength() < 64) {
+                if (small != ABSENT) out.write(small);
+                varlong(zigzag(value.longValue()));
+            } else {
+                if (big != ABSENT) out.write(big);
+                byte[] bytes = value.toByteArray();
+                varint(bytes.length);
+                out.write(bytes, 0, bytes.length);
+            }
+        }
+
+        private void strings(List<String> values) {
+            varint(values.size());
+            for (String value : values) {
+                string(value);
+            }
+        }
+
+        /**
+         * Writes an optional string as its table index plus one, or zero.
+         */
+        private void string(Optional<String> value) {
+            if (value.isPresent()) {
+                varint(index(value.get()) + 1);
+            } else {
+                varint(0);
+            }
+        }
+
+        private void string(String value) {
+            varint(index(value));
+        }
+
+        private int index(String value) {
+            Integer index = strings.get(value);
+            if (index == null) {
+                index = strings.size();
+                strings.put(value, index);
+            }
+            return index;
+        }
+
+        private void int32(int value) {
+            out.write(value >>> 24);
+            out.write(value >>> 16);
+            out.write(value >>> 8);
+            out.write(value);
+        }
+
+        private void varint(int value) {
+            varlong(value & 0xFFFFFFFFL);
+        }
+
+        private void varlong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        private static long zigzag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+
+    }
+
+    private static final class Decoder {
+
+        private final ByteBuffer bytes;
+        private String[] strings;
+
+        private Decoder(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        private Ast.Source source() {
+            int globalCount = length();
+            List<Ast.Global> globals = new ArrayList<>(Math.min(globalCount, bytes.remaining()));
+            for (int i = 0; i < globalCount; i++) {
+                expect(GLOBAL);
+                String name = string();
+                String typeName = string();
+                boolean mutable = bytes.get() != 0;
+                globals.add(new Ast.Global(name, typeName, mutable, optionalExpression()));
+            }
+            int functionCount = length();
+            List<Ast.Function> functions = new ArrayList<>(Math.min(functionCount, bytes.remaining()));
+            for (int i = 0; i < functionCount; i++) {
+                expect(FUNCTION);
+                String name = string();
+                List<String> parameters = strings();
+                List<String> parameterTypeNames = strings();
+                Optional<String> returnTypeName = optionalString();
+                functions.add(new Ast.Function(name, parameters, parameterTypeNames, returnTypeName, statements()));
+            }
+            return new Ast.Source(globals, functions);
+        }
+
+        private List<Ast.Statement> statements() {
+            int count = length();
+            List<Ast.Statement> statements = new ArrayList<>(Math.min(count, bytes.remaining()));
+            for (int i = 0; i < count; i++) {
+                statements.add(statement(bytes.get()));
+            }
+            return statements;
+        }
+
+        private Ast.Statement statement(byte tag) {
+            switch (tag) {
+                case EXPRESSION_STATEMENT:
+                    return new Ast.Statement.Expression(expression());
+                case DECLARATION: {
+                    String name = string();
+                    Optional<String> typeName = optionalString();
+                    return new Ast.Statement.Declaration(name, typeName, optionalExpression());
+                }
+                case ASSIGNMENT: {
+                    Ast.Expression receiver = expression();
+                    return new Ast.Statement.Assignment(receiver, expression());
+                }
+                case IF: {
+                    Ast.Expression condition = expression();
+                    List<Ast.Statement> thenStatements = statements();
+                    return new Ast.Statement.If(condition, thenStatements, statements());
+                }
+                case SWITCH: {
+                    Ast.Expression condition = expression();
+                    int count = length();
+                    List<Ast.Statement.Case> cases = new ArrayList<>(Math.min(count, bytes.remaining()));
+                    for (int i = 0; i < count; i++) {
+                        expect(CASE);
+                        cases.add(switchCase());
+                    }
+                    return new Ast.Statement.Switch(condition, cases);
+                }
+                case CASE:
+                    return switchCase();
+                case WHILE: {
+                    Ast.Expression condition = expression();
+                    return new Ast.Statement.While(condition, statements());
+                }
+                case RETURN:
+                    return new Ast.Statement.Return(expression());
+                default:
+                    throw new IllegalArgumentException("Unexpected statement tag " + tag + ".");
+            }
+        }
+
+        private Ast.Statement.Case switchCase() {
+            Optional<Ast.Expression> value = optionalExpression();
+            return new Ast.Statement.Case(value, statements());
+        }
+
+        private Optional<Ast.Expression> optionalExpression() {
+            byte tag = bytes.get();
+            return tag == ABSENT ? Optional.empty() : Optional.of(expression(tag));
+        }
+
+        private List<Ast.Expression> expressions() {
+            int count = length();
+            List<Ast.Expression> expressions = new ArrayList<>(Math.min(count, bytes.remaining()));
+            for (int i = 0; i < count; i++) {
+                expressions.add(expression());
+            }
+            return expressions;
+        }
+
+        private Ast.Expression expression() {
+            return expression(bytes.get());
+        }
+
+        private Ast.Expression expression(byte tag) {
+            switch (tag) {
+                case NIL:
+                    return new Ast.Expression.Literal(null);
+                case TRUE:
+                    return new Ast.Expression.Literal(true);
+                case FALSE:
+                    return new Ast.Expression.Literal(false);
+                case INTEGER:
+                    return new Ast.Expression.Literal(BigInteger.valueOf(unzigzag(varlong())));
+                case BIG_INTEGER:
+                    return new Ast.Expression.Literal(bigInteger());
+                case DECIMAL: {
+                    int scale = Math.toIntExact(unzigzag(varlong()));
+                    return new Ast.Expression.Literal(BigDecimal.valueOf(unzigzag(varlong()), scale));
+                }
+                case BIG_DECIMAL: {
+                    int scale = Math.toIntExact(unzigzag(varlong()));
+                    return new Ast.Expression.Literal(new BigDecimal(bigInteger(), scale));
+                }
+                case CHARACTER:
+                    return new Ast.Expression.Literal((char) varint());
+                case STRING:
+                    return new Ast.Expression.Literal(string());
+                case GROUP:
+                    return new Ast.Expression.Group(expression());
+                case BINARY: {
+                    String operator = string();
+                    Ast.Expression left = expression();
+                    return new Ast.Expression.Binary(operator, left, expression());
+                }
+                case ACCESS: {
+                    String name = string();
+                    return new Ast.Expression.Access(optionalExpression(), name);
+                }
+                case CALL: {
+                    String name = string();
+                    return new Ast.Expression.Function(name, expressions());
+                }
+                case LIST:
+                    return new Ast.Expression.PlcList(expressions());
+                default:
+                    throw new IllegalArgumentException("Unexpected expression tag " + tag + ".");
+            }
+        }
+
+        private BigInteger bigInteger() {
+            byte[] value = new byte[length()];
+            bytes.get(value);
+            return new BigInteger(value);
+        }
+
+        private List<String> strings() {
+            int count = length();
+            List<String> values = new ArrayList<>(Math.min(count, bytes.remaining()));
+            for (int i = 0; i < count; i++) {
+                values.add(string());
+            }
+            return values;
+        }
+
+        private Optional<String> optionalString() {
+            int index = varint();
+            return index == 0 ? Optional.empty() : Optional.of(strings[index - 1]);
+        }
+
+        private String string() {
+            return strings[varint()];
+        }
+
+        private void expect(byte tag) {
+            byte actual = bytes.get();
+            if (actual != tag) {
+                throw new IllegalArgumentException("Expected tag " + tag + " but found " + actual + ".");
+            }
+        }
+
+        /**
+         * Reads a varint used as a count or length, which may not exceed the
+         * remaining data.
+         */
+        private int length() {
+            int length = varint();
+            if (length < 0 || length > bytes.remaining()) {
+                throw new IllegalArgumentException("Invalid length " + length + ".");
+            }
+            return length;
+        }
+
+        private int varint() {
+            return Math.toIntExact(varlong());
+        }
+
+        private long varlong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = bytes.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint.");
+        }
+
+        private static long unzigzag(long value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+    }
+
+}
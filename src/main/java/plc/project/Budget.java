@@ -0,0 +1,70 @@
+package plc.project;
+
+import java.time.Duration;
+
+/**
+ * Limits on a single invocation of a {@link Program}: a number of steps,
+ * where each iteration of a loop and each call is a step, and a wall-clock
+ * deadline. The interpreter charges a step on every loop back-edge and call
+ * and throws {@link Exceeded} once either limit is passed, so even a
+ * runaway {@code WHILE TRUE} stops. The deadline is only read every so many
+ * steps, as reading the clock costs more than the rest of a step.
+ */
+public final class Budget {
+
+    public static final Budget UNLIMITED = new Budget(Long.MAX_VALUE, Long.MAX_VALUE);
+
+    static final int CLOCK_INTERVAL = 1024; // steps between reads of the clock, a power of two
+
+    private final long steps;
+    private final long deadline; // System.nanoTime, or Long.MAX_VALUE for none
+
+    private Budget(long steps, long deadline) {
+        this.steps = steps;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Returns a budget of steps and a timeout starting now. A null timeout
+     * has no deadline.
+     */
+    public static Budget of(long steps, Duration timeout) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("The step budget must not be negative.");
+        }
+        return new Budget(steps, timeout == null ? Long.MAX_VALUE : System.nanoTime() + timeout.toNanos());
+    }
+
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns whether the deadline has passed.
+     */
+    public boolean isExpired() {
+        return deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Thrown when an invocation runs out of steps or time.
+     */
+    public static final class Exceeded extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private Exceeded(String message) {
+            super(message, null, false, false); // thrown to stop a script, so the trace of the interpreter isn't useful
+        }
+
+    }
+
+    static Exceeded steps(long steps) {
+        return new Exceeded("The step budget of " + steps + " was exceeded.");
+    }
+
+    static Exceeded deadline() {
+        return new Exceeded("The deadline was exceeded.");
+    }
+
+}
@@ -0,0 +1,175 @@
+package plc.project;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A monomorphic inline cache for a call: the function a name and arity
+ * resolved to from one scope, which is reused for later calls from the same
+ * scope until a function is defined in that scope or one of its parents up
+ * to the one the function was found in (see {@link
+ * Scope#getFunctionVersion(Scope)}), which might shadow it. Definitions in
+ * any other scope, such as those of other programs, leave it valid.
+ *
+ * A call site may be shared between threads, so the cached resolution is an
+ * immutable entry which is replaced as a whole on a miss.
+ */
+public final class CallSite {
+
+    private final String name;
+    private final int arity;
+    private Entry entry;
+
+    public CallSite(String name, int arity) {
+        this.name = name;
+        this.arity = arity;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getArity() {
+        return arity;
+    }
+
+    /**
+     * Returns the function the call resolves to from the scope, looking it
+     * up only if the cached entry is for another scope or is stale.
+     */
+    public Environment.Function resolve(Scope scope) {
+        Entry cached = entry;
+        if (cached != null && cached.scope == scope && cached.version == scope.getFunctionVersion(cached.owner)) {
+            return cached.function;
+        }
+        int version = 0;
+        for (Scope owner = scope; owner != null; owner = owner.getParent()) {
+            version += owner.getFunctionVersion(); // read before the functions, so a concurrent definition is a later miss
+            Environment.Function function = owner.getFunction(name, arity);
+            if (function != null) {
+                entry = new Entry(scope, owner, version, function);
+                return function;
+            }
+        }
+        return scope.lookupFunction(name, arity); // throws, as it isn't defined
+    }
+
+    /**
+     * Returns an argument list with no elements.
+     */
+    public static List<Environment.PlcObject> arguments() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns an argument list with a single element.
+     */
+    public static List<Environment.PlcObject> arguments(Environment.PlcObject first) {
+        return Collections.singletonList(first);
+    }
+
+    /**
+     * Returns an argument list with two elements, held in fields rather than
+     * an array.
+     */
+    public static List<Environment.PlcObject> arguments(Environment.PlcObject first, Environment.PlcObject second) {
+        return new Pair(first, second);
+    }
+
+    /**
+     * Returns an argument list with three elements, held in fields rather
+     * than an array.
+     */
+    public static List<Environment.PlcObject> arguments(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third) {
+        return new Triple(first, second, third);
+    }
+
+    /**
+     * Returns an argument list backed by the array, which must not be
+     * modified afterwards.
+     */
+    public static List<Environment.PlcObject> arguments(Environment.PlcObject[] values) {
+        switch (values.length) {
+            case 0: return arguments();
+            case 1: return arguments(values[0]);
+            case 2: return arguments(values[0], values[1]);
+            case 3: return arguments(values[0], values[1], values[2]);
+            default: return Collections.unmodifiableList(Arrays.asList(values));
+        }
+    }
+
+    private static final class Entry {
+
+        private final Scope scope;
+        private final Scope owner; // where the function was found
+        private final int version;
+        private final Environment.Function function;
+
+        private Entry(Scope scope, Scope owner, int version, Environment.Function function) {
+            this.scope = scope;
+            this.owner = owner;
+            this.version = version;
+            this.function = function;
+        }
+
+    }
+
+    private static final class Pair extends AbstractList<Environment.PlcObject> implements RandomAccess {
+
+        private final Environment.PlcObject first;
+        private final Environment.PlcObject second;
+
+        private Pair(Environment.PlcObject first, Environment.PlcObject second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public Environment.PlcObject get(int index) {
+            switch (index) {
+                case 0: return first;
+                case 1: return second;
+                default: throw new IndexOutOfBoundsException("Index: " + index + ", Size: 2");
+            }
+        }
+
+        @Override
+        public int size() {
+            return 2;
+        }
+
+    }
+
+    private static final class Triple extends AbstractList<Environment.PlcObject> implements RandomAccess {
+
+        private final Environment.PlcObject first;
+        private final Environment.PlcObject second;
+        private final Environment.PlcObject third;
+
+        private Triple(Environment.PlcObject first, Environment.PlcObject second, Environment.PlcObject third) {
+            this.first = first;
+            this.second = second;
+            this.third = third;
+        }
+
+        @Override
+        public Environment.PlcObject get(int index) {
+            switch (index) {
+                case 0: return first;
+                case 1: return second;
+                case 2: return third;
+                default: throw new IndexOutOfBoundsException("Index: " + index + ", Size: 3");
+            }
+        }
+
+        @Override
+        public int size() {
+            return 3;
+        }
+
+    }
+
+}
@@ -0,0 +1,693 @@
+package plc.project;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * An execution backend which compiles each function once into a tree of
+ * executable nodes and runs that, instead of walking the AST on every call.
+ *
+ * Compiling does the work the {@link Interpreter} repeats on each visit:
+ * dispatching on the class of the AST, looking up the operator, and finding
+ * variables, which are resolved to frame slots by the {@link Resolver}. Each
+ * node is specialised to its shape, so a local is an array access, a literal
+ * is a single pre-created object, + on two longs is an addExact, and
+ * conditions are tested without creating booleans. Statements return the
+ * value of a RETURN, or null to continue, so returning doesn't throw.
+ *
+ * A function the compiler can't represent (one the resolver couldn't lay
+ * out, or with a SWITCH, list access or assignment the interpreter would
+ * reject when it runs) is left to the interpreter, as is every global (see
+ * {@link CompilingBackend}).
+ */
+public final class ClosureCompiler extends CompilingBackend {
+
+    public ClosureCompiler(Scope parent) {
+        super(parent);
+    }
+
+    @Override
+    protected boolean defineCompiled(Ast.Function ast) {
+        Statement[] body;
+        try {
+            if (ast.getFrameSize() < 0) {
+                throw new Unsupported();
+            }
+            body = compile(ast.getStatements());
+        } catch (Unsupported unsupported) {
+            return false;
+        }
+        int size = ast.getFrameSize();
+        getScope().defineFunction(ast.getName(), ast.getParameters().size(), args -> {
+            Environment.PlcObject[] frame = new Environment.PlcObject[size];
+            for (int i = 0; i < args.size(); i++) {
+                frame[i] = args.get(i);
+            }
+            Environment.PlcObject result = execute(body, frame);
+            return result != null ? result : Environment.NIL;
+        });
+        return true;
+    }
+
+    private Statement[] compile(List<Ast.Statement> statements) {
+        Statement[] compiled = new Statement[statements.size()];
+        for (int i = 0; i < compiled.length; i++) {
+            compiled[i] = compile(statements.get(i));
+        }
+        return compiled;
+    }
+
+    private Statement compile(Ast.Statement ast) {
+        if (ast instanceof Ast.Statement.Expression) {
+            return new ExpressionStatement(compile(((Ast.Statement.Expression) ast).getExpression()));
+        } else if (ast instanceof Ast.Statement.Declaration) {
+            Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) ast;
+            Expression value = declaration.getValue().isPresent()
+                    ? compile(declaration.getValue().get())
+                    : new Constant(Environment.NIL);
+            return new Store(declaration.getSlot(), value);
+        } else if (ast instanceof Ast.Statement.Assignment) {
+            Ast.Statement.Assignment assignment = (Ast.Statement.Assignment) ast;
+            if (!(assignment.getReceiver() instanceof Ast.Expression.Access)) {
+                throw new Unsupported();
+            }
+            Ast.Expression.Access receiver = (Ast.Expression.Access) assignment.getReceiver();
+            Expression value = compile(assignment.getValue());
+            if (receiver.getOffset().isPresent()) {
+                return new StoreElement(variable(receiver), offset(receiver), value);
+            } else if (receiver.getSlot() >= 0) {
+                return new Store(receiver.getSlot(), value);
+            }
+            return new StoreGlobal(getScope(), receiver.getName(), value);
+        } else if (ast instanceof Ast.Statement.If) {
+            Ast.Statement.If statement = (Ast.Statement.If) ast;
+            return new If(compile(statement.getCondition()), compile(statement.getThenStatements()), compile(statement.getElseStatements()));
+        } else if (ast instanceof Ast.Statement.Switch) {
+            Ast.Statement.Switch statement = (Ast.Statement.Switch) ast;
+            if (!(statement.getCondition() instanceof Ast.Expression.Access)) {
+                throw new Unsupported();
+            }
+            Object[] values = new Object[statement.getCases().size()];
+            Statement[][] cases = new Statement[values.length][];
+            for (int i = 0; i < values.length; i++) {
+                Ast.Statement.Case element = statement.getCases().get(i);
+                if (element.getValue().isPresent()) {
+                    if (!(element.getValue().get() instanceof Ast.Expression.Literal)) {
+                        throw new Unsupported();
+                    }
+                    values[i] = ((Ast.Expression.Literal) element.getValue().get()).getLiteral();
+                    if (values[i] == null) {
+                        throw new Unsupported();
+                    }
+                }
+                cases[i] = compile(element.getStatements());
+            }
+            return new Switch(variable((Ast.Expression.Access) statement.getCondition()), values, cases);
+        } else if (ast instanceof Ast.Statement.While) {
+            Ast.Statement.While statement = (Ast.Statement.While) ast;
+            return new While(compile(statement.getCondition()), compile(statement.getStatements()));
+        } else if (ast instanceof Ast.Statement.Return) {
+            return new Return(compile(((Ast.Statement.Return) ast).getValue()));
+        }
+        throw new Unsupported(); // cases outside of a switch
+    }
+
+    private Expression compile(Ast.Expression ast) {
+        if (ast instanceof Ast.Expression.Literal) {
+            Object literal = ((Ast.Expression.Literal) ast).getLiteral();
+            return new Constant(literal == null ? Environment.NIL : Environment.create(literal));
+        } else if (ast instanceof Ast.Expression.Group) {
+            return compile(((Ast.Expression.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expression.Binary) {
+            Ast.Expression.Binary binary = (Ast.Expression.Binary) ast;
+            Interpreter.Operator operator;
+            try {
+                operator = Interpreter.Operator.of(binary.getOperator());
+            } catch (RuntimeException e) {
+                throw new Unsupported(); // reported when the interpreter evaluates it
+            }
+            Expression left = compile(binary.getLeft());
+            Expression right = compile(binary.getRight());
+            switch (operator) {
+                case AND: return new And(left, right);
+                case OR: return new Or(left, right);
+                case ADD: return new Add(left, right);
+                case SUBTRACT: return new Subtract(left, right);
+                case MULTIPLY: return new Multiply(left, right);
+                case LESS:
+                case LESS_EQUAL:
+                case GREATER:
+                case GREATER_EQUAL:
+                case EQUAL:
+                case NOT_EQUAL:
+                    return new Comparison(operator, left, right);
+                default:
+                    return new Binary(operator, left, right);
+            }
+        } else if (ast instanceof Ast.Expression.Access) {
+            Ast.Expression.Access access = (Ast.Expression.Access) ast;
+            if (access.getOffset().isPresent()) {
+                return new Element(variable(access), offset(access));
+            }
+            return variable(access);
+        } else if (ast instanceof Ast.Expression.Function) {
+            Ast.Expression.Function function = (Ast.Expression.Function) ast;
+            Expression[] arguments = new Expression[function.getArguments().size()];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = compile(function.getArguments().get(i));
+            }
+            return new Call(getScope(), new CallSite(function.getName(), arguments.length), arguments);
+        } else {
+            List<Ast.Expression> values = ((Ast.Expression.PlcList) ast).getValues();
+            Expression[] elements = new Expression[values.size()];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = compile(values.get(i));
+            }
+            return new PlcList(elements);
+        }
+    }
+
+    /**
+     * Compiles a read of the variable of an access, ignoring any offset.
+     */
+    private Expression variable(Ast.Expression.Access ast) {
+        if (ast.getSlot() >= 0) {
+            return new Load(ast.getSlot());
+        }
+        return new LoadGlobal(getScope(), ast.getName());
+    }
+
+    /**
+     * Returns the offset of a list access, which the interpreter requires to
+     * be an integer literal.
+     */
+    private static int offset(Ast.Expression.Access ast) {
+        Ast.Expression offset = ast.getOffset().get();
+        if (!(offset instanceof Ast.Expression.Literal) || !(((Ast.Expression.Literal) offset).getLiteral() instanceof BigInteger)) {
+            throw new Unsupported();
+        }
+        return ((BigInteger) ((Ast.Expression.Literal) offset).getLiteral()).intValue();
+    }
+
+    /**
+     * Executes statements in order, returning the value of a RETURN or null
+     * if they complete.
+     */
+    private static Environment.PlcObject execute(Statement[] statements, Environment.PlcObject[] frame) {
+        for (Statement statement : statements) {
+            Environment.PlcObject result = statement.execute(frame);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Thrown while compiling a function the compiler can't represent.
+     */
+    private static final class Unsupported extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private Unsupported() {
+            super(null, null, false, false);
+        }
+
+    }
+
+    private abstract static class Statement {
+
+        /**
+         * Executes the statement, returning the value of a RETURN or null to
+         * continue with the next statement.
+         */
+        abstract Environment.PlcObject execute(Environment.PlcObject[] frame);
+
+    }
+
+    private abstract static class Expression {
+
+        abstract Environment.PlcObject evaluate(Environment.PlcObject[] frame);
+
+        /**
+         * Evaluates the expression as a condition, which must be a boolean.
+         */
+        boolean test(Environment.PlcObject[] frame) {
+            return Interpreter.requireType(Boolean.class, evaluate(frame));
+        }
+
+    }
+
+    private static final class ExpressionStatement extends Statement {
+
+        private final Expression expression;
+
+        private ExpressionStatement(Expression expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            expression.evaluate(frame);
+            return null;
+        }
+
+    }
+
+    private static final class Store extends Statement {
+
+        private final int slot;
+        private final Expression value;
+
+        private Store(int slot, Expression value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            frame[slot] = value.evaluate(frame);
+            return null;
+        }
+
+    }
+
+    private static final class StoreGlobal extends Statement {
+
+        private final Scope scope;
+        private final String name;
+        private final Expression value;
+
+        private StoreGlobal(Scope scope, String name, Expression value) {
+            this.scope = scope;
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            Environment.Variable variable = scope.lookupVariable(name);
+            variable.setValue(value.evaluate(frame));
+            return null;
+        }
+
+    }
+
+    private static final class StoreElement extends Statement {
+
+        private final Expression list;
+        private final int offset;
+        private final Expression value;
+
+        private StoreElement(Expression list, int offset, Expression value) {
+            this.list = list;
+            this.offset = offset;
+            this.value = value;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            List<Object> values = (List<Object>) list.evaluate(frame).getValue();
+            values.set(offset, value.evaluate(frame).getValue());
+            return null; // the list is updated in place, so the variable needs no store
+        }
+
+    }
+
+    private static final class If extends Statement {
+
+        private final Expression condition;
+        private final Statement[] thenStatements;
+        private final Statement[] elseStatements;
+
+        private If(Expression condition, Statement[] thenStatements, Statement[] elseStatements) {
+            this.condition = condition;
+            this.thenStatements = thenStatements;
+            this.elseStatements = elseStatements;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            return ClosureCompiler.execute(condition.test(frame) ? thenStatements : elseStatements, frame);
+        }
+
+    }
+
+    /**
+     * A switch over a character, with the interpreter's semantics: the first
+     * case equal to the value runs, and a default case runs the last case.
+     */
+    private static final class Switch extends Statement {
+
+        private final Expression condition;
+        private final Object[] values;
+        private final Statement[][] cases;
+
+        private Switch(Expression condition, Object[] values, Statement[][] cases) {
+            this.condition = condition;
+            this.values = values;
+            this.cases = cases;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            char variable = (char) condition.evaluate(frame).getValue();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    if (values[i].equals(variable)) {
+                        return ClosureCompiler.execute(cases[i], frame);
+                    }
+                } else {
+                    Environment.PlcObject result = ClosureCompiler.execute(cases[cases.length - 1], frame);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+            }
+            return null;
+        }
+
+    }
+
+    private static final class While extends Statement {
+
+        private final Expression condition;
+        private final Statement[] statements;
+
+        private While(Expression condition, Statement[] statements) {
+            this.condition = condition;
+            this.statements = statements;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            while (condition.test(frame)) {
+                Environment.PlcObject result = ClosureCompiler.execute(statements, frame);
+                if (result != null) {
+                    return result;
+                }
+            }
+            return null;
+        }
+
+    }
+
+    private static final class Return extends Statement {
+
+        private final Expression value;
+
+        private Return(Expression value) {
+            this.value = value;
+        }
+
+        @Override
+        Environment.PlcObject execute(Environment.PlcObject[] frame) {
+            return value.evaluate(frame);
+        }
+
+    }
+
+    private static final class Constant extends Expression {
+
+        private final Environment.PlcObject value;
+
+        private Constant(Environment.PlcObject value) {
+            this.value = value;
+        }
+
+        @Override
+        Environment.PlcObject evaluate(Environment.PlcObject[] frame) {
+            return value;
+        }
+
+    }
+
+    private static final class Load extends Expression {
+
+        private final int slot;
+
+        private Load(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        Environment.PlcObject evaluate(Environment.PlcObject[] frame) {
+            return frame[slot];
+        }
+
+    }
+
+    private static final class LoadGlobal extends Expression {
+
+        private final Scope scope;
+        private final String name;
+
+        private LoadGlobal(Scope scope, String name) {
+            this.scope = scope;
+            this.name = name;
+        }
+
+        @Override
+        Environment.PlcObject evaluate(Environment.PlcObject[] frame) {
+            return scope.lookupVariable(name).getValue();
+        }
+
+    }
+
+    private static final class Element extends Expression {
+
+        private final Expression list;
+        private final int offset;
+
+        private Element(Expression list, int offset) {
+            this.list = list;
+            this.offset = offset;
+        }
+
+        @Override
+        Environment.PlcObject evaluate(Environment.PlcObject[] frame) {
+            return Environment.create(((List<?>) list.evaluate(frame).getValue()).get(offset));
+        }
+
+    }
+
+    private static final class Call extends Expression {
+
+        private final Scope scope;
+        private final CallSite site;
+        private final Expression[] arguments;
+
+        private Call(Scope scope, CallSite site, Expression[] arguments) {
+            this.scope = scope;
+            this.site = site;
+            this.arguments = arguments;
+        }
+
+        @Override
+        Environment.PlcObject evaluate(Environment.PlcObject[] frame) {
+            Environment.PlcObject[] values = new Environment.PlcObject[arguments.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = arguments[i].evaluate(frame);
+            }
+            return site.resolve(scope).invoke(CallSite.arguments(values));
+        }
+
+    }
+
+    private static final class PlcList extends Expression {
+
+        private final Expression[] values;
+
+        private PlcList(Expression[] values) {
+            this.values = values;
+        }
+
+        @Override
+        Environment.PlcObject evaluate(Environment.PlcObject[] frame) {
+            List<Object> list = new ArrayList<>(values.length);
+            for (Expression value : values) {
+                list.add(value.evaluate(frame).getValue());
+            }
+            return Environment.create(list);
+        }
+
+    }
+
+    private static final class And extends Expression {
+
+        private final Expression left;
+        private final Expression right;
+
+        private And(Expression left, Expression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Environment.PlcObject evaluate(Environment.PlcObject[] frame) {
+            return Environment.create(test(frame));
+        }
+
+        @Override
+        boolean test(Environment.PlcObject[] frame) {
+            return left.test(frame) && right.test(frame);
+        }
+
+    }
+
+    private static final class Or extends Expression {
+
+        private final Expression left;
+        private final Expression right;
+
+        private Or(Expression left, Expression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Environment.PlcObject evaluate(Environment.PlcObject[] frame) {
+            return Environment.create(test(frame));
+        }
+
+        @Override
+        boolean test(Environment.PlcObject[] frame) {
+            return left.test(frame) || right.test(frame);
+        }
+
+    }
+
+    private static final class Comparison extends Expression {
+
+        private final Interpreter.Operator operator;
+        private final Expression left;
+        private final Expression right;
+
+        private Comparison(Interpreter.Operator operator, Expression left, Expression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Environment.PlcObject evaluate(Environment.PlcObject[] frame) {
+            return Environment.create(test(frame));
+        }
+
+        @Override
+        boolean test(Environment.PlcObject[] frame) {
+            Environment.PlcObject l = left.evaluate(frame);
+            Environment.PlcObject r = right.evaluate(frame);
+            int compare = l.isLong() && r.isLong()
+                    ? Long.compare(l.longValue(), r.longValue())
+                    : Interpreter.compare(l, r);
+            switch (operator) {
+                case LESS: return compare < 0;
+                case LESS_EQUAL: return compare <= 0;
+                case GREATER: return compare > 0;
+                case GREATER_EQUAL: return compare >= 0;
+                case EQUAL: return compare == 0;
+                default: return compare != 0;
+            }
+        }
+
+    }
+
+    private static final class Add extends Expression {
+
+        private final Expression left;
+        private final Expression right;
+
+        private Add(Expression left, Expression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Environment.PlcObject evaluate(Environment.PlcObject[] frame) {
+            Environment.PlcObject l = left.evaluate(frame);
+            Environment.PlcObject r = right.evaluate(frame);
+            if (l.isLong() && r.isLong()) {
+                try {
+                    return Environment.createInteger(Math.addExact(l.longValue(), r.longValue()));
+                } catch (ArithmeticException overflow) {}
+            }
+            return Interpreter.Operator.ADD.apply(l, r);
+        }
+
+    }
+
+    private static final class Subtract extends Expression {
+
+        private final Expression left;
+        private final Expression right;
+
+        private Subtract(Expression left, Expression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Environment.PlcObject evaluate(Environment.PlcObject[] frame) {
+            Environment.PlcObject l = left.evaluate(frame);
+            Environment.PlcObject r = right.evaluate(frame);
+            if (l.isLong() && r.isLong()) {
+                try {
+                    return Environment.createInteger(Math.subtractExact(l.longValue(), r.longValue()));
+                } catch (ArithmeticException overflow) {}
+            }
+            return Interpreter.Operator.SUBTRACT.apply(l, r);
+        }
+
+    }
+
+    private static final class Multiply extends Expression {
+
+        private final Expression left;
+        private final Expression right;
+
+        private Multiply(Expression left, Expression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Environment.PlcObject evaluate(Environment.PlcObject[] frame) {
+            Environment.PlcObject l = left.evaluate(frame);
+            Environment.PlcObject r = right.evaluate(frame);
+            if (l.isLong() && r.isLong()) {
+                try {
+                    return Environment.createInteger(Math.multiplyExact(l.longValue(), r.longValue()));
+                } catch (ArithmeticException overflow) {}
+            }
+            return Interpreter.Operator.MULTIPLY.apply(l, r);
+        }
+
+    }
+
+    /**
+     * Any other operator, which uses the interpreter's implementation.
+     */
+    private static final class Binary extends Expression {
+
+        private final Interpreter.Operator operator;
+        private final Expression left;
+        private final Expression right;
+
+        private Binary(Interpreter.Operator operator, Expression left, Expression right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Environment.PlcObject evaluate(Environment.PlcObject[] frame) {
+            return operator.apply(left.evaluate(frame), right.evaluate(frame));
+        }
+
+    }
+
+}
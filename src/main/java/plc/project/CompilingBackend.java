@@ -0,0 +1,61 @@
+package plc.project;
+
+import java.util.Collections;
+
+/**
+ * The part shared by the execution backends which compile functions before
+ * running them, such as the {@link ClosureCompiler} and the bytecode virtual
+ * machine.
+ *
+ * Only functions are compiled. Globals are evaluated by an interpreter whose
+ * scope is the scope of the backend, and a function the backend can't
+ * compile is defined by that interpreter instead, so it still runs (or fails)
+ * exactly as the interpreter would run it. Compiled and interpreted functions
+ * call each other through the scope like any other function.
+ */
+public abstract class CompilingBackend {
+
+    private final Interpreter interpreter;
+    private final Scope scope;
+
+    protected CompilingBackend(Scope parent) {
+        this.interpreter = new Interpreter(parent);
+        this.scope = interpreter.getScope();
+    }
+
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * Defines the globals and functions of the source and returns the result
+     * of calling main.
+     */
+    public Environment.PlcObject execute(Ast.Source ast) {
+        for (Ast.Global global : ast.getGlobals()) {
+            interpreter.visit(global);
+        }
+        for (Ast.Function function : ast.getFunctions()) {
+            define(function);
+        }
+        return scope.lookupFunction("main", 0).invoke(Collections.emptyList());
+    }
+
+    /**
+     * Resolves a function and defines it in the scope, compiled if the
+     * backend can represent it and interpreted otherwise.
+     */
+    public final void define(Ast.Function ast) {
+        new Resolver().visit(ast);
+        if (!defineCompiled(ast)) {
+            interpreter.visit(ast);
+        }
+    }
+
+    /**
+     * Compiles a resolved function and defines it in the scope, or returns
+     * false without defining anything if the function can't be compiled.
+     */
+    protected abstract boolean defineCompiled(Ast.Function ast);
+
+}
@@ -1,15 +1,58 @@
 package plc.project;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class Environment {
 
+    /**
+     * Creates an object for a value, which has the canonical type of the
+     * value and no scope of its own (members are looked up on the type).
+     * Booleans and small integers are shared instances.
+     */
     public static PlcObject create(Object value) {
-        return new PlcObject(new Scope(null), value);
+        if (value instanceof Boolean) {
+            return (Boolean) value ? TRUE : FALSE;
+        } else if (value instanceof BigInteger && ((BigInteger) value).bitLength() < Long.SIZE) {
+            return createInteger(((BigInteger) value).longValue());
+        }
+        return new PlcObject(typeOf(value), null, value);
+    }
+
+    /**
+     * Creates an integer object from a long, which is only boxed into a
+     * BigInteger if something asks for its value.
+     */
+    public static PlcObject createInteger(long value) {
+        if (value >= SMALL_INTEGER_MIN && value <= SMALL_INTEGER_MAX) {
+            return SMALL_INTEGERS[(int) value - SMALL_INTEGER_MIN];
+        }
+        return new PlcObject(value);
+    }
+
+    /**
+     * Returns the canonical type of a value.
+     */
+    private static Type typeOf(Object value) {
+        if (value instanceof BigInteger) {
+            return Type.INTEGER;
+        } else if (value instanceof BigDecimal) {
+            return Type.DECIMAL;
+        } else if (value instanceof Boolean) {
+            return Type.BOOLEAN;
+        } else if (value instanceof Character) {
+            return Type.CHARACTER;
+        } else if (value instanceof String) {
+            return Type.STRING;
+        } else if (value instanceof List) {
+            return Type.LIST;
+        }
+        return Type.ANY;
     }
 
     public static final PlcObject NIL = new PlcObject(Type.NIL, new Scope(null), new Object() {
@@ -21,20 +64,33 @@ public final class Environment {
 
     });
 
-    private static final Map<String, Type> TYPES = new HashMap<>();
+    private static final PlcObject TRUE = new PlcObject(Type.BOOLEAN, null, Boolean.TRUE);
+    private static final PlcObject FALSE = new PlcObject(Type.BOOLEAN, null, Boolean.FALSE);
+
+    private static final int SMALL_INTEGER_MIN = -128;
+    private static final int SMALL_INTEGER_MAX = 1023;
+    private static final PlcObject[] SMALL_INTEGERS = new PlcObject[SMALL_INTEGER_MAX - SMALL_INTEGER_MIN + 1];
+
+    static {
+        for (int i = 0; i < SMALL_INTEGERS.length; i++) {
+            SMALL_INTEGERS[i] = new PlcObject(Type.INTEGER, null, BigInteger.valueOf(i + SMALL_INTEGER_MIN));
+        }
+    }
+
+    private static final Map<String, Type> TYPES = new ConcurrentHashMap<>(); // registered from any thread
 
     public static Type getType(String name) {
-        if (!TYPES.containsKey(name)) {
+        Type type = TYPES.get(name);
+        if (type == null) {
             throw new RuntimeException("Unknown type " + name + ".");
         }
-        return TYPES.get(name);
+        return type;
     }
 
     public static void registerType(Type type) {
-        if (TYPES.containsKey(type.getName())) {
+        if (TYPES.putIfAbsent(type.getName(), type) != null) {
             throw new IllegalArgumentException("Duplicate registration of type " + type.getName() + ".");
         }
-        TYPES.put(type.getName(), type);
     }
 
     public static final class Type {
@@ -47,6 +103,8 @@ public final class Environment {
         public static final Type DECIMAL = new Type("Decimal", "double", new Scope(COMPARABLE.scope));
         public static final Type CHARACTER = new Type("Character", "char", new Scope(COMPARABLE.scope));
         public static final Type STRING = new Type("String", "String", new Scope(COMPARABLE.scope));
+        // the runtime type of list values, which isn't registered as there's no List type name
+        public static final Type LIST = new Type("List", "List", new Scope(ANY.scope));
 
         private final String name;
         private final String jvmName;
@@ -89,20 +147,41 @@ public final class Environment {
 
     }
 
+    /**
+     * An object, whose value is one of the Java representations of the
+     * language's types (BigInteger, BigDecimal, String, ...).
+     *
+     * An integer which fits in a long also keeps that long, so that the
+     * interpreter can do arithmetic on it without going through BigInteger.
+     * Results of that arithmetic are created from the long alone, and the
+     * BigInteger is only created if the value is asked for; integers that
+     * overflow a long are BigIntegers as before.
+     */
     public static final class PlcObject {
 
         private final Type type;
         private final Scope scope;
-        private final Object value;
+        private Object value; // created on demand for a long integer, see getValue
+        private final long integer;
+        private final boolean isLong;
 
         public PlcObject(Scope scope, Object value) {
-            this(new Type("Unknown", "Unknown", scope), scope, value);
+            this(typeOf(value), scope, value);
         }
 
         public PlcObject(Type type, Scope scope, Object value) {
             this.type = type;
             this.scope = scope;
             this.value = value;
+            this.isLong = value instanceof BigInteger && ((BigInteger) value).bitLength() < Long.SIZE;
+            this.integer = isLong ? ((BigInteger) value).longValue() : 0;
+        }
+
+        private PlcObject(long integer) {
+            this.type = Type.INTEGER;
+            this.scope = null;
+            this.integer = integer;
+            this.isLong = true;
         }
 
         public Type getType() {
@@ -110,15 +189,29 @@ public final class Environment {
         }
 
         public Object getValue() {
+            if (value == null && isLong) {
+                value = BigInteger.valueOf(integer); // a racing thread at worst creates an equal BigInteger
+            }
             return value;
         }
 
+        /**
+         * Returns whether the value is an integer which fits in a long.
+         */
+        public boolean isLong() {
+            return isLong;
+        }
+
+        public long longValue() {
+            return integer;
+        }
+
         @Override
         public String toString() {
             return "Object{" +
                     "type=" + type +
                     ", scope=" + scope +
-                    ", value=" + value +
+                    ", value=" + getValue() +
                     '}';
         }
 
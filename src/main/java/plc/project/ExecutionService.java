@@ -0,0 +1,204 @@
+package plc.project;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs invocations of {@link Program}s concurrently, each in a context of
+ * its own and limited by a {@link Budget} of steps and a deadline.
+ *
+ * Each request runs on a virtual thread where the JDK has them (21 and up,
+ * found by reflection so this still builds for 17), and otherwise on a pool
+ * with a platform thread per processor. Admission is bounded: at most the
+ * capacity of requests are queued or running at once, and a request beyond
+ * that is rejected immediately rather than waiting. The deadline of a
+ * request starts when it is submitted, so it includes time spent queued.
+ */
+public final class ExecutionService implements AutoCloseable {
+
+    private final int capacity;
+    private final Semaphore permits;
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final Map<Program, Metrics> metrics = Collections.synchronizedMap(new WeakHashMap<>()); // by identity, as programs don't override equals
+
+    public ExecutionService(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive.");
+        }
+        this.capacity = capacity;
+        permits = new Semaphore(capacity);
+        ExecutorService executor;
+        boolean virtual;
+        try {
+            executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            virtual = true;
+        } catch (ReflectiveOperationException e) { // before virtual threads
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "plc-execution");
+                thread.setDaemon(true);
+                return thread;
+            });
+            virtual = false;
+        }
+        this.executor = executor;
+        this.virtual = virtual;
+    }
+
+    /**
+     * Returns whether requests run on virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * Submits an invocation of a function of the program, which may take at
+     * most the given steps and (if the timeout isn't null) finish before the
+     * timeout. The result completes with the value of the function, or
+     * exceptionally with what it threw, which is a {@link Budget.Exceeded}
+     * if it ran out of steps or time.
+     *
+     * @throws RejectedExecutionException if the service is at capacity or
+     * closed
+     */
+    public CompletableFuture<Environment.PlcObject> submit(Program program, String function, List<Environment.PlcObject> arguments, long steps, Duration timeout) {
+        Metrics metrics = getMetrics(program);
+        if (!permits.tryAcquire()) {
+            metrics.rejected.increment();
+            throw new RejectedExecutionException("The service is at its capacity of " + capacity + " requests.");
+        }
+        long submitted = System.nanoTime();
+        Budget budget = Budget.of(steps, timeout);
+        CompletableFuture<Environment.PlcObject> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    if (budget.isExpired()) {
+                        throw Budget.deadline(); // while queued
+                    }
+                    Environment.PlcObject value = program.invoke(function, arguments, budget);
+                    metrics.completed.increment();
+                    result.complete(value);
+                } catch (Budget.Exceeded e) {
+                    metrics.exceeded.increment();
+                    result.completeExceptionally(e);
+                } catch (Throwable e) { // including a StackOverflowError from deep recursion
+                    metrics.failed.increment();
+                    result.completeExceptionally(e);
+                } finally {
+                    metrics.record(System.nanoTime() - submitted);
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            metrics.rejected.increment();
+            throw e;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the metrics of the requests for a program, which are kept for
+     * as long as the program is.
+     */
+    public Metrics getMetrics(Program program) {
+        return metrics.computeIfAbsent(program, key -> new Metrics());
+    }
+
+    /**
+     * Stops accepting requests. Requests already accepted still run.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Counts of the requests for a program by outcome, and the latency of
+     * those which finished (from submission, including time queued).
+     */
+    public static final class Metrics {
+
+        private final long created = System.nanoTime();
+        private final LongAdder completed = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder exceeded = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        private final LongAdder finished = new LongAdder();
+        private final LongAdder latency = new LongAdder();
+        private final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+
+        private Metrics() {}
+
+        private void record(long nanos) {
+            finished.increment();
+            latency.add(nanos);
+            maxLatency.accumulate(nanos);
+        }
+
+        public long getCompleted() {
+            return completed.sum();
+        }
+
+        public long getFailed() {
+            return failed.sum();
+        }
+
+        /**
+         * Returns the number of requests stopped for running out of steps or
+         * time.
+         */
+        public long getExceeded() {
+            return exceeded.sum();
+        }
+
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        /**
+         * Returns the number of requests completed per second since the
+         * first request.
+         */
+        public double getThroughput() {
+            long elapsed = System.nanoTime() - created;
+            return elapsed <= 0 ? 0 : getCompleted() * 1e9 / elapsed;
+        }
+
+        public Duration getMeanLatency() {
+            long count = finished.sum();
+            return Duration.ofNanos(count == 0 ? 0 : latency.sum() / count);
+        }
+
+        public Duration getMaxLatency() {
+            return Duration.ofNanos(maxLatency.get());
+        }
+
+        @Override
+        public String toString() {
+            return "Metrics{" +
+                    "completed=" + getCompleted() +
+                    ", failed=" + getFailed() +
+                    ", exceeded=" + getExceeded() +
+                    ", rejected=" + getRejected() +
+                    ", throughput=" + getThroughput() +
+                    ", meanLatency=" + getMeanLatency() +
+                    ", maxLatency=" + getMaxLatency() +
+                    '}';
+        }
+
+    }
+
+}
@@ -303,7 +303,7 @@ public final class Generator implements Ast.Visitor<Void> {
             return null;
         }
 
-        visit(ast.getLeft());
+        operand(ast.getLeft(), precedence(ast.getOperator()), false);
         switch (ast.getOperator()) {
             case "&&":
                 print(" && ");
@@ -330,10 +330,50 @@ public final class Generator implements Ast.Visitor<Void> {
                 print(" ", ast.getOperator(), " ");
                 break;
         }
-        visit(ast.getRight());
+        operand(ast.getRight(), precedence(ast.getOperator()), true);
         return null;
     }
 
+    /**
+     * Prints an operand of a binary operator, parenthesized if Java would
+     * otherwise group it differently than the AST does. Java's binary
+     * operators are left associative, so a right operand of the same
+     * precedence needs parentheses too (a - (b - c)).
+     */
+    private void operand(Ast.Expression ast, int parent, boolean right) {
+        if (ast instanceof Ast.Expression.Binary) {
+            int precedence = precedence(((Ast.Expression.Binary) ast).getOperator());
+            if (precedence < parent || precedence == parent && right) {
+                print("(", ast, ")");
+                return;
+            }
+        }
+        visit(ast);
+    }
+
+    /**
+     * Returns the precedence of an operator in the generated Java, where ^
+     * is a call to Math.pow and so never needs parentheses.
+     */
+    private static int precedence(String operator) {
+        switch (operator) {
+            case "||": return 1;
+            case "&&": return 2;
+            case "==":
+            case "!=": return 3;
+            case "<":
+            case "<=":
+            case ">":
+            case ">=": return 4;
+            case "+":
+            case "-": return 5;
+            case "*":
+            case "/":
+            case "%": return 6;
+            default: return 7;
+        }
+    }
+
     @Override
     public Void visit(Ast.Expression.Access ast) {
         if (ast.getOffset().isPresent()) {
@@ -0,0 +1,281 @@
+package plc.project;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Keeps the source, tokens, and AST of a file up to date as it is edited,
+ * re-lexing and re-parsing only the part of the file an edit touches.
+ *
+ * Alongside the {@link TokenBuffer} this keeps a table of the first token of
+ * each top-level item (global or function). For an edit, lexing restarts at
+ * the item it touches (or the one before, since a list may look one token past
+ * its end) and runs until a new token past the edit lands exactly on the start
+ * of a later item, after which the old tokens are reused shifted by the change
+ * in length. The
+ * re-lexed items are then parsed again until the parser reaches the start of
+ * a reused item, and the AST nodes of all other items are reused as is.
+ *
+ * Since both the lexer and parser only look at what follows their position,
+ * the result is the same as lexing and parsing the whole file. The source and
+ * token buffer are updated in place, so an edit allocates little beyond the
+ * re-lexed tokens and re-parsed items. Anything the item table can't account
+ * for (a global after a function, a token which doesn't start an item, or a
+ * parse error) is handed to {@link Parser#parseSource()} over the new tokens,
+ * which reports it exactly as before; the next edit after that lexes and
+ * parses the whole file.
+ */
+public final class IncrementalParser {
+
+    private final Text text = new Text();
+    private char[] chars;
+    private int length;
+    private TokenBuffer tokens;
+    private int[] items; // first token of each item, followed by the number of tokens
+    private Ast[] nodes;
+    private Ast.Source ast;
+
+    public IncrementalParser(CharSequence source) throws ParseException {
+        this.chars = source.toString().toCharArray();
+        this.length = chars.length;
+        parseAll();
+    }
+
+    /**
+     * Returns the source, which is a live view that changes with each edit.
+     */
+    public CharSequence getSource() {
+        return text;
+    }
+
+    /**
+     * Returns the tokens of the source, or null if the last edit could not be
+     * lexed. The buffer is updated in place by the next edit.
+     */
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    /**
+     * Returns the AST of the source, or null if the last edit could not be
+     * lexed or parsed.
+     */
+    public Ast.Source getAst() {
+        return ast;
+    }
+
+    /**
+     * Replaces the given number of characters at the offset with the inserted
+     * text and returns the updated AST. A {@link ParseException} is thrown if
+     * the new source can't be lexed or parsed, though the edit still applies.
+     */
+    public Ast.Source edit(int offset, int removed, String inserted) throws ParseException {
+        Objects.checkFromIndexSize(offset, removed, length);
+        int shift = inserted.length() - removed;
+        if (length + shift > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(2 * chars.length, length + shift));
+        }
+        System.arraycopy(chars, offset + removed, chars, offset + inserted.length(), length - offset - removed);
+        inserted.getChars(0, inserted.length(), chars, offset);
+        length += shift;
+
+        int[] oldItems = items;
+        Ast[] oldNodes = nodes;
+        items = null;
+        nodes = null;
+        ast = null;
+        if (oldItems == null || oldItems.length == 1) {
+            return parseAll();
+        }
+
+        int count = oldItems.length - 1;
+        int end = offset + removed;
+        int lo = Math.max(0, search(oldItems, offset) - 1);
+        int damaged = offset + inserted.length();
+
+        TokenBuffer relexed = new TokenBuffer(text, 16 + (damaged - offset) / 4);
+        Lexer lexer = new Lexer(CharBuffer.wrap(chars, 0, length));
+        lexer.seek(Math.min(offset, tokens.getStart(oldItems[lo])));
+        int sync = lo + 1;
+        TokenBuffer tokens = this.tokens;
+        this.tokens = null;
+        while (true) {
+            int size = relexed.size();
+            if (!lexer.lexInto(relexed)) {
+                sync = count;
+                break;
+            }
+            int start = relexed.getStart(size);
+            if (start >= damaged) {
+                while (sync < count && tokens.getStart(oldItems[sync]) + shift < start) {
+                    sync++;
+                }
+                if (sync < count && tokens.getStart(oldItems[sync]) + shift == start) {
+                    relexed.truncate(size);
+                    break;
+                }
+            }
+        }
+        int moved = oldItems[lo] + relexed.size() - oldItems[sync];
+        tokens.replace(oldItems[lo], oldItems[sync], relexed, shift);
+        this.tokens = tokens;
+        return parse(lo, sync, moved, oldItems, oldNodes);
+    }
+
+    private Ast.Source parseAll() throws ParseException {
+        tokens = null;
+        TokenBuffer tokens = new TokenBuffer(text);
+        Lexer lexer = new Lexer(CharBuffer.wrap(chars, 0, length));
+        while (lexer.lexInto(tokens)) {}
+        this.tokens = tokens;
+        return parse(0, 0, 0, new int[] {0}, new Ast[0]);
+    }
+
+    /**
+     * Parses the items of the tokens after the first {@code lo} old items,
+     * which are kept, until reaching the start of an old item from {@code
+     * sync} onwards, which are kept with their tokens moved by the given
+     * amount.
+     */
+    private Ast.Source parse(int lo, int sync, int moved, int[] oldItems, Ast[] oldNodes) throws ParseException {
+        int count = oldItems.length - 1;
+        List<Integer> starts = new ArrayList<>();
+        List<Ast> parsed = new ArrayList<>();
+        boolean function = lo > 0 && oldNodes[lo - 1] instanceof Ast.Function;
+        Parser parser = new Parser(tokens, oldItems[lo]);
+        int next = sync;
+        while (true) {
+            int position = parser.position();
+            while (next < count && oldItems[next] + moved < position) {
+                next++;
+            }
+            if (next < count && oldItems[next] + moved == position) {
+                break;
+            }
+            if (position >= tokens.size()) {
+                next = count;
+                break;
+            }
+            starts.add(position);
+            try {
+                switch (tokens.getKind(position)) {
+                    case Token.Kind.FUN:
+                        parsed.add(parser.parseFunction());
+                        function = true;
+                        break;
+                    case Token.Kind.VAL:
+                    case Token.Kind.LIST:
+                    case Token.Kind.VAR:
+                        if (function) {
+                            return fallback();
+                        }
+                        parsed.add(parser.parseGlobal());
+                        break;
+                    default:
+                        return fallback();
+                }
+            } catch (ParseException parseException) {
+                return fallback();
+            }
+        }
+        if (function && next < count && oldNodes[next] instanceof Ast.Global) {
+            return fallback();
+        }
+
+        int size = lo + parsed.size() + count - next;
+        int[] items = new int[size + 1];
+        Ast[] nodes = new Ast[size];
+        System.arraycopy(oldItems, 0, items, 0, lo);
+        System.arraycopy(oldNodes, 0, nodes, 0, lo);
+        for (int i = 0; i < parsed.size(); i++) {
+            items[lo + i] = starts.get(i);
+            nodes[lo + i] = parsed.get(i);
+        }
+        for (int i = next; i < count; i++) {
+            items[size - count + i] = oldItems[i] + moved;
+            nodes[size - count + i] = oldNodes[i];
+        }
+        items[size] = tokens.size();
+
+        List<Ast.Global> globals = new ArrayList<>();
+        List<Ast.Function> functions = new ArrayList<>();
+        for (Ast node : nodes) {
+            if (node instanceof Ast.Global) {
+                globals.add((Ast.Global) node);
+            } else {
+                functions.add((Ast.Function) node);
+            }
+        }
+        this.items = items;
+        this.nodes = nodes;
+        this.ast = new Ast.Source(globals, functions);
+        return ast;
+    }
+
+    /**
+     * Parses the whole source without an item table, which reports any error
+     * the same as a fresh parse.
+     */
+    private Ast.Source fallback() throws ParseException {
+        ast = new Parser(tokens).parseSource();
+        return ast;
+    }
+
+    /**
+     * Returns the first item which ends at or after the given index in the
+     * source, or the last item if there is none.
+     */
+    private int search(int[] items, int index) {
+        int low = 0;
+        int high = items.length - 2;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (end(items, middle) < index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index in the source just past the last token of an item.
+     */
+    private int end(int[] items, int item) {
+        int last = items[item + 1] - 1;
+        return tokens.getStart(last) + tokens.getLength(last);
+    }
+
+    /**
+     * A view of the characters of the source.
+     */
+    private final class Text implements CharSequence {
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[Objects.checkIndex(index, length)];
+        }
+
+        @Override
+        public String subSequence(int start, int end) {
+            Objects.checkFromToIndex(start, end, length);
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+
+    }
+
+}
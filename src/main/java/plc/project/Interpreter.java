@@ -5,15 +5,57 @@ import java.math.BigInteger;
 import java.math.MathContext;
 import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     // a change so that git works
+    private static final MathContext DIVISION = new MathContext(1, RoundingMode.HALF_UP);
+    private static final MathContext MULTIPLICATION = new MathContext(2, RoundingMode.HALF_UP);
+
     private Scope scope = new Scope(null);
+    private final Scope globals; // where functions are looked up from, see CallSite
+    private final Program program; // whose functions are called in this interpreter, if any
+    private final Budget budget;
+    private long remaining; // steps left in the budget, see charge
+    private Environment.PlcObject[] frame; // locals of the current call, see Resolver
+    private Environment.PlcObject[][] frames = new Environment.PlcObject[16][]; // recycled by call depth, see acquire
+    private int depth;
+    private Environment.PlcObject returned; // set by RETURN until the call completes, see execute
 
     public Interpreter(Scope parent) {
         scope = new Scope(parent);
+        globals = scope;
+        program = null;
+        budget = Budget.UNLIMITED;
+        remaining = budget.getSteps();
+        defineBuiltins(scope);
+    }
+
+    /**
+     * Creates the context of a single invocation of a program, with its own
+     * globals (initialized here) and frames. Calls to the functions of the
+     * program run in this interpreter instead of through the functions
+     * defined in its scope, which each create an interpreter of their own.
+     * Every loop iteration and call is charged to the budget.
+     */
+    Interpreter(Program program, Budget budget) {
+        this.program = program;
+        this.budget = budget;
+        remaining = budget.getSteps();
+        globals = program.getScope();
+        scope = new Scope(globals);
+        for (Ast.Global global : program.getGlobals()) {
+            visit(global);
+        }
+    }
+
+    /**
+     * Defines the functions available to every program.
+     */
+    static void defineBuiltins(Scope scope) {
         scope.defineFunction("print", 1, args -> {
             System.out.println(args.get(0).getValue());
             return Environment.NIL;
@@ -45,24 +87,44 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Function ast) { // this defines functions in current scope
-        scope.defineFunction(ast.getName(), ast.getParameters().size(), args -> {
-            try {
-                scope = new Scope(scope);
+        new Resolver().visit(ast);
+        scope.defineFunction(ast.getName(), ast.getParameters().size(), args -> call(ast, args));
+        return Environment.NIL;
+    }
 
+    /**
+     * Calls a function in this interpreter, which must have been resolved.
+     */
+    Environment.PlcObject call(Ast.Function ast, List<Environment.PlcObject> args) {
+        charge();
+        Environment.PlcObject[] caller = frame;
+        boolean resolved = ast.getFrameSize() >= 0; // if so, nothing is defined in a scope
+        returned = null;
+        try {
+            if (resolved) { // arguments take the first slots
+                frame = acquire(ast.getFrameSize());
+                for (int i = 0; i < args.size(); i++) {
+                    frame[i] = args.get(i);
+                }
+            }
+            else {
+                scope = new Scope(scope);
                 for (int i = 0; i < args.size(); i++) { // this defines arguments
                     scope.defineVariable(ast.getParameters().get(i), true, args.get(i));
                 }
+            }
 
-                for (Ast.Statement stmt : ast.getStatements()) {
-                    visit(stmt);
-                }
-            } catch (Return r) {
-                return r.value;
-            } finally {
-                scope = scope.getParent();
+            if (execute(ast.getStatements())) {
+                Environment.PlcObject value = returned;
+                returned = null;
+                return value;
             }
-            return Environment.NIL;
-        });
+        } finally {
+            returned = null;
+            if (resolved) release(ast.getFrameSize());
+            else scope = scope.getParent();
+            frame = caller;
+        }
         return Environment.NIL;
     }
 
@@ -77,10 +139,10 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
         if( ast.getValue().isPresent() ) {
             Ast.Expression expr = (Ast.Expression) ast.getValue().get();
-            Environment.PlcObject var = new Environment.PlcObject(scope, expr);
-            scope.defineVariable(ast.getName(), false, visit(expr));
-            //return Environment.create(var);
+            if (ast.getSlot() >= 0) frame[ast.getSlot()] = visit(expr);
+            else scope.defineVariable(ast.getName(), false, visit(expr));
         }
+        else if (ast.getSlot() >= 0) frame[ast.getSlot()] = Environment.NIL;
         else scope.defineVariable(ast.getName(), false, Environment.NIL);
         return Environment.NIL;
     }
@@ -89,31 +151,23 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     public Environment.PlcObject visit(Ast.Statement.Assignment ast) {
         Ast.Expression acc = ast.getReceiver();
         if (acc.getClass().equals(Ast.Expression.Access.class)) {
-            try {
-                Ast.Expression.Access postcheck = (Ast.Expression.Access) ast.getReceiver();
-                scope = new Scope(scope);
-                if (postcheck.getOffset().isPresent()) { // this means it is a list
-                    List<Object> list = new ArrayList<>();
-
-                    Ast.Expression.Literal off = (Ast.Expression.Literal) postcheck.getOffset().get();
-                    BigInteger offset = (BigInteger) off.getLiteral();
+            Ast.Expression.Access postcheck = (Ast.Expression.Access) ast.getReceiver();
+            if (postcheck.getOffset().isPresent()) { // this means it is a list
+                Ast.Expression.Literal off = (Ast.Expression.Literal) postcheck.getOffset().get();
+                BigInteger offset = (BigInteger) off.getLiteral();
 
 
-                    Object values = scope.lookupVariable(postcheck.getName()).getValue().getValue();
-                    //System.out.println(values);
-                    list = (List<Object>) values; // TODO: stupid cast issue again...
-                    Object futureval = visit(ast.getValue()).getValue();
-                    list.set(offset.intValue(), futureval);
-                    scope.lookupVariable(postcheck.getName()).setValue(Environment.create(list));
+                Object values = read(postcheck).getValue();
+                //System.out.println(values);
+                List<Object> list = (List<Object>) values; // TODO: stupid cast issue again...
+                Object futureval = visit(ast.getValue()).getValue();
+                list.set(offset.intValue(), futureval);
+                write(postcheck, Environment.create(list));
 
-                   // TODO: does this work correctly??? it takes the values, changes them in a local temp list, then sets values to temp list
-                }
-                else { // this means its just a variable
-                    scope.lookupVariable(postcheck.getName()).setValue(visit(ast.getValue()));
-                }
+               // TODO: does this work correctly??? it takes the values, changes them in a local temp list, then sets values to temp list
             }
-            finally {
-                scope = scope.getParent();
+            else { // this means its just a variable
+                write(postcheck, visit(ast.getValue()));
             }
         }
         else throw new RuntimeException("wrong type for assignment");
@@ -123,44 +177,31 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     @Override
     public Environment.PlcObject visit(Ast.Statement.If ast) {
         //System.out.println("evaluating if");
-        if (requireType(Boolean.class, visit(ast.getCondition())) != null) { // checks to make sure visit both exists and is a boolean
-            try {
-                scope = new Scope(scope);
-
-                if ((Boolean)visit(ast.getCondition()).getValue()) { // if condition evaluates to true
-                    for (int i = 0; i < ast.getThenStatements().size(); i++) {
-                        visit(ast.getThenStatements().get(i)); // visit then statements
-                    }
-                }
-                else { // if condition evaluates to false
-                    for (int i = 0; i < ast.getElseStatements().size(); i++) {
-                        visit(ast.getElseStatements().get(i)); // visit else statements
-                    }
-                }
-            }
-            finally {
-                scope = scope.getParent(); // restore scope
-            }
+        boolean condition = test(ast.getCondition()); // checks the condition is a boolean, evaluating it once
+        if (condition) { // if condition evaluates to true
+            block(ast.getThenStatements()); // visit then statements
+        }
+        else { // if condition evaluates to false
+            block(ast.getElseStatements()); // visit else statements
         }
         return Environment.NIL;
     }
 
     @Override
     public Environment.PlcObject visit(Ast.Statement.Switch ast) {
-        List<Optional<Ast.Expression>> values = new ArrayList<>();
         Ast.Expression.Access nameexpr = (Ast.Expression.Access) ast.getCondition();
         String name = nameexpr.getName(); // this gets the name of the switch
         //System.out.println(name);
-        char variable = (char) scope.lookupVariable(name).getValue().getValue(); // this gets the value of the variable that runs the switch
+        char variable = (char) read(nameexpr).getValue(); // this gets the value of the variable that runs the switch
         //System.out.println(variable);
+        boolean declares = false; // the cases share a single scope
+        for (Ast.Statement.Case statement : ast.getCases()) {
+            declares |= declares(statement.getStatements());
+        }
+        if (declares) scope = new Scope(scope);
         try {
-            scope = new Scope(scope);
             for (int i = 0; i < ast.getCases().size(); i++) {
-
-                values.add(ast.getCases().get(i).getValue());
-
-
-                Ast.Expression value = values.get(i).orElse(null);
+                Ast.Expression value = ast.getCases().get(i).getValue().orElse(null);
                 Ast.Expression.Literal valueLit = (Ast.Expression.Literal) value;
                 if ( valueLit != null) {
                     //System.out.println(valueLit.getLiteral());
@@ -171,11 +212,14 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
                     }
                 }
                 else visit(ast.getCases().get(ast.getCases().size() - 1));
+                if (returned != null) {
+                    break;
+                }
             }
 
         }
         finally {
-            scope = scope.getParent();
+            if (declares) scope = scope.getParent();
         }
 
         return Environment.NIL;
@@ -185,11 +229,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     public Environment.PlcObject visit(Ast.Statement.Case ast) {
         //System.out.println("evaluating case");
 
-            for (Ast.Statement stmt : ast.getStatements()) {
-               visit(stmt);
-            }
-
-
+        execute(ast.getStatements());
         return Environment.NIL;
     }
 
@@ -197,16 +237,18 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     public Environment.PlcObject visit(Ast.Statement.While ast) {
         //throw new UnsupportedOperationException(); //TODO (in lecture)
         //System.out.println("inside while visit");
-        while (requireType(Boolean.class, visit(ast.getCondition()))) {
-             try {
-                 scope = new Scope(scope);
-                 for (Ast.Statement stmt : ast.getStatements()) {
-                     visit(stmt);
-                 }
-             }
-             finally {
-                 scope = scope.getParent();
-             }
+        boolean declares = declares(ast.getStatements()); // decided once rather than on each iteration
+        while (test(ast.getCondition())) {
+            charge(); // a back-edge
+            if (declares) scope = new Scope(scope);
+            try {
+                if (execute(ast.getStatements())) {
+                    break;
+                }
+            }
+            finally {
+                if (declares) scope = scope.getParent();
+            }
         }
 
         return Environment.NIL;
@@ -214,7 +256,95 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Statement.Return ast) {
-        throw new Return(visit(ast.getValue()));
+        returned = visit(ast.getValue());
+        return Environment.NIL;
+    }
+
+    /**
+     * Executes statements in order until one returns, which sets the value
+     * of the call in returned and is propagated by each enclosing block
+     * stopping in turn, instead of throwing. Returns whether a statement
+     * returned.
+     */
+    private boolean execute(List<Ast.Statement> statements) {
+        for (int i = 0; i < statements.size(); i++) {
+            visit(statements.get(i));
+            if (returned != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Charges a step to the budget, throwing if it is used up or (checked
+     * every so often) past its deadline.
+     */
+    private void charge() {
+        if (--remaining < 0) {
+            throw Budget.steps(budget.getSteps());
+        }
+        if ((remaining & (Budget.CLOCK_INTERVAL - 1)) == 0 && budget.isExpired()) {
+            throw Budget.deadline();
+        }
+    }
+
+    /**
+     * Executes a block in a scope of its own if it declares a variable by
+     * name, and otherwise in the current scope since its own would be left
+     * empty.
+     */
+    private boolean block(List<Ast.Statement> statements) {
+        if (!declares(statements)) {
+            return execute(statements);
+        }
+        scope = new Scope(scope);
+        try {
+            return execute(statements);
+        } finally {
+            scope = scope.getParent();
+        }
+    }
+
+    /**
+     * Returns whether statements directly declare a variable by name, which
+     * is any declaration not resolved to a slot of the frame (see
+     * {@link Resolver}). Nested blocks are not included as they get their
+     * own scope.
+     */
+    private static boolean declares(List<Ast.Statement> statements) {
+        for (int i = 0; i < statements.size(); i++) {
+            if (statements.get(i) instanceof Ast.Statement.Declaration && ((Ast.Statement.Declaration) statements.get(i)).getSlot() < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a frame with at least the given number of slots for a call,
+     * reusing the one of the last call at the same depth.
+     */
+    private Environment.PlcObject[] acquire(int size) {
+        if (depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        Environment.PlcObject[] pooled = frames[depth];
+        if (pooled == null || pooled.length < size) {
+            pooled = new Environment.PlcObject[size];
+            frames[depth] = pooled;
+        }
+        depth++;
+        return pooled;
+    }
+
+    /**
+     * Returns the frame of the current call to the pool, clearing it so it
+     * doesn't keep its values alive.
+     */
+    private void release(int size) {
+        depth--;
+        Arrays.fill(frames[depth], 0, size, null);
     }
 
     @Override
@@ -233,159 +363,104 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Binary ast) {
-
-        String op = ast.getOperator();
-
-        if (op.equals("&&")) {
-            // TODO: THIS ONLY WORKS WHEN BOTH EXIST?
-            if (requireType(Boolean.class, visit(ast.getLeft())) == requireType(Boolean.class, visit(ast.getRight())))
-                return visit(ast.getLeft()); // return left
-            else return Environment.create(Boolean.FALSE); // if not return false
+        Operator operator = Operator.of(ast.getOperator());
+        if (operator == Operator.AND || operator == Operator.OR) {
+            return Environment.create(test(ast));
         }
 
-        if (op.equals("||")) {
-            if (requireType(Boolean.class, visit(ast.getLeft())))
-                return visit(ast.getLeft()); // return left
-            if (requireType(Boolean.class, visit(ast.getRight())))
-                return visit(ast.getRight()); // return right
-            else return Environment.create(Boolean.FALSE); // if not return false
-        }
-
-        if (op.equals("<")) {
-            if (visit(ast.getLeft()).getValue().getClass() == visit(ast.getRight()).getValue().getClass()) {
-                Comparable<Object> left = (Comparable<Object>) visit(ast.getLeft()).getValue();
-                Comparable<Object> right = (Comparable<Object>) visit(ast.getRight()).getValue();
-                int compare = left.compareTo(right);
+        Environment.PlcObject left = visit(ast.getLeft()); // each operand is evaluated exactly once
+        Environment.PlcObject right = visit(ast.getRight());
+        return operator.apply(left, right);
+    }
 
-                if (compare < 0) return Environment.create(Boolean.TRUE);
-                else return Environment.create(Boolean.FALSE);
-            }
+    /**
+     * Evaluates a condition, which must be a boolean. The operands of && and
+     * || (including through groups) are tested directly, so the right is only
+     * evaluated if the left doesn't decide the result and no intermediate
+     * objects are created.
+     */
+    private boolean test(Ast.Expression condition) {
+        while (condition instanceof Ast.Expression.Group) {
+            condition = ((Ast.Expression.Group) condition).getExpression();
         }
-
-        if (op.equals(">")) {
-            if (visit(ast.getLeft()).getValue().getClass() == visit(ast.getRight()).getValue().getClass()) {
-                Comparable<Object> left = (Comparable<Object>) visit(ast.getLeft()).getValue();
-                Comparable<Object> right = (Comparable<Object>) visit(ast.getRight()).getValue();
-                int compare = left.compareTo(right);
-
-                if (compare > 0) return Environment.create(Boolean.TRUE);
-                else return Environment.create(Boolean.FALSE);
+        if (condition instanceof Ast.Expression.Binary) {
+            Ast.Expression.Binary binary = (Ast.Expression.Binary) condition;
+            Operator operator = Operator.of(binary.getOperator());
+            if (operator == Operator.AND) {
+                return test(binary.getLeft()) && test(binary.getRight());
+            } else if (operator == Operator.OR) {
+                return test(binary.getLeft()) || test(binary.getRight());
             }
         }
+        return requireType(Boolean.class, visit(condition));
+    }
 
-        if (op.equals("==")) {
-            if (visit(ast.getLeft()).getValue().getClass() == visit(ast.getRight()).getValue().getClass()) {
-                Comparable<Object> left = (Comparable<Object>) visit(ast.getLeft()).getValue();
-                Comparable<Object> right = (Comparable<Object>) visit(ast.getRight()).getValue();
-                int compare = left.compareTo(right);
-
-                if (compare == 0) return Environment.create(Boolean.TRUE);
-                else return Environment.create(Boolean.FALSE);
-            }
+    /**
+     * Compares two operands of the same comparable type.
+     */
+    @SuppressWarnings("unchecked")
+    static int compare(Environment.PlcObject left, Environment.PlcObject right) {
+        if (left.isLong() && right.isLong()) {
+            return Long.compare(left.longValue(), right.longValue());
         }
-
-        if (op.equals("!=")) {
-            if (visit(ast.getLeft()).getValue().getClass() == visit(ast.getRight()).getValue().getClass()) {
-                Comparable<Object> left = (Comparable<Object>) visit(ast.getLeft()).getValue();
-                Comparable<Object> right = (Comparable<Object>) visit(ast.getRight()).getValue();
-                int compare = left.compareTo(right);
-
-                if (compare != 0) return Environment.create(Boolean.TRUE);
-                else return Environment.create(Boolean.FALSE);
-            }
+        Object l = left.getValue();
+        Object r = right.getValue();
+        if (l.getClass() != r.getClass() || !(l instanceof Comparable)) {
+            throw new RuntimeException("incorrect comparison types");
         }
+        return ((Comparable<Object>) l).compareTo(r);
+    }
 
-        if (op.equals("+")) {
-            //System.out.println("conc");
-
-            // string
-            if (visit(ast.getLeft()).getValue().getClass().equals(String.class) && visit(ast.getRight()).getValue().getClass().equals(String.class)) {
-                //System.out.println("two strings");
-                return Environment.create(visit(ast.getLeft()).getValue().toString() + visit(ast.getRight()).getValue().toString());
-            }
-            // bigDecimal
-            if (visit(ast.getLeft()).getValue().getClass().equals(BigDecimal.class) && visit(ast.getRight()).getValue().getClass().equals(BigDecimal.class)) {
-                //System.out.println("two decimal");
-                return Environment.create(BigDecimal.class.cast(visit(ast.getLeft()).getValue()).add(BigDecimal.class.cast(visit(ast.getRight()).getValue())));
-            }
-            //bigInteger
-            if (visit(ast.getLeft()).getValue().getClass().equals(BigInteger.class) && visit(ast.getRight()).getValue().getClass().equals(BigInteger.class)) {
-                //System.out.println("two integer");
-                return Environment.create(BigInteger.class.cast(visit(ast.getLeft()).getValue()).add(BigInteger.class.cast(visit(ast.getRight()).getValue())));
+    /**
+     * Applies an arithmetic operator to two integers which fit in longs,
+     * returning null if the result doesn't so it is redone with BigIntegers.
+     */
+    static Environment.PlcObject arithmetic(Operator operator, long left, long right) {
+        try {
+            switch (operator) {
+                case ADD: return Environment.createInteger(Math.addExact(left, right));
+                case SUBTRACT: return Environment.createInteger(Math.subtractExact(left, right));
+                case MULTIPLY: return Environment.createInteger(Math.multiplyExact(left, right));
+                case DIVIDE:
+                    if (right == 0 || right == -1 && left == Long.MIN_VALUE) return null; // BigInteger reports division by zero
+                    return Environment.createInteger(left / right);
+                case POWER: return Environment.createInteger((long) Math.pow((int) left, (int) right));
             }
-            else throw new RuntimeException("incorrect concatenation types");
-
-        }
-
-        if (op.equals("-")) {
-            //System.out.println("conc");
+        } catch (ArithmeticException overflow) {}
+        return null;
+    }
 
-            // bigDecimal
-            if (visit(ast.getLeft()).getValue().getClass().equals(BigDecimal.class) && visit(ast.getRight()).getValue().getClass().equals(BigDecimal.class)) {
-                //System.out.println("two decimal");
-                return Environment.create(BigDecimal.class.cast(visit(ast.getLeft()).getValue()).subtract(BigDecimal.class.cast(visit(ast.getRight()).getValue())));
-            }
-            //bigInteger
-            if (visit(ast.getLeft()).getValue().getClass().equals(BigInteger.class) && visit(ast.getRight()).getValue().getClass().equals(BigInteger.class)) {
-                //System.out.println("two integer");
-                return Environment.create(BigInteger.class.cast(visit(ast.getLeft()).getValue()).subtract(BigInteger.class.cast(visit(ast.getRight()).getValue())));
+    /**
+     * Applies an arithmetic operator, dispatching on the operand types.
+     */
+    private static Object arithmetic(Operator operator, Object left, Object right) {
+        if (left instanceof BigInteger && right instanceof BigInteger) {
+            BigInteger l = (BigInteger) left;
+            BigInteger r = (BigInteger) right;
+            switch (operator) {
+                case ADD: return l.add(r);
+                case SUBTRACT: return l.subtract(r);
+                case MULTIPLY: return l.multiply(r);
+                case DIVIDE: return l.divide(r);
+                case POWER: return BigInteger.valueOf((long) Math.pow(l.intValue(), r.intValue()));
             }
-            else throw new RuntimeException("incorrect concatenation types");
-
         }
-
-        if (op.equals("/")) {
-            //System.out.println("conc");
-            MathContext mc = new MathContext(1, RoundingMode.HALF_UP) ;
-            // bigDecimal
-            if (visit(ast.getLeft()).getValue().getClass().equals(BigDecimal.class) && visit(ast.getRight()).getValue().getClass().equals(BigDecimal.class)) {
-                if (BigDecimal.class.cast(visit(ast.getRight()).getValue()).equals(BigDecimal.ZERO)) throw new RuntimeException("divide by 0");
-                //System.out.println("two decimal");
-                return Environment.create(BigDecimal.class.cast(visit(ast.getLeft()).getValue()).divide(BigDecimal.class.cast(visit(ast.getRight()).getValue()), mc));
-            }
-            //bigInteger
-            if (visit(ast.getLeft()).getValue().getClass().equals(BigInteger.class) && visit(ast.getRight()).getValue().getClass().equals(BigInteger.class)) {
-                //System.out.println("two integer");
-                return Environment.create(BigInteger.class.cast(visit(ast.getLeft()).getValue()).divide(BigInteger.class.cast(visit(ast.getRight()).getValue())));
+        else if (left instanceof BigDecimal && right instanceof BigDecimal) {
+            BigDecimal l = (BigDecimal) left;
+            BigDecimal r = (BigDecimal) right;
+            switch (operator) {
+                case ADD: return l.add(r);
+                case SUBTRACT: return l.subtract(r);
+                case MULTIPLY: return l.multiply(r, MULTIPLICATION);
+                case DIVIDE:
+                    if (r.signum() == 0) throw new RuntimeException("divide by 0");
+                    return l.divide(r, DIVISION);
             }
-            else throw new RuntimeException("incorrect division types");
-
         }
-
-        if (op.equals("*")) {
-            //System.out.println("conc");
-            MathContext mc = new MathContext(2, RoundingMode.HALF_UP) ;
-            // bigDecimal
-            if (visit(ast.getLeft()).getValue().getClass().equals(BigDecimal.class) && visit(ast.getRight()).getValue().getClass().equals(BigDecimal.class)) {
-                //System.out.println("two decimal");
-                return Environment.create(BigDecimal.class.cast(visit(ast.getLeft()).getValue()).multiply(BigDecimal.class.cast(visit(ast.getRight()).getValue()), mc));
-            }
-            //bigInteger
-            if (visit(ast.getLeft()).getValue().getClass().equals(BigInteger.class) && visit(ast.getRight()).getValue().getClass().equals(BigInteger.class)) {
-                //System.out.println("two integer");
-                return Environment.create(BigInteger.class.cast(visit(ast.getLeft()).getValue()).multiply(BigInteger.class.cast(visit(ast.getRight()).getValue())));
-            }
-            else throw new RuntimeException("incorrect multiplication types");
-
-        }
-        if (op.equals("^")) {
-            //System.out.println("conc");
-            MathContext mc = new MathContext(2, RoundingMode.HALF_UP) ;
-            if (visit(ast.getLeft()).getValue().getClass().equals(BigInteger.class) && visit(ast.getRight()).getValue().getClass().equals(BigInteger.class)) {
-                //System.out.println("two integer");
-                int result = visit(ast.getLeft()).getValue().hashCode();
-                int result2 = visit(ast.getRight()).getValue().hashCode();
-                //System.out.println(result + " " + result2);
-                //return Environment.create((int)(visit(ast.getLeft()).getValue()).pow((int)(visit(ast.getRight()).getValue())));
-                long result3 = (long) Math.pow(result, result2);
-                BigInteger out = BigInteger.valueOf(result3);
-                return Environment.create(out);
-            }
-            else throw new RuntimeException("incorrect multiplication types");
-
+        else if (operator == Operator.ADD && left instanceof String && right instanceof String) {
+            return (String) left + right;
         }
-
-        return Environment.NIL;
+        throw new RuntimeException("incorrect " + operator.description + " types");
     }
 
     @Override
@@ -394,53 +469,79 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
         if (ast.getOffset().isPresent()) { // list
             Ast.Expression.Literal off = (Ast.Expression.Literal) ast.getOffset().get();
             BigInteger offset = (BigInteger) off.getLiteral(); // i did this in two lines as to prevent casting issues
-            Environment.PlcObject value = scope.lookupVariable(ast.getName()).getValue();
-            Object values = scope.lookupVariable(ast.getName()).getValue().getValue();
+            Environment.PlcObject value = read(ast);
+            Object values = value.getValue();
             //System.out.println(values);
             List<Object> list = (List<Object>) values;
             return Environment.create(list.get(offset.intValue()));
         }
-        return scope.lookupVariable(ast.getName()).getValue();
+        return read(ast);
 
     }
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Function ast) {
-        try {
-            scope = new Scope(scope);
-            List<Environment.PlcObject> args = new ArrayList<>();
-            for (Ast.Expression arg : ast.getArguments()) {
-                args.add(visit(arg));
+        List<Ast.Expression> arguments = ast.getArguments();
+        List<Environment.PlcObject> args;
+        switch (arguments.size()) {
+            case 0:
+                args = CallSite.arguments();
+                break;
+            case 1:
+                args = CallSite.arguments(visit(arguments.get(0)));
+                break;
+            case 2: {
+                Environment.PlcObject first = visit(arguments.get(0));
+                args = CallSite.arguments(first, visit(arguments.get(1)));
+                break;
             }
-            return scope.lookupFunction(ast.getName(), args.size()).invoke(args);
-        }
-        finally {
-            scope = scope.getParent(); // return scope
+            default:
+                Environment.PlcObject[] values = new Environment.PlcObject[arguments.size()];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = visit(arguments.get(i));
+                }
+                args = CallSite.arguments(values);
         }
+        // functions are only defined at the top level, so block scopes never
+        // shadow them and every call can be resolved from the globals
+        Environment.Function function = ast.getCallSite().resolve(globals);
+        Ast.Function body = program != null ? program.getBody(function) : null;
+        return body != null ? call(body, args) : function.invoke(args);
     }
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.PlcList ast) {
-        try {
-            scope = new Scope(scope);
-            List<Object> values = new ArrayList<>();
+        List<Object> values = new ArrayList<>(ast.getValues().size());
 
-            for (Ast.Expression val : ast.getValues()) {
-                values.add(visit(val).getValue());
-            }
-            return new Environment.PlcObject(scope, values);
-            //System.out.println(values);
+        for (Ast.Expression val : ast.getValues()) {
+            values.add(visit(val).getValue());
         }
-        finally {
-            scope = scope.getParent(); // return scope
+        return new Environment.PlcObject(scope, values);
+    }
+
+    /**
+     * Returns the value of a variable, from the frame if it is a resolved
+     * local and otherwise by name from the scope.
+     */
+    private Environment.PlcObject read(Ast.Expression.Access ast) {
+        if (ast.getSlot() >= 0) {
+            return frame[ast.getSlot()];
+        }
+        return scope.lookupVariable(ast.getName()).getValue();
+    }
+
+    private void write(Ast.Expression.Access ast, Environment.PlcObject value) {
+        if (ast.getSlot() >= 0) {
+            frame[ast.getSlot()] = value;
+        } else {
+            scope.lookupVariable(ast.getName()).setValue(value);
         }
-        //return Environment.NIL;
     }
 
     /**
      * Helper function to ensure an object is of the appropriate type.
      */
-    private static <T> T requireType(Class<T> type, Environment.PlcObject object) {
+    public static <T> T requireType(Class<T> type, Environment.PlcObject object) {
         if (type.isInstance(object.getValue())) {
             return type.cast(object.getValue());
         } else {
@@ -449,14 +550,76 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
     }
 
     /**
-     * Exception class for returning values.
+     * The binary operators, which are looked up from the operator of the AST.
      */
-    private static class Return extends RuntimeException {
+    public enum Operator {
+
+        AND("&&", "logical"),
+        OR("||", "logical"),
+        LESS("<", "comparison"),
+        LESS_EQUAL("<=", "comparison"),
+        GREATER(">", "comparison"),
+        GREATER_EQUAL(">=", "comparison"),
+        EQUAL("==", "comparison"),
+        NOT_EQUAL("!=", "comparison"),
+        ADD("+", "concatenation"),
+        SUBTRACT("-", "subtraction"),
+        MULTIPLY("*", "multiplication"),
+        DIVIDE("/", "division"),
+        POWER("^", "exponentiation");
+
+        private static final Map<String, Operator> OPERATORS = new HashMap<>();
+
+        static {
+            for (Operator operator : values()) {
+                OPERATORS.put(operator.symbol, operator);
+            }
+        }
+
+        private final String symbol;
+        private final String description;
+
+        Operator(String symbol, String description) {
+            this.symbol = symbol;
+            this.description = description;
+        }
 
-        private final Environment.PlcObject value;
+        public static Operator of(String symbol) {
+            Operator operator = OPERATORS.get(symbol);
+            if (operator == null) {
+                throw new RuntimeException("unsupported operator " + symbol);
+            }
+            return operator;
+        }
 
-        private Return(Environment.PlcObject value) {
-            this.value = value;
+        /**
+         * Applies the operator to its evaluated operands. This doesn't
+         * support && and ||, which don't always evaluate the right operand.
+         */
+        public Environment.PlcObject apply(Environment.PlcObject left, Environment.PlcObject right) {
+            switch (this) {
+                case LESS:
+                    return Environment.create(compare(left, right) < 0);
+                case LESS_EQUAL:
+                    return Environment.create(compare(left, right) <= 0);
+                case GREATER:
+                    return Environment.create(compare(left, right) > 0);
+                case GREATER_EQUAL:
+                    return Environment.create(compare(left, right) >= 0);
+                case EQUAL:
+                    return Environment.create(compare(left, right) == 0);
+                case NOT_EQUAL:
+                    return Environment.create(compare(left, right) != 0);
+                case AND:
+                case OR:
+                    throw new RuntimeException("logical operator " + symbol + " short-circuits, so it can't be applied to evaluated operands");
+                default:
+                    if (left.isLong() && right.isLong()) {
+                        Environment.PlcObject result = arithmetic(this, left.longValue(), right.longValue());
+                        if (result != null) return result;
+                    }
+                    return Environment.create(arithmetic(this, left.getValue(), right.getValue()));
+            }
         }
 
     }
@@ -1,7 +1,19 @@
 package plc.project;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
 
 /**
  * The lexer works through three main functions:
@@ -14,15 +26,98 @@ import java.util.List;
  * should throw a {@link ParseException} with an index at the character which is
  * invalid.
  *
- * The {@link #peek(String...)} and {@link #match(String...)} functions are * helpers you need to use, they will make the implementation a lot easier. */
+ * Scanning is table driven: every ASCII character is assigned a set of class
+ * bits and a start state once, up front, so deciding what a character is costs
+ * a single array load instead of compiling and running a regex. The lex methods
+ * below are the states of the DFA and only ever step forward through the input.
+ *
+ * Besides lexing a whole string up front with {@link #lex()}, the lexer can
+ * read from a {@link Reader} or channel and hand out tokens one at a time
+ * through {@link #iterator()}, in which case only a small window of the input
+ * is ever held in memory.
+ *
+ * The {@link #peek(String...)} and {@link #match(String...)} functions are
+ * the original regex helpers and are kept for callers that still use them. */
 public final class Lexer {
 
+    // character classes, a character may belong to several
+    private static final int WHITESPACE = 1;
+    private static final int IDENTIFIER_START = 1 << 1; // [A-Za-z_@]
+    private static final int IDENTIFIER_PART = 1 << 2; // [A-Za-z_0-9-]
+    private static final int DIGIT = 1 << 3; // [0-9]
+    private static final int SIGN = 1 << 4; // [\\+-]
+    private static final int ESCAPE = 1 << 5; // [brnt"'\\]
+    private static final int COMPARATOR = 1 << 6; // [<>!=], may be followed by '='
+    private static final int STRING_END = 1 << 7; // ["\\\n\r], stops the string body
+    private static final int LINE_TERMINATOR = 1 << 8; // never matched by the regex '.'
+    private static final int END = 1 << 9; // past the end of the input
+
+    // start states of the DFA
+    private static final byte OPERATOR = 0;
+    private static final byte IDENTIFIER = 1;
+    private static final byte NUMBER = 2;
+    private static final byte SIGNED = 3; // a number if a digit follows, otherwise an operator
+    private static final byte CHARACTER = 4;
+    private static final byte STRING = 5;
+    private static final byte INVALID = 6;
+
+    private static final int[] CLASSES = new int[128];
+    private static final byte[] STATES = new byte[128];
+
+    static {
+        for (char c : " \b\n\r\t".toCharArray()) CLASSES[c] |= WHITESPACE;
+        for (char c = 'A'; c <= 'Z'; c++) CLASSES[c] |= IDENTIFIER_START | IDENTIFIER_PART;
+        for (char c = 'a'; c <= 'z'; c++) CLASSES[c] |= IDENTIFIER_START | IDENTIFIER_PART;
+        CLASSES['_'] |= IDENTIFIER_START | IDENTIFIER_PART;
+        CLASSES['@'] |= IDENTIFIER_START;
+        CLASSES['-'] |= IDENTIFIER_PART;
+        for (char c = '0'; c <= '9'; c++) CLASSES[c] |= DIGIT | IDENTIFIER_PART;
+        for (char c : "\\+-".toCharArray()) CLASSES[c] |= SIGN;
+        for (char c : "brnt\"'\\".toCharArray()) CLASSES[c] |= ESCAPE;
+        for (char c : "<>!=".toCharArray()) CLASSES[c] |= COMPARATOR;
+        for (char c : "\"\\\n\r".toCharArray()) CLASSES[c] |= STRING_END;
+        CLASSES['\n'] |= LINE_TERMINATOR;
+        CLASSES['\r'] |= LINE_TERMINATOR;
+
+        for (int c = 0; c < 128; c++) {
+            if ((CLASSES[c] & IDENTIFIER_START) != 0) STATES[c] = IDENTIFIER;
+            else if ((CLASSES[c] & DIGIT) != 0) STATES[c] = NUMBER;
+            else if ((CLASSES[c] & SIGN) != 0) STATES[c] = SIGNED;
+            else if (c == '\'') STATES[c] = CHARACTER;
+            else if (c == '"') STATES[c] = STRING;
+            else if ((CLASSES[c] & LINE_TERMINATOR) != 0) STATES[c] = INVALID;
+            else STATES[c] = OPERATOR;
+        }
+    }
+
     private final CharStream chars;
+    private final CharSequence input;
 
     public Lexer(String input) {
-        chars = new CharStream(input);
+        this((CharSequence) input);
+    }
+
+    /**
+     * Lexes any char sequence, such as the mapped contents returned by
+     * {@link SourceFile#map(java.nio.file.Path)}, without copying it into a
+     * string first.
+     */
+    public Lexer(CharSequence input) {
+        this.chars = new CharStream(input);
+        this.input = input;
+    }
+
+    public Lexer(Reader input) {
+        this.chars = new CharStream(input);
+        this.input = null;
     }
 
+    /**
+     * Lexes the UTF-8 encoded contents of the channel.
+     */
+    public Lexer(ReadableByteChannel input) {
+        this(Channels.newReader(input, StandardCharsets.UTF_8));
+    }
 
     /**
      * Repeatedly lexes the input using {@link #lexToken()}, also skipping over
@@ -30,17 +125,88 @@ public final class Lexer {
      */
     public List<Token> lex() {
         ArrayList<Token> tokens = new ArrayList<Token>();
-        while(chars.has(0)) {
-            if(!(match(" ") || match("\b") || match("\n") || match("\r") || match("\t"))) { // checks whitespace
-                tokens.add(lexToken());
+        Iterator<Token> iterator = iterator();
+        while (iterator.hasNext()) {
+            tokens.add(iterator.next());
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the remaining tokens lazily, lexing each one only when it is
+     * asked for. A {@link ParseException} is thrown from {@code next()} (or
+     * {@code hasNext()} for trailing input) at the point the bad token is
+     * reached, the same as {@link #lex()} would.
+     */
+    public Iterator<Token> iterator() {
+        return new Iterator<Token>() {
+
+            @Override
+            public boolean hasNext() {
+                skipWhitespace();
+                return chars.has(0);
             }
-            else {
-                chars.skip();
+
+            @Override
+            public Token next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return lexToken();
             }
+
+        };
+    }
+
+    /**
+     * Lexes the remaining input into a {@link TokenBuffer}, recording only the
+     * type and span of each token. The buffer refers back to the source for
+     * literals, so this is only available when lexing a char sequence.
+     */
+    public TokenBuffer lexBuffer() {
+        if (input == null) {
+            throw new IllegalStateException("A token buffer requires the input as a char sequence.");
         }
+        TokenBuffer tokens = new TokenBuffer(input);
+        while (lexInto(tokens)) {}
         return tokens;
     }
 
+    /**
+     * Lexes the next token into the buffer, returning false if the input has
+     * no more tokens.
+     */
+    boolean lexInto(TokenBuffer tokens) {
+        skipWhitespace();
+        if (!chars.has(0)) {
+            return false;
+        }
+        Token.Type type = scanToken();
+        tokens.add(type, chars.kind(type), chars.index - chars.length, chars.length);
+        chars.skip();
+        return true;
+    }
+
+    /**
+     * Moves the lexer to the given index of the input, which should be the
+     * start of a token or whitespace, to resume lexing there.
+     */
+    void seek(int index) {
+        chars.index = index;
+        chars.length = 0;
+    }
+
+    public Spliterator<Token> spliterator() {
+        return Spliterators.spliteratorUnknownSize(iterator(), Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+    }
+
+    private void skipWhitespace() {
+        while ((classAt(0) & WHITESPACE) != 0) {
+            chars.advance();
+            chars.skip();
+        }
+    }
+
     /**
      * This method determines the type of the next token, delegating to the
      * appropriate lex method. As such, it is best for this method to not change
@@ -49,125 +215,164 @@ public final class Lexer {
      * The next character should start a valid token since whitespace is handled
      * by {@link #lex()}
      */
-
     public Token lexToken() {
-        // TODO: convert to switches -- will be much faster
-        if(peek("[A-Za-z_@]")) { // checks for alpha only (and @), because identifiers cant begin with a digit
-                return lexIdentifier();
-        }
-        if(peek("[0-9]+") || peek("[\\\\+-]?", "[0-9]+")) { // checks for numbers with and without sign
-            return lexNumber();
-        }
-        if(peek("'")) { // just checks for a single quote
-            return lexCharacter();
-        }
-        if(peek("\"")) { // just checks for a double quote
-            return lexString();
-        }
-        if(peek("([<>!=] '='?|(.))")) { // checks for symbols
-            return lexOperator();
-        }
-        throw new UnsupportedOperationException(); // removing this prevents it from running... no return token
-                                                   // if you jump into next lex method (at least immediately)
+        return chars.emit(scanToken());
     }
 
     public Token lexIdentifier() {
-        match("[A-Za-z_0-9-@]"); // matches for identifier, adding numbers to allow for alphanumeric
-        while(match("[A-Za-z_0-9-]")); // steps through all chars, making sure they match
-        return chars.emit(Token.Type.IDENTIFIER);
+        return chars.emit(scanIdentifier());
     }
 
     public Token lexNumber() {
-        if (peek("[\\\\+-]?")) match("[\\\\+-]?"); // takes in sign
+        return chars.emit(scanNumber());
+    }
+
+    public Token lexCharacter() {
+        return chars.emit(scanCharacter());
+    }
+
+    public Token lexString() {
+        return chars.emit(scanString());
+    }
+
+    public void lexEscape() {
+        if (is(0, '\\')) chars.advance();
 
-        while (peek("\\d"))
-            match("\\d");
-        if (peek("[.]", "\\d")) {
-            match("[.]");
-            while (peek("\\d"))
-                match("\\d");
-            return chars.emit(Token.Type.DECIMAL);
+        if ((classAt(0) & ESCAPE) != 0) {
+            chars.advance();
+        }
+        else {
+            throw new ParseException("unsupported escape character", chars.index);
         }
-        return chars.emit(Token.Type.INTEGER);
+    }
 
+    public Token lexOperator() {
+        return chars.emit(scanOperator());
+    }
 
+    /*
+     * The scan methods are the DFA proper. Each one advances the char stream
+     * over a token and returns its type, leaving it to the caller to either
+     * emit a Token or record the span in a TokenBuffer.
+     */
+
+    private Token.Type scanToken() {
+        switch (stateAt(0)) {
+            case IDENTIFIER:
+                return scanIdentifier();
+            case NUMBER:
+                return scanNumber();
+            case SIGNED:
+                return (classAt(1) & DIGIT) != 0 ? scanNumber() : scanOperator();
+            case CHARACTER:
+                return scanCharacter();
+            case STRING:
+                return scanString();
+            case OPERATOR:
+                return scanOperator();
+            default:
+                throw new UnsupportedOperationException(); // line terminators and the end of input start no token
+        }
     }
 
-    public Token lexCharacter() {
-        match("'"); // takes in first quote
-        if (peek("\\\\")) { // checks for slash
-            match("\\\\");
+    private Token.Type scanIdentifier() {
+        if ((classAt(0) & (IDENTIFIER_START | IDENTIFIER_PART)) != 0) chars.advance();
+        while ((classAt(0) & IDENTIFIER_PART) != 0) chars.advance();
+        return Token.Type.IDENTIFIER;
+    }
+
+    private Token.Type scanNumber() {
+        if ((classAt(0) & SIGN) != 0) chars.advance(); // takes in sign
+
+        while ((classAt(0) & DIGIT) != 0) chars.advance();
+        if (is(0, '.') && (classAt(1) & DIGIT) != 0) {
+            chars.advance();
+            while ((classAt(0) & DIGIT) != 0) chars.advance();
+            return Token.Type.DECIMAL;
+        }
+        return Token.Type.INTEGER;
+    }
+
+    private Token.Type scanCharacter() {
+        if (is(0, '\'')) chars.advance(); // takes in first quote
+        if (is(0, '\\')) {
+            chars.advance();
             lexEscape();
         }
-        else if (peek(".{1}")) { //checks everything else
-            match(".{1}"); // this causes empty chars to fail, because it is reading in the second quote
-                                    // as the char between the two quotes
+        else if (isAny(0)) {
+            chars.advance(); // an empty char reads the closing quote here and fails below
         }
 
-        if (peek("'")) match("'"); // takes in closing quote
+        if (is(0, '\'')) chars.advance(); // takes in closing quote
         else {
             throw new ParseException("expected closing char quote", chars.index);
         }
-
-        return chars.emit(Token.Type.CHARACTER);
+        return Token.Type.CHARACTER;
     }
 
-    public Token lexString() {
-       if (peek("\"")) match("\""); // takes in first quote
+    private Token.Type scanString() {
+        if (is(0, '"')) chars.advance(); // takes in first quote
 
-        while (peek("[^\"\\\\\\n\\r]")) { // checks for everything but quotes and slashes and escapes
-            if (peek("\\\\")) { // checks for slash
-                lexEscape();
-            }
-            else {
-                match("."); // checks for everything else
-            }
+        // stops at quotes, slashes and newlines; the closing quote check below
+        // rejects everything but the quote
+        while ((classAt(0) & (STRING_END | LINE_TERMINATOR | END)) == 0) {
+            chars.advance();
         }
 
-        if (peek("\"")) match("\""); // takes in closing quote
+        if (is(0, '"')) chars.advance(); // takes in closing quote
         else {
             throw new ParseException("expected closing string quote", chars.index);
         }
-        return chars.emit(Token.Type.STRING);
-
+        return Token.Type.STRING;
     }
 
-    public void lexEscape() {
-        if(peek("\\\\")) {
-            match("\\\\");
+    private Token.Type scanOperator() {
+        if ((classAt(0) & COMPARATOR) != 0 && is(1, '=')) { // <=, >=, != and ==
+            chars.advance();
+            chars.advance();
         }
-
-        if(peek("[brnt\"'\\\\]")) {
-            match("[brnt\"'\\\\]");
-        }
-        else {
-            throw new ParseException("unsupported escape character", chars.index);
+        else if (isAny(0)) {
+            chars.advance(); // single character operator
         }
+        return Token.Type.OPERATOR;
     }
 
-    public Token lexOperator() {
-
-
-        if (peek("<","=")) {
-            match("<","=");
-            return chars.emit(Token.Type.OPERATOR);
+    /**
+     * Returns the class bits of the character at the given offset, or
+     * {@link #END} if the input has run out.
+     */
+    private int classAt(int offset) {
+        if (!chars.has(offset)) {
+            return END;
         }
-        else if (peek(">","=")){
-            match(">","=");
-            return chars.emit(Token.Type.OPERATOR);
+        char c = chars.get(offset);
+        if (c < 128) {
+            return CLASSES[c];
         }
-        else if(peek("!","=")) {
-            match("!","=");
-            return chars.emit(Token.Type.OPERATOR);
+        return c == '\u0085' || c == '\u2028' || c == '\u2029' ? LINE_TERMINATOR : 0;
+    }
+
+    private byte stateAt(int offset) {
+        if (!chars.has(offset)) {
+            return INVALID;
         }
-        else if(peek("=","=")){
-            match("=","=");
-            return chars.emit(Token.Type.OPERATOR);
+        char c = chars.get(offset);
+        if (c < 128) {
+            return STATES[c];
         }
+        return (classAt(offset) & LINE_TERMINATOR) != 0 ? INVALID : OPERATOR;
+    }
 
+    private boolean is(int offset, char c) {
+        return chars.has(offset) && chars.get(offset) == c;
+    }
 
-        match("([<>!=] '='?|(.))"); // matches for single operator
-        return chars.emit(Token.Type.OPERATOR);
+    /**
+     * Equivalent to the regex {@code .}, which is any character but a line
+     * terminator.
+     */
+    private boolean isAny(int offset) {
+        return (classAt(offset) & (LINE_TERMINATOR | END)) == 0;
     }
 
     /**
@@ -210,23 +415,65 @@ public final class Lexer {
      * You should rely on peek/match for state management in nearly all cases.
      * The only field you need to access is {@link #index} for any {@link
      * ParseException} which is thrown.
+     *
+     * Characters live in a buffer which, for a {@link Readable} source or a
+     * char sequence without a backing array, is refilled on demand. Everything
+     * before the start of the token being matched is dropped on a refill, so
+     * the buffer only grows past its initial size for a token longer than it.
      */
     public static final class CharStream {
 
-        private final String input;
+        private static final int CAPACITY = 8192;
+
+        private final Readable source;
+        private char[] buffer;
+        private int offset = 0; // index of buffer[0] in the input
+        private int limit = 0; // end of the valid characters in the buffer
+        private boolean exhausted;
         private int index = 0;
         private int length = 0;
 
-        public CharStream(String input) {
-            this.input = input;
+        /**
+         * Array backed char buffers are read in place and strings are copied
+         * once; any other sequence is copied into the buffer a chunk at a time.
+         */
+        public CharStream(CharSequence input) {
+            if (input instanceof String) {
+                this.source = null;
+                this.buffer = ((String) input).toCharArray();
+                this.limit = buffer.length;
+                this.exhausted = true;
+            } else if (input instanceof CharBuffer && ((CharBuffer) input).hasArray()) {
+                CharBuffer chars = (CharBuffer) input;
+                int start = chars.arrayOffset() + chars.position();
+                this.source = null;
+                this.buffer = chars.array();
+                this.offset = -start;
+                this.limit = start + chars.remaining();
+                this.exhausted = true;
+            } else {
+                this.source = CharBuffer.wrap(input);
+                this.buffer = new char[CAPACITY];
+                this.exhausted = false;
+            }
+        }
+
+        public CharStream(Readable source) {
+            this.source = source;
+            this.buffer = new char[CAPACITY];
+            this.exhausted = false;
         }
 
         public boolean has(int offset) {
-            return index + offset < input.length();
+            int position = index + offset - this.offset;
+            return position < limit || fill(position);
         }
 
         public char get(int offset) {
-            return input.charAt(index + offset);
+            if (!has(offset)) {
+                throw new IndexOutOfBoundsException("index " + (index + offset) + " is past the end of the input");
+            }
+            return buffer[index + offset - this.offset];
         }
 
         public void advance() {
@@ -240,8 +487,53 @@ public final class Lexer {
 
         public Token emit(Token.Type type) {
             int start = index - length;
+            int kind = kind(type);
             skip();
-            return new Token(type, input.substring(start, index), start);
+            return new Token(type, new String(buffer, start - offset, index - start), start, kind);
+        }
+
+        /**
+         * Returns the {@link Token.Kind} of the token being matched. Only
+         * identifiers and operators can be keywords or known operators.
+         */
+        public int kind(Token.Type type) {
+            if (type != Token.Type.IDENTIFIER && type != Token.Type.OPERATOR) {
+                return Token.Kind.NONE;
+            }
+            return Token.Kind.of(buffer, index - length - offset, length);
+        }
+
+        /**
+         * Reads from the source until the buffer holds the given position,
+         * returning false if the input ends first.
+         */
+        private boolean fill(int position) {
+            while (position >= limit) {
+                if (exhausted) {
+                    return false;
+                }
+                int start = index - length - offset; // keeps the token being matched
+                if (start > 0) {
+                    System.arraycopy(buffer, start, buffer, 0, limit - start);
+                    limit -= start;
+                    offset += start;
+                    position -= start;
+                }
+                if (limit == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                try {
+                    int read = source.read(CharBuffer.wrap(buffer, limit, buffer.length - limit));
+                    if (read < 0) {
+                        exhausted = true;
+                    } else {
+                        limit += read;
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return true;
         }
 
     }
@@ -2,10 +2,14 @@ package plc.project;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
-import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * The parser takes the sequence of tokens emitted by the lexer and turns that
@@ -19,18 +23,85 @@ import java.util.Stack;
  * This type of parser is called <em>recursive descent</em>. Each rule in our
  * grammar will have it's own function, and reference to other rules correspond
  * to calling that functions.
+ *
+ * Tokens can be handed over as a complete list or pulled lazily from an
+ * {@link Iterator} such as {@link Lexer#iterator()}; in the latter case only a
+ * small window around the current token is kept. Given a {@link TokenBuffer},
+ * literals are only materialized for the tokens that end up in the AST.
  */
 public final class Parser {
 
+    /**
+     * The version of the trees the parser produces, which must be bumped
+     * whenever the same source would parse to a different tree so that trees
+     * cached by an earlier parser (see {@link AstCache}) are discarded.
+     */
+    public static final int GRAMMAR_VERSION = 1;
+
+    private static final int LOGICAL = 1;
+    private static final int COMPARISON = 2;
+    private static final int ADDITIVE = 3;
+    private static final int MULTIPLICATIVE = 4;
+
+    /**
+     * The precedence of each binary operator, indexed by {@link Token.Kind}.
+     * Other kinds are zero, which ends an expression.
+     */
+    private static final int[] PRECEDENCE = new int[Token.Kind.OR + 1];
+
+    static {
+        PRECEDENCE[Token.Kind.AND] = LOGICAL;
+        PRECEDENCE[Token.Kind.OR] = LOGICAL;
+        PRECEDENCE[Token.Kind.LESS] = COMPARISON;
+        PRECEDENCE[Token.Kind.GREATER] = COMPARISON;
+        PRECEDENCE[Token.Kind.LESS_EQUAL] = COMPARISON;
+        PRECEDENCE[Token.Kind.GREATER_EQUAL] = COMPARISON;
+        PRECEDENCE[Token.Kind.EQUAL] = COMPARISON;
+        PRECEDENCE[Token.Kind.NOT_EQUAL] = COMPARISON;
+        PRECEDENCE[Token.Kind.PLUS] = ADDITIVE;
+        PRECEDENCE[Token.Kind.MINUS] = ADDITIVE;
+        PRECEDENCE[Token.Kind.STAR] = MULTIPLICATIVE;
+        PRECEDENCE[Token.Kind.SLASH] = MULTIPLICATIVE;
+        PRECEDENCE[Token.Kind.CARET] = MULTIPLICATIVE;
+    }
+
     private final TokenStream tokens;
 
     private ParseException errorHandler(String message) {
-        if (tokens.has(0)) return new ParseException(message + " at index " + tokens.get(0).getIndex(), tokens.get(0).getIndex());
-        else return new ParseException(message+ " at index " +(tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()), (tokens.get(-1).getIndex() + tokens.get(-1).getLiteral().length()));
+        if (tokens.has(0)) return new ParseException(message + " at index " + tokens.index(0), tokens.index(0));
+        else return new ParseException(message+ " at index " +(tokens.index(-1) + tokens.length(-1)), (tokens.index(-1) + tokens.length(-1)));
     }
 
     public Parser(List<Token> tokens) {
-        this.tokens = new TokenStream(tokens);
+        this.tokens = new ListTokenStream(tokens);
+    }
+
+    public Parser(Iterator<Token> tokens) {
+        this.tokens = new WindowTokenStream(tokens);
+    }
+
+    public Parser(TokenBuffer tokens) {
+        this.tokens = new BufferTokenStream(tokens);
+    }
+
+    /**
+     * Creates a parser starting at the given token of the buffer, such that
+     * lookbehind still sees the tokens before it.
+     */
+    Parser(TokenBuffer tokens, int index) {
+        this.tokens = new BufferTokenStream(tokens);
+        this.tokens.index = index;
+    }
+
+    private Parser(TokenStream tokens) {
+        this.tokens = tokens;
+    }
+
+    /**
+     * Returns the index of the next token to be parsed.
+     */
+    int position() {
+        return tokens.index;
     }
 
     /**
@@ -43,20 +114,150 @@ public final class Parser {
         boolean function = false;
 
         while (tokens.has(0)) {
-            if (peek("FUN")) {
-                functions.add(parseFunction());
-                function = true;
+            switch (tokens.kind(0)) {
+                case Token.Kind.FUN:
+                    functions.add(parseFunction());
+                    function = true;
+                    break;
+                case Token.Kind.VAL:
+                case Token.Kind.LIST:
+                case Token.Kind.VAR:
+                    globals.add(parseGlobal());
+                    //System.out.println("added global");
+                    if (function) throw errorHandler("invalid global variable located");
+                    break;
+                default:
+                    throw errorHandler("expected expression");
             }
-            else if (peek("VAL") || peek("LIST") || peek("VAR")) {
+        }
+
+        return new Ast.Source(globals, functions);
+
+    }
+
+    /**
+     * Parses the {@code source} rule on the common fork-join pool, as in
+     * {@link #parseSource(ForkJoinPool)}.
+     */
+    public Ast.Source parseSourceParallel() throws ParseException {
+        return parseSource(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the {@code source} rule, parsing functions in parallel on the
+     * given pool. The result (or error) is the same as {@link #parseSource()}.
+     *
+     * The tokens are first pre-scanned for the boundaries of the top-level
+     * functions by counting {@code DO} and {@code SWITCH} against {@code END}.
+     * Globals are then parsed here while batches of functions are parsed by
+     * separate parsers over the same tokens, each starting at a boundary. A
+     * batch only counts if every function ends exactly at the next boundary;
+     * if not, or if anything fails to parse, the whole source is parsed again
+     * sequentially so errors are reported exactly as before. This requires
+     * random access to the tokens, so a parser over an iterator always parses
+     * sequentially.
+     */
+    public Ast.Source parseSource(ForkJoinPool pool) throws ParseException {
+        int start = tokens.index;
+        if (tokens.at(start) == null) { // not random access, so it can't be pre-scanned
+            return parseSource();
+        }
+        int[] boundaries = scanFunctions();
+        if (boundaries == null || boundaries.length <= 2) {
+            return parseSource();
+        }
+        try {
+            List<Ast.Global> globals = new ArrayList<>();
+            while (tokens.index < boundaries[0]) {
                 globals.add(parseGlobal());
-                //System.out.println("added global");
-                if (function) throw errorHandler("invalid global variable located");
             }
-            else throw errorHandler("expected expression");
+            if (tokens.index != boundaries[0]) {
+                tokens.index = start;
+                return parseSource();
+            }
+
+            int count = boundaries.length - 1;
+            int batches = Math.min(count, 4 * pool.getParallelism());
+            List<ForkJoinTask<List<Ast.Function>>> tasks = new ArrayList<>();
+            for (int i = 0; i < batches; i++) {
+                int from = (int) ((long) count * i / batches);
+                int to = (int) ((long) count * (i + 1) / batches);
+                tasks.add(pool.submit(() -> parseFunctions(boundaries, from, to)));
+            }
+            List<Ast.Function> functions = new ArrayList<>(count);
+            for (ForkJoinTask<List<Ast.Function>> task : tasks) {
+                List<Ast.Function> batch = task.join();
+                if (batch == null) {
+                    tokens.index = start;
+                    return parseSource();
+                }
+                functions.addAll(batch);
+            }
+            tokens.index = boundaries[count];
+            return new Ast.Source(globals, functions);
+        }
+        catch (ParseException parseException) {
+            tokens.index = start;
+            return parseSource();
         }
+    }
 
-        return new Ast.Source(globals, functions);
+    /**
+     * Returns the token indices at which each top-level function starts, with
+     * the end of the last function appended, or null if the functions do not
+     * run through to the end of the input.
+     */
+    private int[] scanFunctions() {
+        int offset = 0;
+        while (tokens.has(offset) && tokens.kind(offset) != Token.Kind.FUN) {
+            offset++;
+        }
+        List<Integer> boundaries = new ArrayList<>();
+        while (tokens.has(offset)) {
+            if (tokens.kind(offset) != Token.Kind.FUN) {
+                return null;
+            }
+            boundaries.add(tokens.index + offset);
+            int depth = 0;
+            do {
+                offset++;
+                if (!tokens.has(offset)) {
+                    return null;
+                }
+                switch (tokens.kind(offset)) {
+                    case Token.Kind.DO:
+                    case Token.Kind.SWITCH:
+                        depth++;
+                        break;
+                    case Token.Kind.END:
+                        depth--;
+                        break;
+                }
+            } while (depth > 0 || tokens.kind(offset) != Token.Kind.END);
+            offset++;
+        }
+        boundaries.add(tokens.index + offset);
+        int[] array = new int[boundaries.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = boundaries.get(i);
+        }
+        return array;
+    }
 
+    /**
+     * Parses the functions between the given boundaries with a new parser,
+     * returning null if a function does not end exactly at the next boundary.
+     */
+    private List<Ast.Function> parseFunctions(int[] boundaries, int from, int to) {
+        Parser parser = new Parser(tokens.at(boundaries[from]));
+        List<Ast.Function> functions = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            functions.add(parser.parseFunction());
+            if (parser.tokens.index != boundaries[i + 1]) {
+                return null;
+            }
+        }
+        return functions;
     }
 
     /**
@@ -65,16 +266,16 @@ public final class Parser {
      */
     public Ast.Global parseGlobal() throws ParseException {
          
-        if ( peek("LIST") ) {
-            return parseList();
+        switch (peekKind()) {
+            case Token.Kind.LIST:
+                return parseList();
+            case Token.Kind.VAL:
+                return parseImmutable();
+            case Token.Kind.VAR:
+                return parseMutable();
+            default:
+                throw errorHandler("invalid global variable located");
         }
-        else if (peek("VAL") ) {
-            return parseImmutable();
-        }
-        else if (peek("VAR")) {
-            return parseMutable();
-        }
-        else throw errorHandler("invalid global variable located");
     }
 
     /**
@@ -82,26 +283,26 @@ public final class Parser {
      * next token declares a list, aka {@code LIST}.
      */
     public Ast.Global parseList() throws ParseException {
-        match("LIST");
+        match(Token.Kind.LIST);
         List<Ast.Expression> values = new ArrayList<>();
         String name = new String();
         if (match(Token.Type.IDENTIFIER)) {
-            name = tokens.get(-1).getLiteral();
+            name = tokens.literal(-1);
         }
         else throw errorHandler("expected identifier after LIST call");
         // TODO: this isnt correct
 
-        if (!match("=")) {
+        if (!match(Token.Kind.ASSIGN)) {
             throw errorHandler("expected = after identifier");
         }
 
-        match("[");
-        while(!match("]") && tokens.has(0)) {
+        match(Token.Kind.LEFT_BRACKET);
+        while(!match(Token.Kind.RIGHT_BRACKET) && tokens.has(0)) {
             values.add(parseExpression());
-            if (peek(",")) match(",");
+            if (peek(Token.Kind.COMMA)) match(Token.Kind.COMMA);
             //System.out.println(tokens.get(-1).toString());
         }
-        match(";");
+        match(Token.Kind.SEMICOLON);
         Ast.Expression.PlcList values2 = new Ast.Expression.PlcList(values);
         return new Ast.Global(name, true, Optional.of(values2));
     }
@@ -112,7 +313,7 @@ public final class Parser {
      */
     public Ast.Global parseMutable() throws ParseException {
          
-        match("VAR");
+        match(Token.Kind.VAR);
         Ast.Statement.Declaration declaration = parseDeclarationStatement();
         //TODO: add try catch here
         if (declaration.getTypeName().isPresent()) return new Ast.Global(declaration.getName(), declaration.getTypeName().get(), true, declaration.getValue());
@@ -125,7 +326,7 @@ public final class Parser {
      */
     public Ast.Global parseImmutable() throws ParseException {
         
-        match("VAL");
+        match(Token.Kind.VAL);
         Ast.Statement.Declaration declaration = parseDeclarationStatement();
         if (declaration.getTypeName().isPresent()) return new Ast.Global(declaration.getName(), declaration.getTypeName().get(), false, declaration.getValue());
         return new Ast.Global(declaration.getName(), false, declaration.getValue());
@@ -137,54 +338,54 @@ public final class Parser {
      */
     public Ast.Function parseFunction() throws ParseException {
          
-        match("FUN");
+        match(Token.Kind.FUN);
 
         if (match(Token.Type.IDENTIFIER)) { // first match matches name
             //System.out.println("id found after function call");
 
-            String name = tokens.get(-1).getLiteral();
+            String name = tokens.literal(-1);
 
-            if (match("(")) { // match first parenthesis
+            if (match(Token.Kind.LEFT_PAREN)) { // match first parenthesis
                 List<String> parameters = new ArrayList<>();
                 List<Ast.Statement> statements = new ArrayList<>();
                 List<String> paramTypes = new ArrayList<>();
                 String returnType = null;
                 while (peek(Token.Type.IDENTIFIER)) { // this gets parameters
                     match(Token.Type.IDENTIFIER);
-                    parameters.add(tokens.get(-1).getLiteral());
-                    if (peek(":")) {
-                        match(":");
+                    parameters.add(tokens.literal(-1));
+                    if (peek(Token.Kind.COLON)) {
+                        match(Token.Kind.COLON);
                         if (!match(Token.Type.IDENTIFIER)) throw errorHandler("expected Type identifier following colon");
-                        paramTypes.add( tokens.get(-1).getLiteral());
+                        paramTypes.add( tokens.literal(-1));
                         }
-                    if (peek(",")) match(",");
-                    if (!match(",")) {
+                    if (peek(Token.Kind.COMMA)) match(Token.Kind.COMMA);
+                    if (!match(Token.Kind.COMMA)) {
                        // if (!peek(")")) throw errorHandler("expected comma between identifiers");
                     }
                 }
 
-                if (!match(")")) throw errorHandler("expected closing parenthesis");
+                if (!match(Token.Kind.RIGHT_PAREN)) throw errorHandler("expected closing parenthesis");
 
-                if (peek(":")) {
-                    match(":");
+                if (peek(Token.Kind.COLON)) {
+                    match(Token.Kind.COLON);
                     if (!match(Token.Type.IDENTIFIER)) throw errorHandler("expected Type identifier following colon");
-                    returnType = tokens.get(-1).getLiteral();
+                    returnType = tokens.literal(-1);
                 }
 
-                if (peek("DO")) match("DO");
+                if (peek(Token.Kind.DO)) match(Token.Kind.DO);
                 else throw errorHandler("expected DO statement");
 
-                while(!peek("END") && tokens.has(0)) { // while not at end and not empty
+                while(!peek(Token.Kind.END) && tokens.has(0)) { // while not at end and not empty
                     statements.addAll(parseBlock());
                     //System.out.println("statement added");
                     //System.out.println(statements.get(0));
                 }
                 //System.out.println(statements.get(0));
-                if (peek("END")) {
+                if (peek(Token.Kind.END)) {
                     //System.out.println("matching end");
-                    match("END");
+                    match(Token.Kind.END);
                 }
-                if (!tokens.get(-1).getLiteral().equals("END")) throw errorHandler("expected END statement");
+                if (tokens.kind(-1) != Token.Kind.END) throw errorHandler("expected END statement");
 
                 return new Ast.Function(name, parameters, paramTypes, Optional.ofNullable(returnType), statements);
             }
@@ -221,42 +422,35 @@ public final class Parser {
      */
     public Ast.Statement parseStatement() throws ParseException {
          
-        if (peek("LET")) {
-            match("LET");
-            return parseDeclarationStatement();
-        }
-
-        if (peek("IF")) {
-            return parseIfStatement();
-        }
-
-        if (peek("WHILE")) {
-            return parseWhileStatement();
-        }
-
-        if (peek("RETURN")) {
-            return parseReturnStatement();
-        }
-
-        if (peek("SWITCH")) {
-            return parseSwitchStatement();
+        switch (peekKind()) {
+            case Token.Kind.LET:
+                match(Token.Kind.LET);
+                return parseDeclarationStatement();
+            case Token.Kind.IF:
+                return parseIfStatement();
+            case Token.Kind.WHILE:
+                return parseWhileStatement();
+            case Token.Kind.RETURN:
+                return parseReturnStatement();
+            case Token.Kind.SWITCH:
+                return parseSwitchStatement();
         }
 
         Ast.Expression reciever = parseExpression();
-        if (peek("=")) { // this is an assignment statement
-            match("=");
+        if (peek(Token.Kind.ASSIGN)) { // this is an assignment statement
+            match(Token.Kind.ASSIGN);
             Ast.Expression value = parseExpression();
-            if (peek(";")) {
-                match(";");
+            if (peek(Token.Kind.SEMICOLON)) {
+                match(Token.Kind.SEMICOLON);
                 return new Ast.Statement.Assignment(reciever, value);
             }
             else throw errorHandler("expected ; at end of statement");
         }
         else {
             //System.out.println("inside id in parseStatement");
-            if (peek(";")) {
+            if (peek(Token.Kind.SEMICOLON)) {
                 //System.out.println("matched ;");
-                match(";");
+                match(Token.Kind.SEMICOLON);
                 return new Ast.Statement.Expression(reciever);
             }
             else throw errorHandler("expected ; at end of statement");
@@ -275,25 +469,25 @@ public final class Parser {
         if (!match(Token.Type.IDENTIFIER)) {
             throw errorHandler("expected identifier");
         }
-        String name = tokens.get(-1).getLiteral();
+        String name = tokens.literal(-1);
 
         String type = null;
-        if (peek(":")) {
-            match(":");
+        if (peek(Token.Kind.COLON)) {
+            match(Token.Kind.COLON);
             if (!peek(Token.Type.IDENTIFIER)) throw errorHandler("expected Type identifier");
             match(Token.Type.IDENTIFIER);
-            type = tokens.get(-1).getLiteral();
-//            System.out.println(tokens.get(-1).getLiteral());
-//                       System.out.println(tokens.get(-2).getLiteral());
+            type = tokens.literal(-1);
+//            System.out.println(tokens.literal(-1));
+//                       System.out.println(tokens.literal(-2));
             //System.out.println(type);
         }
         Optional<Ast.Expression> value = Optional.empty();
         Optional<Object> temp = Optional.empty();
-        if (match("=")) {
+        if (match(Token.Kind.ASSIGN)) {
             value = Optional.of(parseExpression());
             //           temp = Optional.of(parseExpression());\
         }
-        if (!match(";")) {
+        if (!match(Token.Kind.SEMICOLON)) {
             throw errorHandler("expected semicolon");
         }
         //System.out.println(type);
@@ -307,15 +501,15 @@ public final class Parser {
      */
     public Ast.Statement.If parseIfStatement() throws ParseException {
          
-        match("IF");
+        match(Token.Kind.IF);
         Ast.Expression condition = parseExpression(); // this gets the next expr in line (i tried to use a try catch but that didnt work)
-        if (match("DO")) {
+        if (match(Token.Kind.DO)) {
             boolean isElse = false;
             List<Ast.Statement> thenStatements = new ArrayList<>();
             List<Ast.Statement> elseStatements = new ArrayList<>();
 
-            while (!match("END") && tokens.has(0)) { // while not end and tokens at current index populated
-                if (match("ELSE")) {
+            while (!match(Token.Kind.END) && tokens.has(0)) { // while not end and tokens at current index populated
+                if (match(Token.Kind.ELSE)) {
                     if (!isElse) isElse = true;
                     else throw errorHandler("too many else statements");
                 }
@@ -323,7 +517,7 @@ public final class Parser {
                 else thenStatements.addAll(parseBlock()); // if not else, add to then list
             }
 
-            if (!tokens.get(-1).getLiteral().equals("END")) throw errorHandler("expected END statement");
+            if (tokens.kind(-1) != Token.Kind.END) throw errorHandler("expected END statement");
 
             return new Ast.Statement.If(condition, thenStatements, elseStatements);
         }
@@ -336,14 +530,14 @@ public final class Parser {
      * {@code SWITCH}.
      */
     public Ast.Statement.Switch parseSwitchStatement() throws ParseException {
-        match("SWITCH");
+        match(Token.Kind.SWITCH);
         Ast.Expression condition = parseExpression();
         //System.out.println(condition.toString());
         List<Ast.Statement.Case> cases = new ArrayList<>();
-        while (!match("END") && tokens.has(0)) {
+        while (!match(Token.Kind.END) && tokens.has(0)) {
             //System.out.println("inside while");
-            if (peek("CASE")) cases.add(parseCaseStatement());
-            if (peek("DEFAULT")) cases.add(parseCaseStatement());
+            if (peek(Token.Kind.CASE)) cases.add(parseCaseStatement());
+            if (peek(Token.Kind.DEFAULT)) cases.add(parseCaseStatement());
             return new Ast.Statement.Switch(condition, cases);
         }
         throw errorHandler("expected DEFAULT or CASE identifier");
@@ -356,23 +550,23 @@ public final class Parser {
      */
     public Ast.Statement.Case parseCaseStatement() throws ParseException {
         List<Ast.Statement> statements = new ArrayList<>();
-        if (peek("DEFAULT")) {
+        if (peek(Token.Kind.DEFAULT)) {
             //System.out.println("matching default");
-            match("DEFAULT");
-            while (!peek("END") && tokens.has(0)) { // this both allows for populated and unpopulated default cases
+            match(Token.Kind.DEFAULT);
+            while (!peek(Token.Kind.END) && tokens.has(0)) { // this both allows for populated and unpopulated default cases
                 statements.addAll(parseBlock());
             }
             return new Ast.Statement.Case(Optional.empty(), statements);
         }
 
-        if (peek("CASE")) {
+        if (peek(Token.Kind.CASE)) {
             //System.out.println("matching case");
-            match("CASE");
-            while (!peek("DEFAULT") && tokens.has(0)) {
+            match(Token.Kind.CASE);
+            while (!peek(Token.Kind.DEFAULT) && tokens.has(0)) {
 
                 Optional<Ast.Expression> value = Optional.of(parseExpression());
 
-                if (peek(":")) match(":");
+                if (peek(Token.Kind.COLON)) match(Token.Kind.COLON);
                 else throw errorHandler("expected : after expression");
 
                 try {
@@ -397,16 +591,16 @@ public final class Parser {
      */
     public Ast.Statement.While parseWhileStatement() throws ParseException {
          
-        match("WHILE");
+        match(Token.Kind.WHILE);
         Ast.Expression condition = parseExpression();
         List<Ast.Statement> statements = new ArrayList<>();
-        if (!match("DO")) throw errorHandler("expected DO statement");
+        if (!match(Token.Kind.DO)) throw errorHandler("expected DO statement");
 
-        while (!match("END") && tokens.has(0)) { // while not end and tokens at current index populated
+        while (!match(Token.Kind.END) && tokens.has(0)) { // while not end and tokens at current index populated
             statements.add(parseStatement());
         }
 
-        if (!tokens.get(-1).getLiteral().equals("END")) throw errorHandler("expected END statement");
+        if (tokens.kind(-1) != Token.Kind.END) throw errorHandler("expected END statement");
 
         return new Ast.Statement.While(condition, statements);
     }
@@ -418,9 +612,9 @@ public final class Parser {
      */
     public Ast.Statement.Return parseReturnStatement() throws ParseException {
          
-        match("RETURN");
+        match(Token.Kind.RETURN);
         Ast.Expression value = parseExpression();
-        if (!match(";")) {
+        if (!match(Token.Kind.SEMICOLON)) {
             throw errorHandler("expected semicolon");
         }
         return new Ast.Statement.Return(value);
@@ -443,102 +637,88 @@ public final class Parser {
      * Parses the {@code logical-expression} rule.
      */
     public Ast.Expression parseLogicalExpression() throws ParseException {
-        //System.out.println("in logical");
-        try {
-            //System.out.println("inside try");
-            Ast.Expression output = parseComparisonExpression(); // this gets the value of left
-            //System.out.println(output.toString());
-
-            //TODO: to get precedence working, push OP back onto a stack that tracks operators found and priority of said op
-            //https://www.engr.mun.ca/~theo/Misc/exp_parsing.htm
-            if (match("&&") || match("||")) { // matches for  logical and
-                //System.out.println("matching operator for binary");
-                String op = tokens.get(-1).getLiteral();
-                //System.out.println(op);
-
-                Ast.Expression right = parseExpression(); //just throws it down the line
-                output = new Ast.Expression.Binary(op, output, right); // this sets output to the binary
-            }
-            return output;
-        }
-        catch (ParseException parseException) {
-            throw errorHandler("invalid token");
-        }
+        return parseBinaryExpression(LOGICAL);
     }
 
-
     /**
      * Parses the {@code equality-expression} rule.
      */
     public Ast.Expression parseComparisonExpression() throws ParseException {
-         
-        //System.out.println("inside comparison");
-        try {
-            //System.out.println("inside try");
-            Ast.Expression output = parseAdditiveExpression();
-            if (match("==") || match("!=") || match("<") || match(">")) { // matches for equality or logical and
-                //System.out.println("matching operator for binary");
-                String op = tokens.get(-1).getLiteral();
-                //System.out.println(op);
-
-                Ast.Expression right = parseExpression(); //just throws it down the line
-                output = new Ast.Expression.Binary(op, output, right); // this sets output to the binary
-            }
-            return output;
-        }
-        catch (ParseException parseException) {
-            throw errorHandler("invalid token");
-        }
+        return parseBinaryExpression(COMPARISON);
     }
 
     /**
      * Parses the {@code additive-expression} rule.
      */
     public Ast.Expression parseAdditiveExpression() throws ParseException {
-         
-        //System.out.println("inside additive");
-        try {
-            //System.out.println("inside try");
-            Ast.Expression output = parseMultiplicativeExpression();
-            if (match("+") || match("-")) { // matches for + or -
-                //System.out.println("matching operator for binary");
-                String op = tokens.get(-1).getLiteral();
-                //System.out.println(op);
-
-                Ast.Expression right = parseExpression(); //just throws it down the line
-                output = new Ast.Expression.Binary(op, output, right); // this sets output to the binary
-            }
-            return output;
-        }
-        catch (ParseException parseException) {
-            throw errorHandler("invalid token");
-        }
+        return parseBinaryExpression(ADDITIVE);
     }
 
     /**
      * Parses the {@code multiplicative-expression} rule.
      */
     public Ast.Expression parseMultiplicativeExpression() throws ParseException {
-         
-        //System.out.println("inside multiplicative");
+        return parseBinaryExpression(MULTIPLICATIVE);
+    }
+
+    /**
+     * Parses a chain of binary operators binding at least as tightly as the
+     * given precedence, with operands parsed by {@link
+     * #parsePrimaryExpression()}.
+     *
+     * Rather than recursing through one method per precedence level for every
+     * operand, this keeps explicit stacks of operands and pending operators
+     * (precedence climbing). An operator is
+     * reduced once an operator of lower precedence follows it. All operators
+     * are right associative, so {@code a != b == c} is {@code a != (b == c)}
+     * as before, and a chain of any length is parsed without recursion.
+     */
+    private Ast.Expression parseBinaryExpression(int minimum) throws ParseException {
         try {
-            //System.out.println("inside try");
-            Ast.Expression output = parsePrimaryExpression();
-            if (match("*") || match("/") || match("^")) { // matches for mult or div
-                //System.out.println("matching operator for binary");
-                String op = tokens.get(-1).getLiteral();
-                //System.out.println(op);
-
-                Ast.Expression right = parseExpression(); //just throws it down the line
-                output = new Ast.Expression.Binary(op, output, right); // this sets output to the binary
+            ArrayDeque<Ast.Expression> operands = new ArrayDeque<>();
+            ArrayDeque<String> operators = new ArrayDeque<>();
+            int[] precedences = new int[8]; // of the pending operators, bottom first
+            int pending = 0;
+
+            operands.push(parsePrimaryExpression());
+            int precedence;
+            while ((precedence = precedence()) >= minimum) {
+                tokens.advance();
+                String operator = tokens.literal(-1);
+                while (pending > 0 && precedences[pending - 1] > precedence) {
+                    reduce(operands, operators);
+                    pending--;
+                }
+                if (pending == precedences.length) {
+                    precedences = Arrays.copyOf(precedences, 2 * pending);
+                }
+                operators.push(operator);
+                precedences[pending++] = precedence;
+                operands.push(parsePrimaryExpression());
+            }
+            while (!operators.isEmpty()) {
+                reduce(operands, operators);
             }
-            return output;
+            return operands.pop();
         }
         catch (ParseException parseException) {
             throw errorHandler("invalid token");
         }
     }
 
+    private static void reduce(ArrayDeque<Ast.Expression> operands, ArrayDeque<String> operators) {
+        Ast.Expression right = operands.pop();
+        Ast.Expression left = operands.pop();
+        operands.push(new Ast.Expression.Binary(operators.pop(), left, right));
+    }
+
+    /**
+     * Returns the precedence of the next token as a binary operator, or zero if
+     * it is not one.
+     */
+    private int precedence() {
+        return tokens.has(0) ? PRECEDENCE[tokens.kind(0)] : 0;
+    }
 
     /**
      * Parses the {@code primary-expression} rule. This is the top-level rule
@@ -548,12 +728,12 @@ public final class Parser {
      */
     public Ast.Expression parsePrimaryExpression() throws ParseException {
         //System.out.println("inside primary");
-        if (peek("(")) {
-            match("(");
+        if (peek(Token.Kind.LEFT_PAREN)) {
+            match(Token.Kind.LEFT_PAREN);
             Ast.Expression.Group group = new Ast.Expression.Group(parseExpression());
 
-            if (peek(")")) {
-                match(")");
+            if (peek(Token.Kind.RIGHT_PAREN)) {
+                match(Token.Kind.RIGHT_PAREN);
                 return group;
             }
             else throw errorHandler("expected closing parenthesis");
@@ -561,34 +741,34 @@ public final class Parser {
 
 
 
-        if (match("TRUE")) {
-            return new Ast.Expression.Literal(true);
-        }
-
-        if (match("FALSE")) {
-            return new Ast.Expression.Literal(false);
-        }
-
-        if (match("NIL")) {
-            return new Ast.Expression.Literal(null);
+        switch (peekKind()) {
+            case Token.Kind.TRUE:
+                tokens.advance();
+                return new Ast.Expression.Literal(true);
+            case Token.Kind.FALSE:
+                tokens.advance();
+                return new Ast.Expression.Literal(false);
+            case Token.Kind.NIL:
+                tokens.advance();
+                return new Ast.Expression.Literal(null);
         }
 
 
         if (match(Token.Type.INTEGER)) { // integer located
-            return new Ast.Expression.Literal(new BigInteger(tokens.get(-1).getLiteral()));
+            return new Ast.Expression.Literal(new BigInteger(tokens.literal(-1)));
         }
 
         if (match(Token.Type.DECIMAL)) { // decimal located
-            return new Ast.Expression.Literal(new BigDecimal(tokens.get(-1).getLiteral()));
+            return new Ast.Expression.Literal(new BigDecimal(tokens.literal(-1)));
         }
 
         if (match(Token.Type.CHARACTER)) { // char located
-            String out = (tokens.get(-1).getLiteral()); //
+            String out = (tokens.literal(-1)); //
             return new Ast.Expression.Literal(out.charAt(1));
         }
 
         if (match(Token.Type.STRING)) { // string located
-            String out = (tokens.get(-1).getLiteral());
+            String out = (tokens.literal(-1));
 
             if (out.contains("\\")) { // this means there is an escape
                 out = out.replace("\\n", "\n"); // will simply replace the escape with its literal, must add all supported escs
@@ -606,45 +786,45 @@ public final class Parser {
 
 
         if (match(Token.Type.IDENTIFIER)) { // id located
-            String out = (tokens.get(-1).getLiteral());
+            String out = (tokens.literal(-1));
             //System.out.println("id located");
 
-            if (peek("(")) {
-                match("(");
+            if (peek(Token.Kind.LEFT_PAREN)) {
+                match(Token.Kind.LEFT_PAREN);
                 //System.out.println("matched (");
                 List<Ast.Expression> args = new ArrayList<Ast.Expression>();
 
-                while (!peek(")")){
+                while (!peek(Token.Kind.RIGHT_PAREN)){
                     args.add(parseExpression());
-                    if (peek(",")) {
-                        match(",");
-                        if (peek(")"))
+                    if (peek(Token.Kind.COMMA)) {
+                        match(Token.Kind.COMMA);
+                        if (peek(Token.Kind.RIGHT_PAREN))
                             throw errorHandler("trailing comma");
                     }
                 }
 
-                match(")");
+                match(Token.Kind.RIGHT_PAREN);
                 return new Ast.Expression.Function(out, args);
             }
 
-            if (peek("[")) { // this is access
-                match("[");
+            if (peek(Token.Kind.LEFT_BRACKET)) { // this is access
+                match(Token.Kind.LEFT_BRACKET);
                 //System.out.println("matching [");
                 List<Ast.Expression> args = new ArrayList<Ast.Expression>(); // i just copied the code from the function lol
 
-                while (!peek("]")){
+                while (!peek(Token.Kind.RIGHT_BRACKET)){
                     args.add(parseExpression());
-                    if (peek(",")) {
-                        match(",");
-                        if (peek("]"))
+                    if (peek(Token.Kind.COMMA)) {
+                        match(Token.Kind.COMMA);
+                        if (peek(Token.Kind.RIGHT_BRACKET))
                             throw errorHandler("trailing comma");
                     }
                     //System.out.println("inside primary while");
                 }
-                match("]");
-                //System.out.println(tokens.get(-1).getLiteral());
-                //System.out.println(tokens.get(-3).getLiteral());
-                return new Ast.Expression.Access(Optional.of(new Ast.Expression.Access(Optional.empty(), tokens.get(-2).getLiteral())), tokens.get(-4).getLiteral());
+                match(Token.Kind.RIGHT_BRACKET);
+                //System.out.println(tokens.literal(-1));
+                //System.out.println(tokens.literal(-3));
+                return new Ast.Expression.Access(Optional.of(new Ast.Expression.Access(Optional.empty(), tokens.literal(-2))), tokens.literal(-4));
             }
             return new Ast.Expression.Access(Optional.empty(), out);
         }
@@ -666,6 +846,9 @@ public final class Parser {
      *
      * In other words, {@code Token(IDENTIFIER, "literal")} is matched by both
      * {@code peek(Token.Type.IDENTIFIER)} and {@code peek("literal")}.
+     *
+     * Keywords and operators should be checked with {@link #peek(int)}
+     * instead, which compares the {@link Token.Kind} of the token.
      */
     private boolean peek(Object... patterns) {
         for (int i = 0; i < patterns.length; i++) {
@@ -673,10 +856,10 @@ public final class Parser {
                 return false;
             }
             else if (patterns[i] instanceof Token.Type) {
-                if (patterns[i] != tokens.get(i).getType()) return false;
+                if (patterns[i] != tokens.type(i)) return false;
             }
             else if (patterns[i] instanceof String) {
-                if (!patterns[i].equals(tokens.get(i).getLiteral())) return false;
+                if (!tokens.is(i, (String) patterns[i])) return false;
             }
             else {
                 throw new AssertionError("Invalid pattern object: " + patterns[i].getClass());
@@ -685,6 +868,33 @@ public final class Parser {
         return true;
     }
 
+    /**
+     * Returns {@code true} if the next token is of the given {@link Token.Kind}.
+     */
+    private boolean peek(int kind) {
+        return tokens.has(0) && tokens.kind(0) == kind;
+    }
+
+    /**
+     * Returns the {@link Token.Kind} of the next token, or {@link
+     * Token.Kind#NONE} at the end of the input.
+     */
+    private int peekKind() {
+        return tokens.has(0) ? tokens.kind(0) : Token.Kind.NONE;
+    }
+
+    /**
+     * Returns {@code true} if {@link #peek(int)} is true and advances the token
+     * stream.
+     */
+    private boolean match(int kind) {
+        boolean peek = peek(kind);
+        if (peek) {
+            tokens.advance();
+        }
+        return peek;
+    }
+
     /**
      * As in the lexer, returns {@code true} if {@link #peek(Object...)} is true
      * and advances the token stream.
@@ -700,28 +910,19 @@ public final class Parser {
         return peek;
     }
 
-    private static final class TokenStream {
+    private static abstract class TokenStream {
 
-        private final List<Token> tokens;
-        private int index = 0;
-
-        private TokenStream(List<Token> tokens) {
-            this.tokens = tokens;
-        }
+        protected int index = 0;
 
         /**
          * Returns true if there is a token at index + offset.
          */
-        public boolean has(int offset) {
-            return index + offset < tokens.size();
-        }
+        public abstract boolean has(int offset);
 
         /**
          * Gets the token at index + offset.
          */
-        public Token get(int offset) {
-            return tokens.get(index + offset);
-        }
+        public abstract Token get(int offset);
 
         /**
          * Advances to the next token, incrementing the index.
@@ -730,6 +931,175 @@ public final class Parser {
             index++;
         }
 
+        public Token.Type type(int offset) {
+            return get(offset).getType();
+        }
+
+        public int kind(int offset) {
+            return get(offset).getKind();
+        }
+
+        public String literal(int offset) {
+            return get(offset).getLiteral();
+        }
+
+        /**
+         * Returns true if the literal of the token at index + offset is equal
+         * to the given string.
+         */
+        public boolean is(int offset, String literal) {
+            return literal.equals(get(offset).getLiteral());
+        }
+
+        /**
+         * Gets the index in the source of the token at index + offset.
+         */
+        public int index(int offset) {
+            return get(offset).getIndex();
+        }
+
+        public int length(int offset) {
+            return get(offset).getLiteral().length();
+        }
+
+        /**
+         * Returns a new stream over the same tokens starting at the given
+         * index, or null if the tokens cannot be revisited.
+         */
+        public TokenStream at(int index) {
+            return null;
+        }
+
+    }
+
+    private static final class ListTokenStream extends TokenStream {
+
+        private final List<Token> tokens;
+
+        private ListTokenStream(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return index + offset < tokens.size();
+        }
+
+        @Override
+        public Token get(int offset) {
+            return tokens.get(index + offset);
+        }
+
+        @Override
+        public TokenStream at(int index) {
+            ListTokenStream stream = new ListTokenStream(tokens);
+            stream.index = index;
+            return stream;
+        }
+
+    }
+
+    private static final class BufferTokenStream extends TokenStream {
+
+        private final TokenBuffer tokens;
+
+        private BufferTokenStream(TokenBuffer tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return index + offset < tokens.size();
+        }
+
+        @Override
+        public Token get(int offset) {
+            return tokens.get(index + offset);
+        }
+
+        @Override
+        public Token.Type type(int offset) {
+            return tokens.getType(index + offset);
+        }
+
+        @Override
+        public int kind(int offset) {
+            return tokens.getKind(index + offset);
+        }
+
+        @Override
+        public String literal(int offset) {
+            return tokens.getLiteral(index + offset);
+        }
+
+        @Override
+        public boolean is(int offset, String literal) {
+            return tokens.literalEquals(index + offset, literal);
+        }
+
+        @Override
+        public int index(int offset) {
+            return tokens.getStart(index + offset);
+        }
+
+        @Override
+        public int length(int offset) {
+            return tokens.getLength(index + offset);
+        }
+
+        @Override
+        public TokenStream at(int index) {
+            BufferTokenStream stream = new BufferTokenStream(tokens);
+            stream.index = index;
+            return stream;
+        }
+
+    }
+
+    /**
+     * Pulls tokens from an iterator into a ring buffer. The parser looks back
+     * at most {@link #BEHIND} tokens (list access reads the name three tokens
+     * before the closing bracket) and ahead only a couple, so a small fixed
+     * window is enough.
+     */
+    private static final class WindowTokenStream extends TokenStream {
+
+        private static final int SIZE = 16;
+        private static final int BEHIND = 4;
+
+        private final Iterator<Token> source;
+        private final Token[] window = new Token[SIZE];
+        private int loaded = 0; // number of tokens pulled from the source
+
+        private WindowTokenStream(Iterator<Token> source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            return fill(index + offset);
+        }
+
+        @Override
+        public Token get(int offset) {
+            int position = index + offset;
+            if (position < 0 || position < loaded - SIZE || !fill(position)) {
+                throw new IndexOutOfBoundsException("token " + position + " is outside the window");
+            }
+            return window[position & (SIZE - 1)];
+        }
+
+        private boolean fill(int position) {
+            if (position - index >= SIZE - BEHIND) {
+                throw new IllegalStateException("lookahead of " + (position - index) + " tokens exceeds the window");
+            }
+            while (loaded <= position && source.hasNext()) {
+                window[loaded & (SIZE - 1)] = source.next();
+                loaded++;
+            }
+            return position < loaded;
+        }
+
     }
 
 }
@@ -0,0 +1,94 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A loaded program which can be invoked any number of times, including from
+ * several threads at once.
+ *
+ * Loading resolves the functions (see {@link Resolver}) and defines them in a
+ * scope of the program, after which neither the tree nor the scope changes.
+ * Each invocation then runs in an {@link Interpreter} of its own, which holds
+ * all of the mutable state of the run: the globals, which are initialized
+ * anew for every invocation so runs can't see each other's writes, and the
+ * frames of its calls. The parent scope is shared by every invocation, so
+ * anything defined in it must be safe to use concurrently.
+ */
+public final class Program {
+
+    private final Scope scope;
+    private final List<Ast.Global> globals;
+    private final Map<Environment.Function, Ast.Function> bodies;
+
+    public Program(Scope parent, Ast.Source ast) {
+        scope = new Scope(parent);
+        Interpreter.defineBuiltins(scope);
+        globals = Collections.unmodifiableList(new ArrayList<>(ast.getGlobals()));
+        Map<Environment.Function, Ast.Function> bodies = new IdentityHashMap<>();
+        for (Ast.Function function : ast.getFunctions()) {
+            new Resolver().visit(function);
+            bodies.put(scope.defineFunction(function.getName(), function.getName(), parameterTypes(function), Environment.Type.ANY,
+                    args -> new Interpreter(this, Budget.UNLIMITED).call(function, args)), function);
+        }
+        this.bodies = bodies;
+    }
+
+    /**
+     * Returns the scope defining the functions of the program.
+     */
+    public Scope getScope() {
+        return scope;
+    }
+
+    public List<Ast.Global> getGlobals() {
+        return globals;
+    }
+
+    /**
+     * Returns the body of a function of this program, or null if it is
+     * defined elsewhere.
+     */
+    Ast.Function getBody(Environment.Function function) {
+        return bodies.get(function);
+    }
+
+    /**
+     * Invokes a function of the program in a new context.
+     */
+    public Environment.PlcObject invoke(String name, List<Environment.PlcObject> arguments) {
+        return invoke(name, arguments, Budget.UNLIMITED);
+    }
+
+    /**
+     * Invokes a function of the program in a new context limited by the
+     * budget, which includes initializing the globals.
+     */
+    public Environment.PlcObject invoke(String name, List<Environment.PlcObject> arguments, Budget budget) {
+        Environment.Function function = scope.lookupFunction(name, arguments.size());
+        Ast.Function body = bodies.get(function);
+        if (body == null) {
+            return function.invoke(arguments); // a builtin, which doesn't take steps
+        }
+        return new Interpreter(this, budget).call(body, arguments);
+    }
+
+    /**
+     * Invokes main in a new context, as the interpreter does for a source.
+     */
+    public Environment.PlcObject run() {
+        return invoke("main", Collections.emptyList());
+    }
+
+    private static List<Environment.Type> parameterTypes(Ast.Function function) {
+        List<Environment.Type> parameterTypes = new ArrayList<>();
+        for (int i = 0; i < function.getParameters().size(); i++) {
+            parameterTypes.add(Environment.Type.ANY);
+        }
+        return parameterTypes;
+    }
+
+}
@@ -0,0 +1,204 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assigns each local variable of a function a slot in an array-backed frame,
+ * so the interpreter reads and writes it by index instead of looking it up
+ * by name through a chain of scopes.
+ *
+ * A local's address is a lexical depth and a slot, but since functions don't
+ * nest every local is in the frame of the current call (depth 0), so only
+ * the slot is recorded. Parameters take the first slots, followed by a slot
+ * for each declaration in the order they appear. Blocks are flattened into
+ * the frame, with a declaration getting its own slot even where it shadows
+ * another, so a WHILE body reuses the same slots on each iteration. Any
+ * other name (a global, or a variable defined directly on a {@link Scope})
+ * is left unresolved and still looked up by name.
+ *
+ * A function which declares the same name twice in one block is left
+ * unresolved, so that the interpreter reports the redefinition when it runs
+ * as before.
+ */
+public final class Resolver implements Ast.Visitor<Void> {
+
+    private final List<Map<String, Integer>> blocks = new ArrayList<>();
+    private final Map<Ast, Integer> slots = new IdentityHashMap<>();
+    private int size;
+    private boolean valid;
+
+    @Override
+    public Void visit(Ast.Source ast) {
+        for (Ast.Function function : ast.getFunctions()) {
+            visit(function);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Global ast) {
+        return null; // globals are defined by name and have no locals
+    }
+
+    @Override
+    public Void visit(Ast.Function ast) {
+        blocks.clear();
+        slots.clear();
+        size = 0;
+        valid = true;
+        blocks.add(new HashMap<>()); // parameters share a block with the body
+        for (String parameter : ast.getParameters()) {
+            declare(parameter);
+        }
+        for (Ast.Statement statement : ast.getStatements()) {
+            visit(statement);
+        }
+        for (Map.Entry<Ast, Integer> entry : slots.entrySet()) {
+            int slot = valid ? entry.getValue() : -1;
+            if (entry.getKey() instanceof Ast.Expression.Access) {
+                ((Ast.Expression.Access) entry.getKey()).setSlot(slot);
+            } else {
+                ((Ast.Statement.Declaration) entry.getKey()).setSlot(slot);
+            }
+        }
+        ast.setFrameSize(valid ? size : -1);
+        blocks.clear();
+        slots.clear();
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Expression ast) {
+        visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Declaration ast) {
+        if (ast.getValue().isPresent()) {
+            visit(ast.getValue().get()); // the value can't see the variable it initializes
+        }
+        slots.put(ast, declare(ast.getName()));
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Assignment ast) {
+        visit(ast.getReceiver());
+        visit(ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.If ast) {
+        visit(ast.getCondition());
+        block(ast.getThenStatements());
+        block(ast.getElseStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Switch ast) {
+        visit(ast.getCondition());
+        blocks.add(new HashMap<>()); // the cases share a single scope
+        for (Ast.Statement.Case statement : ast.getCases()) {
+            visit(statement);
+        }
+        blocks.remove(blocks.size() - 1);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Case ast) {
+        if (ast.getValue().isPresent()) {
+            visit(ast.getValue().get());
+        }
+        for (Ast.Statement statement : ast.getStatements()) {
+            visit(statement);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.While ast) {
+        visit(ast.getCondition());
+        block(ast.getStatements());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Statement.Return ast) {
+        visit(ast.getValue());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Literal ast) {
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Group ast) {
+        visit(ast.getExpression());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Binary ast) {
+        visit(ast.getLeft());
+        visit(ast.getRight());
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Access ast) {
+        if (ast.getOffset().isPresent()) {
+            visit(ast.getOffset().get());
+        }
+        int slot = -1;
+        for (int i = blocks.size() - 1; i >= 0 && slot < 0; i--) {
+            slot = blocks.get(i).getOrDefault(ast.getName(), -1);
+        }
+        slots.put(ast, slot);
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.Function ast) {
+        for (Ast.Expression argument : ast.getArguments()) {
+            visit(argument);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visit(Ast.Expression.PlcList ast) {
+        for (Ast.Expression value : ast.getValues()) {
+            visit(value);
+        }
+        return null;
+    }
+
+    private void block(List<Ast.Statement> statements) {
+        blocks.add(new HashMap<>());
+        for (Ast.Statement statement : statements) {
+            visit(statement);
+        }
+        blocks.remove(blocks.size() - 1);
+    }
+
+    /**
+     * Declares a variable in the innermost block and returns its slot.
+     */
+    private int declare(String name) {
+        if (blocks.get(blocks.size() - 1).putIfAbsent(name, size) != null) {
+            valid = false;
+        }
+        return size++;
+    }
+
+}
@@ -1,16 +1,20 @@
 package plc.project;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
 public final class Scope {
 
     private final Scope parent;
     private final Map<String, Environment.Variable> variables = new HashMap<>();
-    private final Map<String, Environment.Function> functions = new HashMap<>();
+    private final Map<String, Environment.Function[]> functions = new ConcurrentHashMap<>(); // by name, then indexed by arity (copied on write)
+    private final AtomicInteger functionVersion = new AtomicInteger(); // bumped by each function defined in this scope
 
     public Scope(Scope parent) {
         this.parent = parent;
@@ -53,23 +57,77 @@ public final class Scope {
     }
 
     public Environment.Function defineFunction(String name, String jvmName, List<Environment.Type> parameterTypes, Environment.Type returnType, Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
-        if (functions.containsKey(name + "/" + parameterTypes.size())) {
-            throw new RuntimeException("The function " + name + "/" + parameterTypes.size() + " is already defined in this scope.");
-        } else {
-            Environment.Function func = new Environment.Function(name, jvmName, parameterTypes, returnType, function);
-            functions.put(func.getName() + "/" + func.getParameterTypes().size(), func);
-            return func;
+        int arity = parameterTypes.size();
+        Environment.Function func = new Environment.Function(name, jvmName, parameterTypes, returnType, function);
+        functions.compute(name, (key, overloads) -> { // atomic, and readers only ever see complete arrays
+            if (overloads != null && arity < overloads.length && overloads[arity] != null) {
+                throw new RuntimeException("The function " + name + "/" + arity + " is already defined in this scope.");
+            }
+            Environment.Function[] defined = overloads == null ? new Environment.Function[arity + 1] : Arrays.copyOf(overloads, Math.max(overloads.length, arity + 1));
+            defined[arity] = func;
+            return defined;
+        });
+        functionVersion.incrementAndGet();
+        return func;
+    }
+
+    /**
+     * Returns a number which changes whenever a function is defined in this
+     * scope (but not in its parents).
+     */
+    public int getFunctionVersion() {
+        return functionVersion.get();
+    }
+
+    /**
+     * Returns the sum of the function versions of this scope and its parents
+     * up to and including the ancestor, which changes whenever a function is
+     * defined in any of them. A function found in the ancestor can only be
+     * shadowed by one defined in these scopes, so a cached lookup (see {@link
+     * CallSite}) is valid as long as the sum is the same.
+     */
+    int getFunctionVersion(Scope ancestor) {
+        int version = 0;
+        for (Scope scope = this; ; scope = scope.parent) {
+            version += scope.functionVersion.get();
+            if (scope == ancestor) {
+                return version;
+            }
         }
     }
 
     public Environment.Function lookupFunction(String name, int arity) {
-        if (functions.containsKey(name + "/" + arity)) {
-            return functions.get(name + "/" + arity);
-        } else if (parent != null) {
-            return parent.lookupFunction(name, arity);
-        } else {
-            throw new RuntimeException("The function " + name + "/" + arity + " is not defined in this scope.");
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            Environment.Function function = scope.getFunction(name, arity);
+            if (function != null) {
+                return function;
+            }
         }
+        throw new RuntimeException("The function " + name + "/" + arity + " is not defined in this scope.");
+    }
+
+    /**
+     * Returns the function defined in this scope itself, or null if there is
+     * none.
+     */
+    Environment.Function getFunction(String name, int arity) {
+        Environment.Function[] overloads = functions.get(name);
+        return overloads != null && arity >= 0 && arity < overloads.length ? overloads[arity] : null;
+    }
+
+    /**
+     * Returns the name/arity of each function defined in this scope.
+     */
+    private List<String> functionKeys() {
+        List<String> keys = new ArrayList<>();
+        functions.forEach((name, overloads) -> {
+            for (Environment.Function function : overloads) {
+                if (function != null) {
+                    keys.add(name + "/" + function.getArity());
+                }
+            }
+        });
+        return keys;
     }
 
     @Override
@@ -77,7 +135,7 @@ public final class Scope {
         return "Scope{" +
                 "parent=" + parent +
                 ", variables=" + variables.keySet() +
-                ", functions=" + functions.keySet() +
+                ", functions=" + functionKeys() +
                 '}';
     }
 
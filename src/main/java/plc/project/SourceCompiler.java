@@ -0,0 +1,281 @@
+package plc.project;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URI;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles the Java written by the {@link Generator} in-process with the
+ * system {@link JavaCompiler}, reading the source from and writing classes
+ * to memory, and runs the result through a class loader of its own.
+ *
+ * Compiled classes are cached under the SHA-256 hash of the source, both in
+ * memory and on disk in the same way as the {@link AstCache}, so compiling
+ * a program that has been compiled before (in this run or an earlier one)
+ * skips javac entirely. As javac writes class files for the version of the
+ * JDK it runs on, entries on disk are also keyed by that version, and ones
+ * written by another JDK are a miss rather than failing to load. As for the
+ * AST cache, the disk cache is best effort: a missing or corrupt entry is a
+ * miss, and entries are moved into place once written.
+ */
+public final class SourceCompiler {
+
+    private static final String MAIN = "Main";
+
+    private final Path directory;
+    private final Map<String, Map<String, byte[]>> classes = new ConcurrentHashMap<>();
+
+    public SourceCompiler(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Returns the Java source the generator writes for an analysed AST.
+     */
+    public static String generate(Ast.Source ast) {
+        StringWriter writer = new StringWriter();
+        PrintWriter printer = new PrintWriter(writer);
+        new Generator(printer).visit(ast);
+        printer.flush();
+        return writer.toString();
+    }
+
+    /**
+     * Returns the cached classes of the source by binary name, or null if
+     * there are none.
+     */
+    public Map<String, byte[]> get(CharSequence source) {
+        String hash = AstCache.hash(source);
+        Map<String, byte[]> compiled = classes.get(hash);
+        if (compiled == null) {
+            compiled = read(path(hash));
+            if (compiled != null) {
+                classes.putIfAbsent(hash, compiled);
+            }
+        }
+        return compiled;
+    }
+
+    /**
+     * Returns the classes of the source by binary name, compiling it if they
+     * aren't cached. Failing to write the disk cache does not fail the
+     * compile.
+     */
+    public Map<String, byte[]> compile(CharSequence source) {
+        Map<String, byte[]> compiled = get(source);
+        if (compiled == null) {
+            String hash = AstCache.hash(source);
+            compiled = javac(source.toString());
+            classes.putIfAbsent(hash, compiled);
+            try {
+                write(path(hash), compiled);
+            } catch (IOException ignored) {}
+        }
+        return compiled;
+    }
+
+    /**
+     * Loads compiled classes in a new class loader and calls main on a new
+     * instance of Main, returning its result (which the generated static
+     * main uses as the exit code, so it isn't called here).
+     */
+    public static int run(Map<String, byte[]> classes) {
+        try {
+            Class<?> main = new Loader(classes).loadClass(MAIN);
+            Object instance = main.getConstructor().newInstance();
+            Method method = main.getDeclaredMethod("main");
+            method.setAccessible(true);
+            return (int) method.invoke(instance);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Map<String, byte[]> javac(String source) {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("No Java compiler is available, which requires running on a JDK.");
+        }
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Map<String, ByteArrayOutputStream> outputs = new HashMap<>();
+        StandardJavaFileManager standard = compiler.getStandardFileManager(diagnostics, null, null);
+        try {
+            if (!compiler.getTask(null, manager(standard, outputs), diagnostics, Arrays.asList("-nowarn", "-g:none"), null, Collections.singletonList(source(source))).call()) {
+                StringBuilder message = new StringBuilder("Compiling the generated source failed:");
+                for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+                    if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                        message.append(System.lineSeparator()).append(diagnostic.getLineNumber()).append(": ").append(diagnostic.getMessage(null));
+                    }
+                }
+                throw new RuntimeException(message.toString());
+            }
+        } finally {
+            try {
+                standard.close();
+            } catch (IOException ignored) {}
+        }
+        Map<String, byte[]> compiled = new HashMap<>();
+        outputs.forEach((name, output) -> compiled.put(name, output.toByteArray()));
+        return Collections.unmodifiableMap(compiled);
+    }
+
+    /**
+     * Returns a file manager which writes classes into the outputs by name.
+     */
+    private static JavaFileManager manager(StandardJavaFileManager standard, Map<String, ByteArrayOutputStream> outputs) {
+        return new ForwardingJavaFileManager<JavaFileManager>(standard) {
+
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind, FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("memory:///" + className.replace('.', '/') + kind.extension), kind) {
+
+                    @Override
+                    public OutputStream openOutputStream() {
+                        ByteArrayOutputStream output = new ByteArrayOutputStream();
+                        outputs.put(className, output);
+                        return output;
+                    }
+
+                };
+            }
+
+        };
+    }
+
+    private static JavaFileObject source(String source) {
+        return new SimpleJavaFileObject(URI.create("memory:///" + MAIN + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+
+        };
+    }
+
+    /**
+     * Reads a cache entry: the number of classes, then the name, length and
+     * bytes of each.
+     */
+    private static Map<String, byte[]> read(Path path) {
+        try {
+            byte[] bytes = Files.readAllBytes(path);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            int count = in.readInt();
+            if (count < 0) {
+                return null;
+            }
+            Map<String, byte[]> compiled = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                int length = in.readInt();
+                if (length < 0 || length > in.available()) {
+                    return null;
+                }
+                byte[] bytecode = new byte[length];
+                in.readFully(bytecode);
+                compiled.put(name, bytecode);
+            }
+            return in.available() == 0 && compiled.containsKey(MAIN) ? Collections.unmodifiableMap(compiled) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void write(Path path, Map<String, byte[]> compiled) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(compiled.size());
+        for (Map.Entry<String, byte[]> entry : compiled.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().length);
+            out.write(entry.getValue());
+        }
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, bytes.toByteArray());
+            try {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    Path path(String hash) {
+        return directory.resolve(hash + "-" + Runtime.version().feature() + ".classes");
+    }
+
+    /**
+     * Defines the classes of a single compile, delegating any other class
+     * to the loader of the compiler. The compiled classes are looked up
+     * first, as the parent may have classes of the same names (such as the
+     * application's own Main) which would otherwise be loaded instead.
+     */
+    private static final class Loader extends ClassLoader {
+
+        private final Map<String, byte[]> classes;
+
+        private Loader(Map<String, byte[]> classes) {
+            super(SourceCompiler.class.getClassLoader());
+            this.classes = classes;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            byte[] bytes = classes.get(name);
+            if (bytes == null) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    loaded = defineClass(name, bytes, 0, bytes.length);
+                }
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+                return loaded;
+            }
+        }
+
+    }
+
+}
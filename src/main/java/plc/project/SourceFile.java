@@ -0,0 +1,96 @@
+package plc.project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Loads source files for the {@link Lexer} by memory mapping them instead of
+ * reading them into a string.
+ *
+ * Files which are pure ASCII (the common case) are exposed directly as a view
+ * over the mapped bytes, one char per byte, so the file is never copied onto
+ * the heap. Anything else is decoded as UTF-8 once into a char buffer, which
+ * the lexer then reads in place.
+ */
+public final class SourceFile {
+
+    private SourceFile() {}
+
+    /**
+     * Maps the file at the given path and returns its contents.
+     */
+    public static CharSequence map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("The file " + path + " is too large to map (" + size + " bytes).");
+            }
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (isAscii(bytes)) {
+                return new AsciiSequence(bytes);
+            }
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(bytes);
+        }
+    }
+
+    private static boolean isAscii(ByteBuffer bytes) {
+        int limit = bytes.limit();
+        int i = 0;
+        for (; i + 8 <= limit; i += 8) {
+            if ((bytes.getLong(i) & 0x8080808080808080L) != 0) {
+                return false;
+            }
+        }
+        for (; i < limit; i++) {
+            if (bytes.get(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A read-only view of ASCII bytes as characters.
+     */
+    private static final class AsciiSequence implements CharSequence {
+
+        private final ByteBuffer bytes;
+
+        private AsciiSequence(ByteBuffer bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int length() {
+            return bytes.limit();
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) bytes.get(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new AsciiSequence(bytes.slice(start, end - start));
+        }
+
+        @Override
+        public String toString() {
+            byte[] array = new byte[bytes.limit()];
+            bytes.get(0, array);
+            return new String(array, StandardCharsets.US_ASCII);
+        }
+
+    }
+
+}
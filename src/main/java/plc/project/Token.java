@@ -11,14 +11,186 @@ public final class Token {
         OPERATOR
     }
 
+    /**
+     * Integer kinds for the keywords and operators of the language, so the
+     * parser can dispatch on an int instead of comparing literals. Every other
+     * token (names, literals, and unknown operators) is {@link #NONE}.
+     *
+     * Keywords are recognized with a perfect hash over the first character,
+     * last character, and length, followed by a single comparison against the
+     * keyword in that slot.
+     */
+    public static final class Kind {
+
+        public static final int NONE = 0;
+
+        public static final int LET = 1;
+        public static final int FUN = 2;
+        public static final int DO = 3;
+        public static final int END = 4;
+        public static final int IF = 5;
+        public static final int ELSE = 6;
+        public static final int SWITCH = 7;
+        public static final int CASE = 8;
+        public static final int DEFAULT = 9;
+        public static final int WHILE = 10;
+        public static final int RETURN = 11;
+        public static final int TRUE = 12;
+        public static final int FALSE = 13;
+        public static final int NIL = 14;
+        public static final int LIST = 15;
+        public static final int VAL = 16;
+        public static final int VAR = 17;
+
+        public static final int LEFT_PAREN = 18;
+        public static final int RIGHT_PAREN = 19;
+        public static final int LEFT_BRACKET = 20;
+        public static final int RIGHT_BRACKET = 21;
+        public static final int COMMA = 22;
+        public static final int SEMICOLON = 23;
+        public static final int COLON = 24;
+        public static final int ASSIGN = 25;
+        public static final int EQUAL = 26;
+        public static final int NOT_EQUAL = 27;
+        public static final int LESS = 28;
+        public static final int GREATER = 29;
+        public static final int LESS_EQUAL = 30;
+        public static final int GREATER_EQUAL = 31;
+        public static final int PLUS = 32;
+        public static final int MINUS = 33;
+        public static final int STAR = 34;
+        public static final int SLASH = 35;
+        public static final int CARET = 36;
+        public static final int AND = 37;
+        public static final int OR = 38;
+
+        private static final String[] KEYWORDS = {
+                null, "LET", "FUN", "DO", "END", "IF", "ELSE", "SWITCH", "CASE", "DEFAULT",
+                "WHILE", "RETURN", "TRUE", "FALSE", "NIL", "LIST", "VAL", "VAR"
+        };
+
+        private static final String[] SLOTS = new String[32];
+        private static final byte[] SLOT_KINDS = new byte[32];
+
+        static {
+            for (int kind = LET; kind <= VAR; kind++) {
+                String keyword = KEYWORDS[kind];
+                int slot = hash(keyword.charAt(0), keyword.charAt(keyword.length() - 1), keyword.length());
+                if (SLOTS[slot] != null) {
+                    throw new AssertionError("Keyword hash collision: " + keyword + ", " + SLOTS[slot]);
+                }
+                SLOTS[slot] = keyword;
+                SLOT_KINDS[slot] = (byte) kind;
+            }
+        }
+
+        private Kind() {}
+
+        private static int hash(char first, char last, int length) {
+            return (17 * first + 2 * last + length) & 31;
+        }
+
+        /**
+         * Returns the kind of the given characters of the sequence.
+         */
+        public static int of(CharSequence chars, int start, int length) {
+            if (length == 0) {
+                return NONE;
+            }
+            char first = chars.charAt(start);
+            if (length <= 2 && !Character.isLetter(first)) {
+                return operator(first, length == 2 ? chars.charAt(start + 1) : '\0', length);
+            }
+            int slot = hash(first, chars.charAt(start + length - 1), length);
+            String keyword = SLOTS[slot];
+            if (keyword == null || keyword.length() != length) {
+                return NONE;
+            }
+            for (int i = 0; i < length; i++) {
+                if (chars.charAt(start + i) != keyword.charAt(i)) {
+                    return NONE;
+                }
+            }
+            return SLOT_KINDS[slot];
+        }
+
+        /**
+         * Returns the kind of the given characters of the array, as in
+         * {@link #of(CharSequence, int, int)}.
+         */
+        public static int of(char[] chars, int start, int length) {
+            if (length == 0) {
+                return NONE;
+            }
+            char first = chars[start];
+            if (length <= 2 && !Character.isLetter(first)) {
+                return operator(first, length == 2 ? chars[start + 1] : '\0', length);
+            }
+            int slot = hash(first, chars[start + length - 1], length);
+            String keyword = SLOTS[slot];
+            if (keyword == null || keyword.length() != length) {
+                return NONE;
+            }
+            for (int i = 0; i < length; i++) {
+                if (chars[start + i] != keyword.charAt(i)) {
+                    return NONE;
+                }
+            }
+            return SLOT_KINDS[slot];
+        }
+
+        private static int operator(char first, char second, int length) {
+            if (length == 1) {
+                switch (first) {
+                    case '(': return LEFT_PAREN;
+                    case ')': return RIGHT_PAREN;
+                    case '[': return LEFT_BRACKET;
+                    case ']': return RIGHT_BRACKET;
+                    case ',': return COMMA;
+                    case ';': return SEMICOLON;
+                    case ':': return COLON;
+                    case '=': return ASSIGN;
+                    case '<': return LESS;
+                    case '>': return GREATER;
+                    case '+': return PLUS;
+                    case '-': return MINUS;
+                    case '*': return STAR;
+                    case '/': return SLASH;
+                    case '^': return CARET;
+                    default: return NONE;
+                }
+            }
+            switch (first) {
+                case '=': return second == '=' ? EQUAL : NONE;
+                case '!': return second == '=' ? NOT_EQUAL : NONE;
+                case '<': return second == '=' ? LESS_EQUAL : NONE;
+                case '>': return second == '=' ? GREATER_EQUAL : NONE;
+                case '&': return second == '&' ? AND : NONE;
+                case '|': return second == '|' ? OR : NONE;
+                default: return NONE;
+            }
+        }
+
+    }
+
     private final Type type;
     private final String literal;
     private final int index;
+    private final int kind;
 
     public Token(Type type, String literal, int index) {
+        this(type, literal, index, Kind.of(literal, 0, literal.length()));
+    }
+
+    /**
+     * Creates a token whose kind has already been classified, as done by the
+     * lexer while scanning.
+     */
+    Token(Type type, String literal, int index, int kind) {
         this.type = type;
         this.literal = literal;
         this.index = index;
+        this.kind = kind;
     }
 
     public Type getType() {
@@ -33,6 +205,13 @@ public final class Token {
         return index;
     }
 
+    /**
+     * Returns the {@link Kind} of the token.
+     */
+    public int getKind() {
+        return kind;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
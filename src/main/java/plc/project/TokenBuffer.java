@@ -0,0 +1,174 @@
+package plc.project;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * A compact list of tokens stored as parallel primitive arrays of types,
+ * {@link Token.Kind kinds}, start offsets and lengths into the original source. No {@link Token} or
+ * literal string exists until one is asked for through {@link #get(int)} or
+ * {@link #getLiteral(int)}, and {@link #literalEquals(int, String)} compares
+ * against the source in place.
+ *
+ * Built by {@link Lexer#lexBuffer()} and consumed by {@link Parser}.
+ */
+public final class TokenBuffer {
+
+    private static final Token.Type[] TYPES = Token.Type.values();
+
+    private final CharSequence source;
+    private byte[] types;
+    private byte[] kinds;
+    private int[] starts;
+    private int[] lengths;
+    private int size = 0;
+
+    public TokenBuffer(CharSequence source) {
+        this(source, 16 + source.length() / 8); // roughly one token per eight characters
+    }
+
+    public TokenBuffer(CharSequence source, int capacity) {
+        this.source = source;
+        this.types = new byte[capacity];
+        this.kinds = new byte[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public void add(Token.Type type, int kind, int start, int length) {
+        if (size == types.length) {
+            int capacity = Math.max(16, types.length * 2);
+            types = Arrays.copyOf(types, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        types[size] = (byte) type.ordinal();
+        kinds[size] = (byte) kind;
+        starts[size] = start;
+        lengths[size] = length;
+        size++;
+    }
+
+    /**
+     * Replaces the tokens in the range [start, end) with those of another
+     * buffer, moving every token after the range by the given shift in the
+     * source.
+     */
+    public void replace(int start, int end, TokenBuffer tokens, int shift) {
+        Objects.checkFromToIndex(start, end, size);
+        int count = tokens.size;
+        int tail = size - end;
+        int required = start + count + tail;
+        if (required > types.length) {
+            int capacity = Math.max(types.length * 2, required);
+            types = Arrays.copyOf(types, capacity);
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        System.arraycopy(types, end, types, start + count, tail);
+        System.arraycopy(kinds, end, kinds, start + count, tail);
+        System.arraycopy(starts, end, starts, start + count, tail);
+        System.arraycopy(lengths, end, lengths, start + count, tail);
+        System.arraycopy(tokens.types, 0, types, start, count);
+        System.arraycopy(tokens.kinds, 0, kinds, start, count);
+        System.arraycopy(tokens.starts, 0, starts, start, count);
+        System.arraycopy(tokens.lengths, 0, lengths, start, count);
+        if (shift != 0) {
+            for (int i = start + count; i < required; i++) {
+                starts[i] += shift;
+            }
+        }
+        size = required;
+    }
+
+    /**
+     * Removes every token from the given index onwards.
+     */
+    public void truncate(int size) {
+        Objects.checkIndex(size, this.size + 1);
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Token.Type getType(int index) {
+        return TYPES[types[Objects.checkIndex(index, size)]];
+    }
+
+    public int getKind(int index) {
+        return kinds[Objects.checkIndex(index, size)];
+    }
+
+    public int getStart(int index) {
+        return starts[Objects.checkIndex(index, size)];
+    }
+
+    public int getLength(int index) {
+        return lengths[Objects.checkIndex(index, size)];
+    }
+
+    /**
+     * Materializes the literal of the token at the given index.
+     */
+    public String getLiteral(int index) {
+        int start = getStart(index);
+        return source.subSequence(start, start + lengths[index]).toString();
+    }
+
+    /**
+     * Returns true if the literal of the token at the given index is equal to
+     * the given string, without materializing it.
+     */
+    public boolean literalEquals(int index, String literal) {
+        int start = getStart(index);
+        if (lengths[index] != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (source.charAt(start + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the token at the given index as a {@link Token}.
+     */
+    public Token get(int index) {
+        return new Token(getType(index), getLiteral(index), starts[index], kinds[index]);
+    }
+
+    /**
+     * Returns a read-only list view, creating each {@link Token} on access.
+     */
+    public List<Token> asList() {
+        return new View();
+    }
+
+    private final class View extends AbstractList<Token> implements RandomAccess {
+
+        @Override
+        public Token get(int index) {
+            return TokenBuffer.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+    }
+
+}
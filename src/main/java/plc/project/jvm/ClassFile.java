@@ -0,0 +1,452 @@
+package plc.project.jvm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a class file: a constant pool, fields, and methods with their code.
+ *
+ * Classes are written as version 49 (Java 5), the last version verified by
+ * type inference, so methods don't need the stack map frames later versions
+ * require and the code can be emitted in a single pass.
+ */
+final class ClassFile {
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ACONST_NULL = 1;
+    static final int ICONST_0 = 3;
+    static final int DCONST_0 = 14;
+    static final int BIPUSH = 16;
+    static final int SIPUSH = 17;
+    static final int LDC = 18;
+    static final int LDC_W = 19;
+    static final int LDC2_W = 20;
+    static final int ILOAD = 21;
+    static final int DLOAD = 24;
+    static final int ALOAD = 25;
+    static final int ISTORE = 54;
+    static final int DSTORE = 57;
+    static final int ASTORE = 58;
+    static final int IASTORE = 79;
+    static final int DASTORE = 82;
+    static final int AASTORE = 83;
+    static final int BASTORE = 84;
+    static final int CASTORE = 85;
+    static final int POP = 87;
+    static final int POP2 = 88;
+    static final int DUP = 89;
+    static final int IADD = 96;
+    static final int DADD = 99;
+    static final int ISUB = 100;
+    static final int DSUB = 103;
+    static final int IMUL = 104;
+    static final int DMUL = 107;
+    static final int IDIV = 108;
+    static final int DDIV = 111;
+    static final int IREM = 112;
+    static final int DREM = 115;
+    static final int I2D = 135;
+    static final int D2I = 142;
+    static final int DCMPL = 151;
+    static final int DCMPG = 152;
+    static final int IFEQ = 153;
+    static final int IFNE = 154;
+    static final int IFLT = 155;
+    static final int IFGE = 156;
+    static final int IFGT = 157;
+    static final int IFLE = 158;
+    static final int IF_ICMPEQ = 159;
+    static final int IF_ICMPNE = 160;
+    static final int IF_ICMPLT = 161;
+    static final int IF_ICMPGE = 162;
+    static final int IF_ICMPGT = 163;
+    static final int IF_ICMPLE = 164;
+    static final int IF_ACMPEQ = 165;
+    static final int IF_ACMPNE = 166;
+    static final int GOTO = 167;
+    static final int IRETURN = 172;
+    static final int DRETURN = 175;
+    static final int ARETURN = 176;
+    static final int RETURN = 177;
+    static final int GETSTATIC = 178;
+    static final int GETFIELD = 180;
+    static final int PUTFIELD = 181;
+    static final int INVOKEVIRTUAL = 182;
+    static final int INVOKESPECIAL = 183;
+    static final int INVOKESTATIC = 184;
+    static final int NEW = 187;
+    static final int NEWARRAY = 188;
+    static final int ANEWARRAY = 189;
+
+    private static final int VERSION = 49;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int count = 1;
+
+    private final String name;
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<Code> methods = new ArrayList<>();
+
+    ClassFile(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    void field(int access, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    /**
+     * Starts a method, returning the code to emit its instructions into.
+     * Parameters take the first locals, after this if it isn't static.
+     */
+    Code method(int access, String name, String descriptor, int parameterSlots) {
+        Code code = new Code(access, utf8(name), utf8(descriptor), parameterSlots);
+        methods.add(code);
+        return code;
+    }
+
+    byte[] toByteArray() {
+        int thisClass = classRef(name);
+        int superClass = classRef("java/lang/Object");
+        int codeName = utf8("Code");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(count);
+            pool.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (Code method : methods) {
+                method.write(out, codeName);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    int utf8(String value) {
+        return entry("Utf8:" + value, 1, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    int classRef(String name) {
+        int index = utf8(name);
+        return entry("Class:" + name, 1, out -> {
+            out.writeByte(7);
+            out.writeShort(index);
+        });
+    }
+
+    int string(String value) {
+        int index = utf8(value);
+        return entry("String:" + value, 1, out -> {
+            out.writeByte(8);
+            out.writeShort(index);
+        });
+    }
+
+    int integer(int value) {
+        return entry("Integer:" + value, 1, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        });
+    }
+
+    int decimal(double value) {
+        return entry("Double:" + Double.doubleToRawLongBits(value), 2, out -> {
+            out.writeByte(6);
+            out.writeDouble(value);
+        });
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(9, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("NameAndType:" + name + ":" + descriptor, 1, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return entry(tag + ":" + owner + "." + name + ":" + descriptor, 1, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    /**
+     * Returns the index of an entry, writing it to the pool the first time
+     * its key is seen. Doubles take two indices.
+     */
+    private int entry(String key, int size, Writer writer) {
+        Integer index = entries.get(key);
+        if (index != null) {
+            return index;
+        }
+        if (count + size > 0xFFFF) {
+            throw new RuntimeException("The constant pool of " + name + " is too large.");
+        }
+        try {
+            writer.write(poolOut);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        entries.put(key, count);
+        count += size;
+        return count - size;
+    }
+
+    private interface Writer {
+
+        void write(DataOutputStream out) throws IOException;
+
+    }
+
+    /**
+     * A position in the code, which may be jumped to before it is marked.
+     */
+    static final class Label {
+
+        private int position = -1;
+        private int depth = -1;
+        private final List<Integer> jumps = new ArrayList<>();
+
+    }
+
+    /**
+     * The code of a method, tracking the depth of the operand stack and the
+     * number of locals for the limits the class file records.
+     */
+    final class Code {
+
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private byte[] code = new byte[64];
+        private int size;
+        private int depth;
+        private int maxStack;
+        private int maxLocals;
+
+        private Code(int access, int name, int descriptor, int parameterSlots) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxLocals = parameterSlots;
+        }
+
+        /**
+         * Emits an instruction without operands, which changes the depth of
+         * the stack by the given effect.
+         */
+        void op(int opcode, int effect) {
+            u1(opcode);
+            stack(effect);
+        }
+
+        /**
+         * Emits an instruction with a single byte operand.
+         */
+        void op1(int opcode, int operand, int effect) {
+            u1(opcode);
+            u1(operand);
+            stack(effect);
+        }
+
+        /**
+         * Emits an instruction with a two byte operand, such as the index
+         * of a constant.
+         */
+        void op2(int opcode, int operand, int effect) {
+            u1(opcode);
+            u2(operand);
+            stack(effect);
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor, int effect) {
+            op2(opcode, methodRef(owner, name, descriptor), effect);
+        }
+
+        void integer(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value, 1);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op1(BIPUSH, value & 0xFF, 1);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op2(SIPUSH, value & 0xFFFF, 1);
+            } else {
+                constant(ClassFile.this.integer(value));
+            }
+        }
+
+        void decimal(double value) {
+            if (Double.doubleToRawLongBits(value) == 0L || value == 1.0) {
+                op(DCONST_0 + (int) value, 2);
+            } else {
+                op2(LDC2_W, ClassFile.this.decimal(value), 2);
+            }
+        }
+
+        void string(String value) {
+            constant(ClassFile.this.string(value));
+        }
+
+        private void constant(int index) {
+            if (index <= 0xFF) {
+                op1(LDC, index, 1);
+            } else {
+                op2(LDC_W, index, 1);
+            }
+        }
+
+        /**
+         * Loads or stores a local with the given base opcode (ILOAD, DLOAD,
+         * ALOAD, ISTORE, DSTORE or ASTORE).
+         */
+        void local(int opcode, int slot, int effect) {
+            if (slot > 0xFF) {
+                throw new RuntimeException("Too many locals.");
+            }
+            op1(opcode, slot, effect);
+        }
+
+        /**
+         * Reserves locals, returning the first slot.
+         */
+        int allocate(int slots) {
+            maxLocals += slots;
+            return maxLocals - slots;
+        }
+
+        int getLocals() {
+            return maxLocals;
+        }
+
+        /**
+         * Emits a jump to the label, which pops the operands of the given
+         * effect.
+         */
+        void jump(int opcode, Label label, int effect) {
+            int start = size;
+            u1(opcode);
+            stack(effect);
+            label.depth = depth;
+            if (label.position >= 0) {
+                u2(offset(label.position - start));
+            } else {
+                label.jumps.add(start);
+                u2(0);
+            }
+        }
+
+        /**
+         * Marks the label at the current position. Code following a GOTO
+         * or return is only reached through a label, so takes its depth.
+         */
+        void mark(Label label) {
+            label.position = size;
+            if (label.depth >= 0) {
+                depth = label.depth;
+            }
+            for (int start : label.jumps) {
+                int offset = offset(size - start);
+                code[start + 1] = (byte) (offset >> 8);
+                code[start + 2] = (byte) offset;
+            }
+            label.jumps.clear();
+        }
+
+        private int offset(int offset) {
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                throw new RuntimeException("The method is too large.");
+            }
+            return offset & 0xFFFF;
+        }
+
+        private void stack(int effect) {
+            depth += effect;
+            maxStack = Math.max(maxStack, depth);
+        }
+
+        private void u1(int value) {
+            if (size == code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[size++] = (byte) value;
+        }
+
+        private void u2(int value) {
+            u1(value >> 8);
+            u1(value);
+        }
+
+        private void write(DataOutputStream out, int codeName) throws IOException {
+            if (size > 0xFFFF) {
+                throw new RuntimeException("The method is too large.");
+            }
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + size);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(size);
+            out.write(code, 0, size);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+
+    }
+
+}
@@ -0,0 +1,660 @@
+package plc.project.jvm;
+
+import plc.project.Ast;
+import plc.project.Environment;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Generates a JVM class directly from an analysed source, with the same
+ * meaning as the Java the {@link plc.project.Generator} writes: globals are
+ * fields named by their variable's jvmName, functions are methods named by
+ * their function's jvmName, and the types are the JVM types of the
+ * {@link Environment.Type}s (Integer is int, Decimal is double, and so on).
+ *
+ * The class can then be defined as a hidden class and its main run in the
+ * same process with {@link #execute(byte[])}, which skips writing Main.java,
+ * compiling it with javac and starting a JVM to run it.
+ *
+ * Constructs the generated Java wouldn't compile (list access, comparing
+ * strings with &lt;, calling a function without a value for its result) throw
+ * a RuntimeException while generating.
+ */
+public final class ClassGenerator {
+
+    private static final String NAME = "plc/project/jvm/Main";
+    private static final String OBJECT = "java/lang/Object";
+    private static final String STRING = "Ljava/lang/String;";
+    private static final String STRING_BUILDER = "java/lang/StringBuilder";
+
+    private final ClassFile file = new ClassFile(NAME);
+    private final Map<String, String> globals = new HashMap<>();
+    private final List<Map<String, Local>> blocks = new ArrayList<>();
+    private ClassFile.Code code;
+    private String returnType;
+
+    private ClassGenerator() {}
+
+    /**
+     * Returns the bytes of the class for an analysed source.
+     */
+    public static byte[] generate(Ast.Source ast) {
+        ClassGenerator generator = new ClassGenerator();
+        generator.source(ast);
+        return generator.file.toByteArray();
+    }
+
+    /**
+     * Generates the class for an analysed source and runs it, returning the
+     * result of main (which the generated Java uses as the exit code).
+     */
+    public static int execute(Ast.Source ast) {
+        return execute(generate(ast));
+    }
+
+    /**
+     * Defines the bytes of a generated class as a hidden class and runs it,
+     * returning the result of main.
+     */
+    public static int execute(byte[] bytes) {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            Object main = lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+            return (int) lookup.findVirtual(lookup.lookupClass(), "main", MethodType.methodType(int.class)).invoke(main);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private void source(Ast.Source ast) {
+        for (Ast.Global global : ast.getGlobals()) {
+            String descriptor = descriptor(global.getVariable().getType());
+            if (global.getValue().isPresent() && global.getValue().get() instanceof Ast.Expression.PlcList) {
+                descriptor = "[" + descriptor;
+            }
+            globals.put(global.getVariable().getJvmName(), descriptor);
+            file.field(0, global.getVariable().getJvmName(), descriptor);
+        }
+
+        code = file.method(ClassFile.ACC_PUBLIC, "<init>", "()V", 1);
+        code.local(ClassFile.ALOAD, 0, 1);
+        code.invoke(ClassFile.INVOKESPECIAL, OBJECT, "<init>", "()V", -1);
+        for (Ast.Global global : ast.getGlobals()) {
+            if (global.getValue().isPresent()) {
+                String descriptor = globals.get(global.getVariable().getJvmName());
+                code.local(ClassFile.ALOAD, 0, 1);
+                if (global.getValue().get() instanceof Ast.Expression.PlcList) {
+                    array((Ast.Expression.PlcList) global.getValue().get(), descriptor.substring(1));
+                } else {
+                    convert(expression(global.getValue().get()), descriptor);
+                }
+                code.op2(ClassFile.PUTFIELD, file.fieldRef(NAME, global.getVariable().getJvmName(), descriptor), -1 - size(descriptor));
+            }
+        }
+        code.op(ClassFile.RETURN, 0);
+
+        for (Ast.Function function : ast.getFunctions()) {
+            function(function);
+        }
+    }
+
+    private void function(Ast.Function ast) {
+        Environment.Function function = ast.getFunction();
+        returnType = returnDescriptor(function.getReturnType());
+        blocks.add(new HashMap<>());
+        int slots = 1;
+        for (int i = 0; i < ast.getParameters().size(); i++) {
+            String descriptor = descriptor(function.getParameterTypes().get(i));
+            blocks.get(0).put(ast.getParameters().get(i), new Local(slots, descriptor));
+            slots += size(descriptor);
+        }
+        code = file.method(0, function.getJvmName(), methodDescriptor(function), slots);
+        statements(ast.getStatements());
+        // functions without a result return at the end, and others (which
+        // Java requires to RETURN) get a default so code can't run off it
+        if (returnType.equals("V")) {
+            code.op(ClassFile.RETURN, 0);
+        } else {
+            defaultValue(returnType);
+            code.op(returnOpcode(returnType), -size(returnType));
+        }
+        blocks.clear();
+    }
+
+    private void statements(List<Ast.Statement> statements) {
+        for (Ast.Statement statement : statements) {
+            statement(statement);
+        }
+    }
+
+    private void block(List<Ast.Statement> statements) {
+        blocks.add(new HashMap<>());
+        statements(statements);
+        blocks.remove(blocks.size() - 1);
+    }
+
+    private void statement(Ast.Statement ast) {
+        if (ast instanceof Ast.Statement.Expression) {
+            pop(expression(((Ast.Statement.Expression) ast).getExpression()));
+        } else if (ast instanceof Ast.Statement.Declaration) {
+            Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) ast;
+            String descriptor = descriptor(declaration.getVariable().getType());
+            if (declaration.getValue().isPresent()) {
+                convert(expression(declaration.getValue().get()), descriptor);
+            } else {
+                defaultValue(descriptor); // the JVM requires locals to be assigned before use
+            }
+            Local local = new Local(code.allocate(size(descriptor)), descriptor);
+            blocks.get(blocks.size() - 1).put(declaration.getName(), local);
+            code.local(storeOpcode(descriptor), local.slot, -size(descriptor));
+        } else if (ast instanceof Ast.Statement.Assignment) {
+            Ast.Statement.Assignment assignment = (Ast.Statement.Assignment) ast;
+            Ast.Expression.Access receiver = access(assignment.getReceiver());
+            Local local = local(receiver.getName());
+            if (local != null) {
+                convert(expression(assignment.getValue()), local.descriptor);
+                code.local(storeOpcode(local.descriptor), local.slot, -size(local.descriptor));
+            } else {
+                String name = receiver.getVariable().getJvmName();
+                String descriptor = global(name);
+                code.local(ClassFile.ALOAD, 0, 1);
+                convert(expression(assignment.getValue()), descriptor);
+                code.op2(ClassFile.PUTFIELD, file.fieldRef(NAME, name, descriptor), -1 - size(descriptor));
+            }
+        } else if (ast instanceof Ast.Statement.If) {
+            Ast.Statement.If statement = (Ast.Statement.If) ast;
+            ClassFile.Label otherwise = new ClassFile.Label();
+            branch(statement.getCondition(), false, otherwise);
+            block(statement.getThenStatements());
+            if (statement.getElseStatements().isEmpty()) {
+                code.mark(otherwise);
+            } else {
+                ClassFile.Label end = new ClassFile.Label();
+                code.jump(ClassFile.GOTO, end, 0);
+                code.mark(otherwise);
+                block(statement.getElseStatements());
+                code.mark(end);
+            }
+        } else if (ast instanceof Ast.Statement.Switch) {
+            switchStatement((Ast.Statement.Switch) ast);
+        } else if (ast instanceof Ast.Statement.While) {
+            Ast.Statement.While statement = (Ast.Statement.While) ast;
+            ClassFile.Label start = new ClassFile.Label();
+            ClassFile.Label end = new ClassFile.Label();
+            code.mark(start);
+            branch(statement.getCondition(), false, end);
+            block(statement.getStatements());
+            code.jump(ClassFile.GOTO, start, 0);
+            code.mark(end);
+        } else if (ast instanceof Ast.Statement.Return) {
+            String type = expression(((Ast.Statement.Return) ast).getValue());
+            if (returnType.equals("V")) {
+                pop(type);
+                code.op(ClassFile.RETURN, 0);
+            } else {
+                convert(type, returnType);
+                code.op(returnOpcode(returnType), -size(returnType));
+            }
+        } else {
+            throw new RuntimeException("Unexpected case outside of a switch.");
+        }
+    }
+
+    /**
+     * Generates a Java switch over an int or char: the case equal to the
+     * value runs, or the default case if none is, and a case with a value
+     * ends with a break.
+     */
+    private void switchStatement(Ast.Statement.Switch ast) {
+        String type = expression(ast.getCondition());
+        if (!type.equals("I") && !type.equals("C")) {
+            throw new RuntimeException("Unsupported switch on " + type + ".");
+        }
+        int slot = code.allocate(1);
+        code.local(ClassFile.ISTORE, slot, -1);
+        List<ClassFile.Label> labels = new ArrayList<>();
+        ClassFile.Label end = new ClassFile.Label();
+        ClassFile.Label otherwise = end;
+        for (Ast.Statement.Case element : ast.getCases()) {
+            ClassFile.Label label = new ClassFile.Label();
+            labels.add(label);
+            if (element.getValue().isPresent()) {
+                code.local(ClassFile.ILOAD, slot, 1);
+                convert(expression(element.getValue().get()), "I");
+                code.jump(ClassFile.IF_ICMPEQ, label, -2);
+            } else {
+                otherwise = label;
+            }
+        }
+        code.jump(ClassFile.GOTO, otherwise, 0);
+        blocks.add(new HashMap<>()); // the cases share the block of the switch
+        for (int i = 0; i < labels.size(); i++) {
+            Ast.Statement.Case element = ast.getCases().get(i);
+            code.mark(labels.get(i));
+            statements(element.getStatements());
+            if (element.getValue().isPresent()) {
+                code.jump(ClassFile.GOTO, end, 0);
+            }
+        }
+        blocks.remove(blocks.size() - 1);
+        code.mark(end);
+    }
+
+    /**
+     * Generates an expression, returning the descriptor of the value it
+     * leaves on the stack (V if none).
+     */
+    private String expression(Ast.Expression ast) {
+        if (ast instanceof Ast.Expression.Literal) {
+            return literal(((Ast.Expression.Literal) ast).getLiteral());
+        } else if (ast instanceof Ast.Expression.Group) {
+            return expression(((Ast.Expression.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expression.Binary) {
+            return binary((Ast.Expression.Binary) ast);
+        } else if (ast instanceof Ast.Expression.Access) {
+            Ast.Expression.Access access = access(ast);
+            Local local = local(access.getName());
+            if (local != null) {
+                code.local(loadOpcode(local.descriptor), local.slot, size(local.descriptor));
+                return local.descriptor;
+            }
+            String name = access.getVariable().getJvmName();
+            String descriptor = global(name);
+            code.local(ClassFile.ALOAD, 0, 1);
+            code.op2(ClassFile.GETFIELD, file.fieldRef(NAME, name, descriptor), size(descriptor) - 1);
+            return descriptor;
+        } else if (ast instanceof Ast.Expression.Function) {
+            return call((Ast.Expression.Function) ast);
+        }
+        throw new RuntimeException("Unsupported list outside of a global.");
+    }
+
+    private String literal(Object literal) {
+        if (literal == null) {
+            code.op(ClassFile.ACONST_NULL, 1);
+            return "Ljava/lang/Void;";
+        } else if (literal instanceof Boolean) {
+            code.integer((Boolean) literal ? 1 : 0);
+            return "Z";
+        } else if (literal instanceof BigInteger) {
+            code.integer(((BigInteger) literal).intValueExact());
+            return "I";
+        } else if (literal instanceof BigDecimal) {
+            code.decimal(((BigDecimal) literal).doubleValue());
+            return "D";
+        } else if (literal instanceof Character) {
+            code.integer((Character) literal);
+            return "C";
+        }
+        code.string((String) literal);
+        return STRING;
+    }
+
+    private String binary(Ast.Expression.Binary ast) {
+        String operator = ast.getOperator();
+        switch (operator) {
+            case "&&":
+            case "||":
+            case "<":
+            case "<=":
+            case ">":
+            case ">=":
+            case "==":
+            case "!=":
+                ClassFile.Label otherwise = new ClassFile.Label();
+                ClassFile.Label end = new ClassFile.Label();
+                branch(ast, false, otherwise);
+                code.integer(1);
+                code.jump(ClassFile.GOTO, end, 0);
+                code.mark(otherwise);
+                code.integer(0);
+                code.mark(end);
+                return "Z";
+        }
+        String left = type(ast.getLeft());
+        String right = type(ast.getRight());
+        if (operator.equals("+") && (left.equals(STRING) || right.equals(STRING))) {
+            code.op2(ClassFile.NEW, file.classRef(STRING_BUILDER), 1);
+            code.op(ClassFile.DUP, 1);
+            code.invoke(ClassFile.INVOKESPECIAL, STRING_BUILDER, "<init>", "()V", -1);
+            append(ast.getLeft());
+            append(ast.getRight());
+            code.invoke(ClassFile.INVOKEVIRTUAL, STRING_BUILDER, "toString", "()" + STRING, 0);
+            return STRING;
+        }
+        String type = left.equals("D") || right.equals("D") ? "D" : "I";
+        if (operator.equals("^")) {
+            convert(expression(ast.getLeft()), "D");
+            convert(expression(ast.getRight()), "D");
+            code.invoke(ClassFile.INVOKESTATIC, "java/lang/Math", "pow", "(DD)D", -2);
+            return "D"; // a double even for integers, as Math.pow is in the generated Java
+        }
+        numeric(left, operator);
+        numeric(right, operator);
+        convert(expression(ast.getLeft()), type);
+        convert(expression(ast.getRight()), type);
+        int offset = type.equals("D") ? 3 : 0;
+        switch (operator) {
+            case "+": code.op(ClassFile.IADD + offset, -size(type)); break;
+            case "-": code.op(ClassFile.ISUB + offset, -size(type)); break;
+            case "*": code.op(ClassFile.IMUL + offset, -size(type)); break;
+            case "/": code.op(ClassFile.IDIV + offset, -size(type)); break;
+            case "%": code.op(ClassFile.IREM + offset, -size(type)); break;
+            default: throw new RuntimeException("Unsupported operator " + operator + ".");
+        }
+        return type;
+    }
+
+    private void append(Ast.Expression ast) {
+        String type = expression(ast);
+        if (type.equals("V")) {
+            throw new RuntimeException("Expected a value to concatenate.");
+        }
+        String parameter = type.equals("I") || type.equals("Z") || type.equals("C") || type.equals("D") || type.equals(STRING)
+                ? type : "L" + OBJECT + ";";
+        code.invoke(ClassFile.INVOKEVIRTUAL, STRING_BUILDER, "append", "(" + parameter + ")L" + STRING_BUILDER + ";", -size(type));
+    }
+
+    private static void numeric(String type, String operator) {
+        if (!type.equals("I") && !type.equals("C") && !type.equals("D")) {
+            throw new RuntimeException("Unsupported operand " + type + " for " + operator + ".");
+        }
+    }
+
+    /**
+     * Generates a condition as jumps to the label when it evaluates to the
+     * given value, falling through otherwise, so && and || short-circuit
+     * and comparisons don't create booleans.
+     */
+    private void branch(Ast.Expression ast, boolean when, ClassFile.Label label) {
+        while (ast instanceof Ast.Expression.Group) {
+            ast = ((Ast.Expression.Group) ast).getExpression();
+        }
+        if (!(ast instanceof Ast.Expression.Binary)) {
+            convert(expression(ast), "Z");
+            code.jump(when ? ClassFile.IFNE : ClassFile.IFEQ, label, -1);
+            return;
+        }
+        Ast.Expression.Binary binary = (Ast.Expression.Binary) ast;
+        String operator = binary.getOperator();
+        if (operator.equals("&&") || operator.equals("||")) {
+            if (when != operator.equals("&&")) {
+                // a false left decides a false &&, and a true left a true ||
+                branch(binary.getLeft(), when, label);
+                branch(binary.getRight(), when, label);
+            } else {
+                ClassFile.Label skip = new ClassFile.Label();
+                branch(binary.getLeft(), !when, skip);
+                branch(binary.getRight(), when, label);
+                code.mark(skip);
+            }
+            return;
+        }
+        int condition;
+        switch (operator) {
+            case "<": condition = ClassFile.IFLT; break;
+            case "<=": condition = ClassFile.IFLE; break;
+            case ">": condition = ClassFile.IFGT; break;
+            case ">=": condition = ClassFile.IFGE; break;
+            case "==": condition = ClassFile.IFEQ; break;
+            case "!=": condition = ClassFile.IFNE; break;
+            default:
+                convert(expression(ast), "Z");
+                code.jump(when ? ClassFile.IFNE : ClassFile.IFEQ, label, -1);
+                return;
+        }
+        if (!when) {
+            condition = ((condition - ClassFile.IFEQ) ^ 1) + ClassFile.IFEQ; // the negations are adjacent pairs
+        }
+        String left = type(binary.getLeft());
+        String right = type(binary.getRight());
+        if (left.equals("D") || right.equals("D")) {
+            numeric(left, operator);
+            numeric(right, operator);
+            convert(expression(binary.getLeft()), "D");
+            convert(expression(binary.getRight()), "D");
+            // NaN compares as greater for < and <=, and as less otherwise, so it is false
+            code.op(operator.startsWith("<") ? ClassFile.DCMPG : ClassFile.DCMPL, -3);
+            code.jump(condition, label, -1);
+        } else if (primitive(left) && primitive(right)) {
+            convert(expression(binary.getLeft()), "I");
+            convert(expression(binary.getRight()), "I");
+            code.jump(condition - ClassFile.IFEQ + ClassFile.IF_ICMPEQ, label, -2);
+        } else if ((condition == ClassFile.IFEQ || condition == ClassFile.IFNE) && !primitive(left) && !primitive(right)) {
+            expression(binary.getLeft());
+            expression(binary.getRight());
+            code.jump(condition - ClassFile.IFEQ + ClassFile.IF_ACMPEQ, label, -2);
+        } else {
+            throw new RuntimeException("Unsupported comparison of " + left + " and " + right + ".");
+        }
+    }
+
+    private String call(Ast.Expression.Function ast) {
+        Environment.Function function = ast.getFunction();
+        if (function.getJvmName().equals("System.out.println")) {
+            code.op2(ClassFile.GETSTATIC, file.fieldRef("java/lang/System", "out", "Ljava/io/PrintStream;"), 1);
+            String type = expression(ast.getArguments().get(0));
+            String parameter = primitive(type) || type.equals("D") || type.equals(STRING) ? type : "L" + OBJECT + ";";
+            code.invoke(ClassFile.INVOKEVIRTUAL, "java/io/PrintStream", "println", "(" + parameter + ")V", -1 - size(type));
+            return "V";
+        }
+        code.local(ClassFile.ALOAD, 0, 1);
+        int slots = 0;
+        for (int i = 0; i < ast.getArguments().size(); i++) {
+            String parameter = descriptor(function.getParameterTypes().get(i));
+            convert(expression(ast.getArguments().get(i)), parameter);
+            slots += size(parameter);
+        }
+        String type = returnDescriptor(function.getReturnType());
+        code.invoke(ClassFile.INVOKEVIRTUAL, NAME, function.getJvmName(), methodDescriptor(function), size(type) - slots - 1);
+        return type;
+    }
+
+    private void array(Ast.Expression.PlcList ast, String element) {
+        code.integer(ast.getValues().size());
+        switch (element) {
+            case "I": code.op1(ClassFile.NEWARRAY, 10, 0); break;
+            case "D": code.op1(ClassFile.NEWARRAY, 7, 0); break;
+            case "Z": code.op1(ClassFile.NEWARRAY, 4, 0); break;
+            case "C": code.op1(ClassFile.NEWARRAY, 5, 0); break;
+            default: code.op2(ClassFile.ANEWARRAY, file.classRef(element.substring(1, element.length() - 1)), 0);
+        }
+        for (int i = 0; i < ast.getValues().size(); i++) {
+            code.op(ClassFile.DUP, 1);
+            code.integer(i);
+            convert(expression(ast.getValues().get(i)), element);
+            switch (element) {
+                case "I": code.op(ClassFile.IASTORE, -3); break;
+                case "D": code.op(ClassFile.DASTORE, -4); break;
+                case "Z": code.op(ClassFile.BASTORE, -3); break;
+                case "C": code.op(ClassFile.CASTORE, -3); break;
+                default: code.op(ClassFile.AASTORE, -3);
+            }
+        }
+    }
+
+    /**
+     * Returns the descriptor of the value an expression leaves on the
+     * stack, without generating it.
+     */
+    private String type(Ast.Expression ast) {
+        if (ast instanceof Ast.Expression.Literal) {
+            Object literal = ((Ast.Expression.Literal) ast).getLiteral();
+            if (literal == null) return "Ljava/lang/Void;";
+            if (literal instanceof Boolean) return "Z";
+            if (literal instanceof BigInteger) return "I";
+            if (literal instanceof BigDecimal) return "D";
+            if (literal instanceof Character) return "C";
+            return STRING;
+        } else if (ast instanceof Ast.Expression.Group) {
+            return type(((Ast.Expression.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expression.Binary) {
+            Ast.Expression.Binary binary = (Ast.Expression.Binary) ast;
+            String left = type(binary.getLeft());
+            String right = type(binary.getRight());
+            switch (binary.getOperator()) {
+                case "+":
+                    if (left.equals(STRING) || right.equals(STRING)) return STRING;
+                    return left.equals("D") || right.equals("D") ? "D" : "I";
+                case "-":
+                case "*":
+                case "/":
+                case "%":
+                    return left.equals("D") || right.equals("D") ? "D" : "I";
+                case "^":
+                    return "D";
+                default:
+                    return "Z";
+            }
+        } else if (ast instanceof Ast.Expression.Access) {
+            Ast.Expression.Access access = access(ast);
+            Local local = local(access.getName());
+            return local != null ? local.descriptor : global(access.getVariable().getJvmName());
+        } else if (ast instanceof Ast.Expression.Function) {
+            Environment.Function function = ((Ast.Expression.Function) ast).getFunction();
+            return function.getJvmName().equals("System.out.println") ? "V" : returnDescriptor(function.getReturnType());
+        }
+        throw new RuntimeException("Unsupported list outside of a global.");
+    }
+
+    private static Ast.Expression.Access access(Ast.Expression ast) {
+        if (!(ast instanceof Ast.Expression.Access) || ((Ast.Expression.Access) ast).getOffset().isPresent()) {
+            throw new RuntimeException("Unsupported access " + ast + ".");
+        }
+        return (Ast.Expression.Access) ast;
+    }
+
+    private Local local(String name) {
+        for (int i = blocks.size() - 1; i >= 0; i--) {
+            Local local = blocks.get(i).get(name);
+            if (local != null) {
+                return local;
+            }
+        }
+        return null;
+    }
+
+    private String global(String name) {
+        String descriptor = globals.get(name);
+        if (descriptor == null) {
+            throw new RuntimeException("The variable " + name + " is not defined.");
+        }
+        return descriptor;
+    }
+
+    /**
+     * Converts the value on the stack to the given type, as Java would when
+     * assigning it: widening an int to a double, and boxing a primitive for
+     * an Object. A double is narrowed for the result of ^ on ints.
+     */
+    private void convert(String from, String to) {
+        if (from.equals(to)) {
+            return;
+        } else if (from.equals("V")) {
+            throw new RuntimeException("Expected a value of type " + to + ".");
+        } else if (primitive(from) && to.equals("D")) {
+            code.op(ClassFile.I2D, 1);
+        } else if (from.equals("D") && primitive(to)) {
+            code.op(ClassFile.D2I, -1);
+        } else if ((primitive(from) || from.equals("D")) && !primitive(to) && !to.equals("D")) {
+            String box;
+            switch (from) {
+                case "I": box = "java/lang/Integer"; break;
+                case "Z": box = "java/lang/Boolean"; break;
+                case "C": box = "java/lang/Character"; break;
+                default: box = "java/lang/Double";
+            }
+            code.invoke(ClassFile.INVOKESTATIC, box, "valueOf", "(" + from + ")L" + box + ";", 1 - size(from));
+        } else if (!(primitive(from) && primitive(to)) && (primitive(from) || primitive(to) || from.equals("D") || to.equals("D"))) {
+            throw new RuntimeException("Unsupported conversion from " + from + " to " + to + ".");
+        }
+    }
+
+    private void defaultValue(String descriptor) {
+        if (descriptor.equals("D")) {
+            code.decimal(0);
+        } else if (primitive(descriptor)) {
+            code.integer(0);
+        } else {
+            code.op(ClassFile.ACONST_NULL, 1);
+        }
+    }
+
+    private void pop(String type) {
+        if (!type.equals("V")) {
+            code.op(size(type) == 2 ? ClassFile.POP2 : ClassFile.POP, -size(type));
+        }
+    }
+
+    private static boolean primitive(String descriptor) {
+        return descriptor.equals("I") || descriptor.equals("Z") || descriptor.equals("C");
+    }
+
+    private static int size(String descriptor) {
+        return descriptor.equals("V") ? 0 : descriptor.equals("D") ? 2 : 1;
+    }
+
+    private static int loadOpcode(String descriptor) {
+        return primitive(descriptor) ? ClassFile.ILOAD : descriptor.equals("D") ? ClassFile.DLOAD : ClassFile.ALOAD;
+    }
+
+    private static int storeOpcode(String descriptor) {
+        return primitive(descriptor) ? ClassFile.ISTORE : descriptor.equals("D") ? ClassFile.DSTORE : ClassFile.ASTORE;
+    }
+
+    private static int returnOpcode(String descriptor) {
+        return primitive(descriptor) ? ClassFile.IRETURN : descriptor.equals("D") ? ClassFile.DRETURN : ClassFile.ARETURN;
+    }
+
+    private static String methodDescriptor(Environment.Function function) {
+        StringBuilder builder = new StringBuilder("(");
+        for (Environment.Type type : function.getParameterTypes()) {
+            builder.append(descriptor(type));
+        }
+        return builder.append(")").append(returnDescriptor(function.getReturnType())).toString();
+    }
+
+    /**
+     * Returns the descriptor of the result of a function, which is void for
+     * functions returning Nil.
+     */
+    private static String returnDescriptor(Environment.Type type) {
+        return type == Environment.Type.NIL ? "V" : descriptor(type);
+    }
+
+    private static String descriptor(Environment.Type type) {
+        switch (type.getJvmName()) {
+            case "int": return "I";
+            case "double": return "D";
+            case "boolean": return "Z";
+            case "char": return "C";
+            case "String": return STRING;
+            case "Object": return "Ljava/lang/Object;";
+            case "Comparable": return "Ljava/lang/Comparable;";
+            case "Void": return "Ljava/lang/Void;";
+            default: throw new RuntimeException("Unsupported type " + type.getName() + ".");
+        }
+    }
+
+    private static final class Local {
+
+        private final int slot;
+        private final String descriptor;
+
+        private Local(int slot, String descriptor) {
+            this.slot = slot;
+            this.descriptor = descriptor;
+        }
+
+    }
+
+}
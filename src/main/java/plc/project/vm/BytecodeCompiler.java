@@ -0,0 +1,335 @@
+package plc.project.vm;
+
+import plc.project.Ast;
+import plc.project.CallSite;
+import plc.project.Environment;
+import plc.project.Interpreter;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a function, with its locals resolved to slots by the
+ * {@link plc.project.Resolver}, into a {@link Chunk} of bytecode.
+ *
+ * IF, WHILE and SWITCH become jumps, and a condition is compiled into the
+ * jumps it makes, so && and || short-circuit without creating booleans. A
+ * SWITCH keeps its character in an extra local after those of the resolver,
+ * and is compiled to the interpreter's semantics: the first case equal to
+ * the value runs, and a default case runs the last case and continues.
+ */
+final class BytecodeCompiler {
+
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> indices = new HashMap<>();
+    private int[] code = new int[64];
+    private int size;
+    private int locals;
+    private int depth;
+    private int maxStack;
+
+    private BytecodeCompiler(int locals) {
+        this.locals = locals;
+    }
+
+    /**
+     * Compiles a resolved function, throwing {@link Unsupported} if it can't
+     * be represented.
+     */
+    static Chunk compile(Ast.Function ast) {
+        if (ast.getFrameSize() < 0) {
+            throw new Unsupported();
+        }
+        BytecodeCompiler compiler = new BytecodeCompiler(ast.getFrameSize());
+        compiler.statements(ast.getStatements());
+        compiler.emit(Opcode.CONSTANT, 1, compiler.constant(Environment.NIL));
+        compiler.emit(Opcode.RETURN, -1);
+        return new Chunk(ast.getName(), ast.getParameters().size(), compiler.locals, compiler.maxStack,
+                Arrays.copyOf(compiler.code, compiler.size), compiler.constants.toArray());
+    }
+
+    private void statements(List<Ast.Statement> statements) {
+        for (Ast.Statement statement : statements) {
+            statement(statement);
+        }
+    }
+
+    private void statement(Ast.Statement ast) {
+        if (ast instanceof Ast.Statement.Expression) {
+            expression(((Ast.Statement.Expression) ast).getExpression());
+            emit(Opcode.POP, -1);
+        } else if (ast instanceof Ast.Statement.Declaration) {
+            Ast.Statement.Declaration declaration = (Ast.Statement.Declaration) ast;
+            if (declaration.getValue().isPresent()) {
+                expression(declaration.getValue().get());
+            } else {
+                emit(Opcode.CONSTANT, 1, constant(Environment.NIL));
+            }
+            emit(Opcode.STORE, -1, declaration.getSlot());
+        } else if (ast instanceof Ast.Statement.Assignment) {
+            Ast.Statement.Assignment assignment = (Ast.Statement.Assignment) ast;
+            if (!(assignment.getReceiver() instanceof Ast.Expression.Access)) {
+                throw new Unsupported();
+            }
+            Ast.Expression.Access receiver = (Ast.Expression.Access) assignment.getReceiver();
+            if (receiver.getOffset().isPresent()) {
+                int offset = offset(receiver);
+                variable(receiver);
+                expression(assignment.getValue());
+                emit(Opcode.STORE_ELEMENT, -2, offset);
+            } else if (receiver.getSlot() >= 0) {
+                expression(assignment.getValue());
+                emit(Opcode.STORE, -1, receiver.getSlot());
+            } else {
+                expression(assignment.getValue());
+                emit(Opcode.STORE_GLOBAL, -1, constant(receiver.getName()));
+            }
+        } else if (ast instanceof Ast.Statement.If) {
+            Ast.Statement.If statement = (Ast.Statement.If) ast;
+            List<Integer> otherwise = new ArrayList<>();
+            branch(statement.getCondition(), false, otherwise);
+            statements(statement.getThenStatements());
+            if (statement.getElseStatements().isEmpty()) {
+                patch(otherwise);
+            } else {
+                int end = jump(Opcode.JUMP, 0);
+                patch(otherwise);
+                statements(statement.getElseStatements());
+                patch(end);
+            }
+        } else if (ast instanceof Ast.Statement.Switch) {
+            switchStatement((Ast.Statement.Switch) ast);
+        } else if (ast instanceof Ast.Statement.While) {
+            Ast.Statement.While statement = (Ast.Statement.While) ast;
+            int start = size;
+            List<Integer> end = new ArrayList<>();
+            branch(statement.getCondition(), false, end);
+            statements(statement.getStatements());
+            emit(Opcode.JUMP, 0, start);
+            patch(end);
+        } else if (ast instanceof Ast.Statement.Return) {
+            expression(((Ast.Statement.Return) ast).getValue());
+            emit(Opcode.RETURN, -1);
+        } else {
+            throw new Unsupported(); // cases outside of a switch
+        }
+    }
+
+    private void switchStatement(Ast.Statement.Switch ast) {
+        if (!(ast.getCondition() instanceof Ast.Expression.Access)) {
+            throw new Unsupported();
+        }
+        List<Ast.Statement.Case> cases = ast.getCases();
+        int slot = locals++;
+        variable((Ast.Expression.Access) ast.getCondition());
+        emit(Opcode.CHARACTER, 0);
+        emit(Opcode.STORE, -1, slot);
+        List<Integer> end = new ArrayList<>();
+        for (Ast.Statement.Case element : cases) {
+            if (element.getValue().isPresent()) {
+                if (!(element.getValue().get() instanceof Ast.Expression.Literal)) {
+                    throw new Unsupported();
+                }
+                Object value = ((Ast.Expression.Literal) element.getValue().get()).getLiteral();
+                if (value == null) {
+                    throw new Unsupported();
+                }
+                emit(Opcode.LOAD, 1, slot);
+                int next = jump(Opcode.CASE, -1, constant(value));
+                statements(element.getStatements());
+                end.add(jump(Opcode.JUMP, 0));
+                patch(next);
+            } else {
+                statements(cases.get(cases.size() - 1).getStatements());
+            }
+        }
+        patch(end);
+    }
+
+    private void expression(Ast.Expression ast) {
+        if (ast instanceof Ast.Expression.Literal) {
+            Object literal = ((Ast.Expression.Literal) ast).getLiteral();
+            emit(Opcode.CONSTANT, 1, constant(literal == null ? Environment.NIL : Environment.create(literal)));
+        } else if (ast instanceof Ast.Expression.Group) {
+            expression(((Ast.Expression.Group) ast).getExpression());
+        } else if (ast instanceof Ast.Expression.Binary) {
+            Ast.Expression.Binary binary = (Ast.Expression.Binary) ast;
+            Interpreter.Operator operator = operator(binary);
+            if (operator == Interpreter.Operator.AND || operator == Interpreter.Operator.OR) {
+                List<Integer> otherwise = new ArrayList<>();
+                branch(ast, false, otherwise);
+                emit(Opcode.CONSTANT, 1, constant(Environment.create(true)));
+                int end = jump(Opcode.JUMP, 0);
+                depth--; // only one of the two values is pushed
+                patch(otherwise);
+                emit(Opcode.CONSTANT, 1, constant(Environment.create(false)));
+                patch(end);
+                return;
+            }
+            expression(binary.getLeft());
+            expression(binary.getRight());
+            switch (operator) {
+                case ADD: emit(Opcode.ADD, -1); break;
+                case SUBTRACT: emit(Opcode.SUBTRACT, -1); break;
+                case MULTIPLY: emit(Opcode.MULTIPLY, -1); break;
+                case LESS:
+                case LESS_EQUAL:
+                case GREATER:
+                case GREATER_EQUAL:
+                case EQUAL:
+                case NOT_EQUAL:
+                    emit(Opcode.COMPARE, -1, operator.ordinal());
+                    break;
+                default:
+                    emit(Opcode.BINARY, -1, operator.ordinal());
+            }
+        } else if (ast instanceof Ast.Expression.Access) {
+            Ast.Expression.Access access = (Ast.Expression.Access) ast;
+            if (access.getOffset().isPresent()) {
+                int offset = offset(access);
+                variable(access);
+                emit(Opcode.LOAD_ELEMENT, 0, offset);
+            } else {
+                variable(access);
+            }
+        } else if (ast instanceof Ast.Expression.Function) {
+            Ast.Expression.Function function = (Ast.Expression.Function) ast;
+            for (Ast.Expression argument : function.getArguments()) {
+                expression(argument);
+            }
+            int arity = function.getArguments().size();
+            emit(Opcode.CALL, 1 - arity, constant(new CallSite(function.getName(), arity)), arity);
+        } else {
+            List<Ast.Expression> values = ((Ast.Expression.PlcList) ast).getValues();
+            for (Ast.Expression value : values) {
+                expression(value);
+            }
+            emit(Opcode.LIST, 1 - values.size(), values.size());
+        }
+    }
+
+    /**
+     * Compiles a condition into jumps to the target when it evaluates to
+     * the given value, falling through otherwise. The positions of the
+     * jumps are added to the target list to be patched.
+     */
+    private void branch(Ast.Expression ast, boolean when, List<Integer> target) {
+        while (ast instanceof Ast.Expression.Group) {
+            ast = ((Ast.Expression.Group) ast).getExpression();
+        }
+        if (ast instanceof Ast.Expression.Binary) {
+            Interpreter.Operator operator = operator((Ast.Expression.Binary) ast);
+            if (operator == Interpreter.Operator.AND || operator == Interpreter.Operator.OR) {
+                Ast.Expression left = ((Ast.Expression.Binary) ast).getLeft();
+                Ast.Expression right = ((Ast.Expression.Binary) ast).getRight();
+                boolean and = operator == Interpreter.Operator.AND;
+                if (when != and) {
+                    // either operand jumping settles it, a false one for && or a true one for ||
+                    branch(left, when, target);
+                    branch(right, when, target);
+                } else {
+                    List<Integer> skip = new ArrayList<>();
+                    branch(left, !when, skip);
+                    branch(right, when, target);
+                    patch(skip);
+                }
+                return;
+            }
+        }
+        expression(ast);
+        target.add(jump(when ? Opcode.JUMP_IF_TRUE : Opcode.JUMP_IF_FALSE, -1));
+    }
+
+    private static Interpreter.Operator operator(Ast.Expression.Binary ast) {
+        try {
+            return Interpreter.Operator.of(ast.getOperator());
+        } catch (RuntimeException e) {
+            throw new Unsupported(); // reported when the interpreter evaluates it
+        }
+    }
+
+    /**
+     * Compiles a read of the variable of an access, ignoring any offset.
+     */
+    private void variable(Ast.Expression.Access ast) {
+        if (ast.getSlot() >= 0) {
+            emit(Opcode.LOAD, 1, ast.getSlot());
+        } else {
+            emit(Opcode.LOAD_GLOBAL, 1, constant(ast.getName()));
+        }
+    }
+
+    /**
+     * Returns the offset of a list access as the operand of LOAD_ELEMENT or
+     * STORE_ELEMENT. Only an integer literal can be encoded, and any other
+     * offset is an error the interpreter reports when it runs.
+     */
+    private static int offset(Ast.Expression.Access ast) {
+        Ast.Expression offset = ast.getOffset().get();
+        if (!(offset instanceof Ast.Expression.Literal) || !(((Ast.Expression.Literal) offset).getLiteral() instanceof BigInteger)) {
+            throw new Unsupported();
+        }
+        return ((BigInteger) ((Ast.Expression.Literal) offset).getLiteral()).intValue();
+    }
+
+    private int constant(Object value) {
+        return indices.computeIfAbsent(value, key -> {
+            constants.add(key);
+            return constants.size() - 1;
+        });
+    }
+
+    /**
+     * Emits an instruction, tracking the depth of the stack by its effect.
+     */
+    private void emit(int opcode, int effect, int... operands) {
+        if (size + operands.length + 1 > code.length) {
+            code = Arrays.copyOf(code, Math.max(code.length * 2, size + operands.length + 1));
+        }
+        code[size++] = opcode;
+        for (int operand : operands) {
+            code[size++] = operand;
+        }
+        depth += effect;
+        maxStack = Math.max(maxStack, depth);
+    }
+
+    /**
+     * Emits a jump with its target as the last operand, returning the
+     * position of the target to be patched.
+     */
+    private int jump(int opcode, int effect, int... operands) {
+        int[] all = Arrays.copyOf(operands, operands.length + 1);
+        emit(opcode, effect, all);
+        return size - 1;
+    }
+
+    private void patch(int position) {
+        code[position] = size;
+    }
+
+    private void patch(List<Integer> positions) {
+        for (int position : positions) {
+            patch(position);
+        }
+    }
+
+    /**
+     * Thrown while compiling a function which can't be encoded in a chunk,
+     * so the virtual machine leaves it to the interpreter.
+     */
+    static final class Unsupported extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private Unsupported() {
+            super(null, null, false, false);
+        }
+
+    }
+
+}
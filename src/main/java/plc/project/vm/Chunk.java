@@ -0,0 +1,26 @@
+package plc.project.vm;
+
+/**
+ * The bytecode of a compiled function: its code, the constants the code
+ * refers to by index, and the size of its frame on the stack, which holds
+ * its locals (parameters first) followed by at most maxStack operands.
+ */
+final class Chunk {
+
+    final String name;
+    final int arity;
+    final int locals;
+    final int maxStack;
+    final int[] code;
+    final Object[] constants;
+
+    Chunk(String name, int arity, int locals, int maxStack, int[] code, Object[] constants) {
+        this.name = name;
+        this.arity = arity;
+        this.locals = locals;
+        this.maxStack = maxStack;
+        this.code = code;
+        this.constants = constants;
+    }
+
+}
@@ -0,0 +1,55 @@
+package plc.project.vm;
+
+/**
+ * The instructions of a {@link Chunk}. Each instruction is an opcode in the
+ * code followed by its operands, which are listed with the effect it has on
+ * the stack.
+ */
+final class Opcode {
+
+    /** index: pushes the constant at the index. */
+    static final int CONSTANT = 0;
+    /** slot: pushes the local in the slot. */
+    static final int LOAD = 1;
+    /** slot: pops a value into the local in the slot. */
+    static final int STORE = 2;
+    /** name: pushes the value of the variable named by the constant. */
+    static final int LOAD_GLOBAL = 3;
+    /** name: pops a value into the variable named by the constant. */
+    static final int STORE_GLOBAL = 4;
+    /** offset: pops a list and pushes its element at the offset. */
+    static final int LOAD_ELEMENT = 5;
+    /** offset: pops a value and a list, and sets the element at the offset. */
+    static final int STORE_ELEMENT = 6;
+    /** Pops a value. */
+    static final int POP = 7;
+    /** Pops two values and pushes their sum. */
+    static final int ADD = 8;
+    /** Pops two values and pushes their difference. */
+    static final int SUBTRACT = 9;
+    /** Pops two values and pushes their product. */
+    static final int MULTIPLY = 10;
+    /** operator: pops two values and pushes the comparison by the operator. */
+    static final int COMPARE = 11;
+    /** operator: pops two values and pushes the result of the operator. */
+    static final int BINARY = 12;
+    /** target: continues at the target. */
+    static final int JUMP = 13;
+    /** target: pops a boolean and continues at the target if it is false. */
+    static final int JUMP_IF_FALSE = 14;
+    /** target: pops a boolean and continues at the target if it is true. */
+    static final int JUMP_IF_TRUE = 15;
+    /** name, arity: pops the arguments and pushes the result of the call. */
+    static final int CALL = 16;
+    /** Pops a value and returns it to the caller. */
+    static final int RETURN = 17;
+    /** size: pops the elements and pushes a list of them. */
+    static final int LIST = 18;
+    /** Pops a value and pushes it as a character, as a switch requires. */
+    static final int CHARACTER = 19;
+    /** value, target: pops a character and continues at the target if it isn't the constant. */
+    static final int CASE = 20;
+
+    private Opcode() {}
+
+}
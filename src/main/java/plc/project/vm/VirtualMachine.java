@@ -0,0 +1,268 @@
+package plc.project.vm;
+
+import plc.project.Ast;
+import plc.project.CallSite;
+import plc.project.CompilingBackend;
+import plc.project.Environment;
+import plc.project.Interpreter;
+import plc.project.Scope;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An execution backend which compiles each function into bytecode with the
+ * {@link BytecodeCompiler} and runs it in a single dispatch loop.
+ *
+ * Locals and operands live on one value stack, preallocated to fit the frame
+ * of the function called from outside the machine. A call to another
+ * compiled function doesn't recurse: its arguments already on the stack
+ * become the first locals of a new frame, and RETURN pops the frame and
+ * continues the caller, so deep recursion in a program grows arrays instead
+ * of the Java stack. Calls to any other function (builtins, and functions
+ * left to the interpreter) go through {@link Environment.Function#invoke}.
+ *
+ * Globals, and functions the {@link BytecodeCompiler} can't encode, are
+ * left to the interpreter of the {@link CompilingBackend}. A call to such a
+ * function leaves the dispatch loop, and a call it makes back into a chunk
+ * starts a loop of its own, so recursion through it uses the Java stack.
+ */
+public final class VirtualMachine extends CompilingBackend {
+
+    private static final Interpreter.Operator[] OPERATORS = Interpreter.Operator.values();
+    private static final int STACK_SIZE = 256;
+    private static final int FRAMES = 16;
+    private static final int MAX_FRAMES = 1 << 20;
+
+    private final Map<Environment.Function, Chunk> chunks = new IdentityHashMap<>();
+
+    public VirtualMachine(Scope parent) {
+        super(parent);
+    }
+
+    /**
+     * Encodes a function into a chunk and defines it in the scope, keeping
+     * the chunk so calls from other chunks can enter it without leaving the
+     * dispatch loop.
+     */
+    @Override
+    protected boolean defineCompiled(Ast.Function ast) {
+        Chunk chunk;
+        try {
+            chunk = BytecodeCompiler.compile(ast);
+        } catch (BytecodeCompiler.Unsupported unsupported) {
+            return false;
+        }
+        List<Environment.Type> parameterTypes = new ArrayList<>();
+        for (int i = 0; i < chunk.arity; i++) {
+            parameterTypes.add(Environment.Type.ANY);
+        }
+        Environment.Function function = getScope().defineFunction(ast.getName(), ast.getName(), parameterTypes, Environment.Type.ANY, args -> run(chunk, args));
+        chunks.put(function, chunk);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Environment.PlcObject run(Chunk entry, List<Environment.PlcObject> arguments) {
+        Scope scope = getScope();
+        Environment.PlcObject[] stack = new Environment.PlcObject[Math.max(STACK_SIZE, entry.locals + entry.maxStack)];
+        for (int i = 0; i < arguments.size(); i++) {
+            stack[i] = arguments.get(i);
+        }
+        Chunk[] callers = new Chunk[FRAMES];
+        int[] returns = new int[FRAMES];
+        int[] bases = new int[FRAMES];
+        int frames = 0;
+
+        Chunk chunk = entry;
+        int[] code = chunk.code;
+        Object[] constants = chunk.constants;
+        int pc = 0;
+        int base = 0;
+        int sp = chunk.locals;
+        while (true) {
+            switch (code[pc++]) {
+                case Opcode.CONSTANT:
+                    stack[sp++] = (Environment.PlcObject) constants[code[pc++]];
+                    break;
+                case Opcode.LOAD:
+                    stack[sp++] = stack[base + code[pc++]];
+                    break;
+                case Opcode.STORE:
+                    stack[base + code[pc++]] = stack[--sp];
+                    break;
+                case Opcode.LOAD_GLOBAL:
+                    stack[sp++] = scope.lookupVariable((String) constants[code[pc++]]).getValue();
+                    break;
+                case Opcode.STORE_GLOBAL:
+                    scope.lookupVariable((String) constants[code[pc++]]).setValue(stack[--sp]);
+                    break;
+                case Opcode.LOAD_ELEMENT:
+                    stack[sp - 1] = Environment.create(((List<?>) stack[sp - 1].getValue()).get(code[pc++]));
+                    break;
+                case Opcode.STORE_ELEMENT: {
+                    Environment.PlcObject value = stack[--sp];
+                    List<Object> list = (List<Object>) stack[--sp].getValue();
+                    list.set(code[pc++], value.getValue());
+                    break;
+                }
+                case Opcode.POP:
+                    sp--;
+                    break;
+                case Opcode.ADD: {
+                    Environment.PlcObject right = stack[--sp];
+                    Environment.PlcObject left = stack[sp - 1];
+                    if (left.isLong() && right.isLong()) {
+                        long l = left.longValue();
+                        long r = right.longValue();
+                        long result = l + r;
+                        if (((l ^ result) & (r ^ result)) >= 0) {
+                            stack[sp - 1] = Environment.createInteger(result);
+                            break;
+                        }
+                    }
+                    stack[sp - 1] = Interpreter.Operator.ADD.apply(left, right);
+                    break;
+                }
+                case Opcode.SUBTRACT: {
+                    Environment.PlcObject right = stack[--sp];
+                    Environment.PlcObject left = stack[sp - 1];
+                    if (left.isLong() && right.isLong()) {
+                        long l = left.longValue();
+                        long r = right.longValue();
+                        long result = l - r;
+                        if (((l ^ r) & (l ^ result)) >= 0) {
+                            stack[sp - 1] = Environment.createInteger(result);
+                            break;
+                        }
+                    }
+                    stack[sp - 1] = Interpreter.Operator.SUBTRACT.apply(left, right);
+                    break;
+                }
+                case Opcode.MULTIPLY: {
+                    Environment.PlcObject right = stack[--sp];
+                    Environment.PlcObject left = stack[sp - 1];
+                    if (left.isLong() && right.isLong()) {
+                        long l = left.longValue();
+                        long r = right.longValue();
+                        long result = l * r;
+                        if (Math.multiplyHigh(l, r) == (result >> 63)) {
+                            stack[sp - 1] = Environment.createInteger(result);
+                            break;
+                        }
+                    }
+                    stack[sp - 1] = Interpreter.Operator.MULTIPLY.apply(left, right);
+                    break;
+                }
+                case Opcode.COMPARE: {
+                    Interpreter.Operator operator = OPERATORS[code[pc++]];
+                    Environment.PlcObject right = stack[--sp];
+                    Environment.PlcObject left = stack[sp - 1];
+                    if (left.isLong() && right.isLong()) {
+                        stack[sp - 1] = Environment.create(compare(operator, Long.compare(left.longValue(), right.longValue())));
+                    } else {
+                        stack[sp - 1] = operator.apply(left, right);
+                    }
+                    break;
+                }
+                case Opcode.BINARY: {
+                    Environment.PlcObject right = stack[--sp];
+                    stack[sp - 1] = OPERATORS[code[pc++]].apply(stack[sp - 1], right);
+                    break;
+                }
+                case Opcode.JUMP:
+                    pc = code[pc];
+                    break;
+                case Opcode.JUMP_IF_FALSE:
+                    pc = Interpreter.requireType(Boolean.class, stack[--sp]) ? pc + 1 : code[pc];
+                    break;
+                case Opcode.JUMP_IF_TRUE:
+                    pc = Interpreter.requireType(Boolean.class, stack[--sp]) ? code[pc] : pc + 1;
+                    break;
+                case Opcode.CALL: {
+                    CallSite site = (CallSite) constants[code[pc++]];
+                    int arity = code[pc++];
+                    Environment.Function function = site.resolve(scope);
+                    Chunk callee = chunks.get(function);
+                    if (callee == null) {
+                        Environment.PlcObject[] values = Arrays.copyOfRange(stack, sp - arity, sp);
+                        sp -= arity;
+                        stack[sp++] = function.invoke(CallSite.arguments(values));
+                        break;
+                    }
+                    if (frames == callers.length) {
+                        if (frames == MAX_FRAMES) {
+                            throw new StackOverflowError();
+                        }
+                        callers = Arrays.copyOf(callers, frames * 2);
+                        returns = Arrays.copyOf(returns, frames * 2);
+                        bases = Arrays.copyOf(bases, frames * 2);
+                    }
+                    callers[frames] = chunk;
+                    returns[frames] = pc;
+                    bases[frames] = base;
+                    frames++;
+                    base = sp - arity;
+                    sp = base + callee.locals;
+                    if (sp + callee.maxStack > stack.length) {
+                        stack = Arrays.copyOf(stack, Math.max(stack.length * 2, sp + callee.maxStack));
+                    }
+                    chunk = callee;
+                    code = chunk.code;
+                    constants = chunk.constants;
+                    pc = 0;
+                    break;
+                }
+                case Opcode.RETURN: {
+                    Environment.PlcObject result = stack[--sp];
+                    if (frames == 0) {
+                        return result;
+                    }
+                    sp = base;
+                    frames--;
+                    chunk = callers[frames];
+                    pc = returns[frames];
+                    base = bases[frames];
+                    callers[frames] = null;
+                    code = chunk.code;
+                    constants = chunk.constants;
+                    stack[sp++] = result;
+                    break;
+                }
+                case Opcode.LIST: {
+                    int size = code[pc++];
+                    List<Object> list = new ArrayList<>(size);
+                    for (int i = sp - size; i < sp; i++) {
+                        list.add(stack[i].getValue());
+                    }
+                    sp -= size;
+                    stack[sp++] = Environment.create(list);
+                    break;
+                }
+                case Opcode.CHARACTER:
+                    stack[sp - 1] = Environment.create((char) stack[sp - 1].getValue());
+                    break;
+                case Opcode.CASE:
+                    pc = constants[code[pc]].equals(stack[--sp].getValue()) ? pc + 2 : code[pc + 1];
+                    break;
+                default:
+                    throw new AssertionError("Unknown opcode " + code[pc - 1] + " in " + chunk.name + ".");
+            }
+        }
+    }
+
+    private static boolean compare(Interpreter.Operator operator, int comparison) {
+        switch (operator) {
+            case LESS: return comparison < 0;
+            case LESS_EQUAL: return comparison <= 0;
+            case GREATER: return comparison > 0;
+            case GREATER_EQUAL: return comparison >= 0;
+            case EQUAL: return comparison == 0;
+            default: return comparison != 0;
+        }
+    }
+
+}
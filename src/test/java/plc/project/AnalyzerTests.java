@@ -635,6 +635,41 @@ public final class AnalyzerTests {
         );
     }
 
+    @Test
+    public void testParallelFunctions() {
+        // VAR total: Integer = 0;
+        // FUN main(): Integer DO RETURN f0(); END
+        // FUN f0(): Integer DO total = total + 0; RETURN f1(); END ... FUN f31(): Integer DO RETURN total; END
+        StringBuilder source = new StringBuilder("VAR total: Integer = 0;\nFUN main(): Integer DO\n    RETURN f0();\nEND\n");
+        for (int i = 0; i < 32; i++) {
+            source.append("FUN f").append(i).append("(): Integer DO\n    total = total + ").append(i).append(";\n")
+                    .append(i < 31 ? "    RETURN f" + (i + 1) + "();\n" : "    RETURN total;\n").append("END\n");
+        }
+        Ast.Source ast = new Parser(new Lexer(source.toString()).lex()).parseSource();
+        Analyzer analyzer = new Analyzer(new Scope(null));
+        analyzer.visit(ast);
+        for (int i = 0; i < ast.getFunctions().size() - 1; i++) {
+            Ast.Statement.Return statement = (Ast.Statement.Return) ast.getFunctions().get(i).getStatements().get(ast.getFunctions().get(i).getStatements().size() - 1);
+            Assertions.assertEquals(ast.getFunctions().get(i + 1).getFunction(), ((Ast.Expression.Function) statement.getValue()).getFunction());
+            Assertions.assertEquals(Environment.Type.INTEGER, statement.getValue().getType());
+        }
+    }
+
+    @Test
+    public void testParallelFirstError() {
+        // FUN main(): Integer DO RETURN 0; END
+        // FUN f0(): Integer DO RETURN "a"; END ... FUN f15(): Integer DO RETURN missing; END
+        StringBuilder source = new StringBuilder("FUN main(): Integer DO\n    RETURN 0;\nEND\n");
+        for (int i = 0; i < 16; i++) {
+            source.append("FUN f").append(i).append("(): Integer DO\n").append(i == 0 ? "    RETURN \"a\";\n" : "    RETURN missing;\n").append("END\n");
+        }
+        for (int run = 0; run < 8; run++) {
+            Ast.Source ast = new Parser(new Lexer(source.toString()).lex()).parseSource();
+            RuntimeException exception = Assertions.assertThrows(RuntimeException.class, () -> new Analyzer(new Scope(null)).visit(ast));
+            Assertions.assertTrue(exception.getMessage().contains("Expected type"), exception.getMessage());
+        }
+    }
+
     /**
      * Helper function for tests. If {@param expected} is {@code null}, analysis
      * is expected to throw a {@link RuntimeException}.
@@ -0,0 +1,103 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+final class AstCodecTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testRoundTrip(String test, String input) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(ast, AstCodec.decode(AstCodec.encode(ast)));
+    }
+
+    private static Stream<Arguments> testRoundTrip() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Globals", "VAR x: Integer = 1;\nVAL y: String = \"y\";\nLIST z = [1, 2, 3];\nVAR w: Decimal;\n"),
+                Arguments.of("Literals", "VAR a = NIL;\nVAR b = TRUE;\nVAR c = FALSE;\nVAR d = 'c';\nVAR e = '\\t';\n"
+                        + "VAR f = \"Hello, World!\";\nVAR g = -1.50;\nVAR h = 123456789012345678901234567890;\n"
+                        + "VAR i = 3.14159265358979323846264338327950288;\nVAR j = -9223372036854775808;\n"),
+                Arguments.of("Function", "FUN main(x: Integer, y: Decimal): Integer DO\n    LET i = 0;\n    LET s: String;\n"
+                        + "    WHILE i < 10 DO\n        print(i);\n        i = i + 1;\n    END\n"
+                        + "    IF (x + 1) * 2 <= y DO\n        RETURN list[i];\n    ELSE\n        obj = f(1, g(), \"s\");\n    END\n"
+                        + "    RETURN 0;\nEND\nFUN other() DO\nEND\n")
+        );
+    }
+
+    @Test
+    void testRoundTripSwitch() {
+        Ast.Source ast = new Ast.Source(Arrays.asList(), Arrays.asList(
+                new Ast.Function("main", Arrays.asList(), Arrays.asList(), Optional.empty(), Arrays.asList(
+                        new Ast.Statement.Switch(new Ast.Expression.Access(Optional.empty(), "x"), Arrays.asList(
+                                new Ast.Statement.Case(Optional.of(new Ast.Expression.Literal(BigInteger.ONE)), Arrays.asList(
+                                        new Ast.Statement.Expression(new Ast.Expression.Literal(new BigDecimal("1.0")))
+                                )),
+                                new Ast.Statement.Case(Optional.empty(), Arrays.asList())
+                        ))
+                ))
+        ));
+        Assertions.assertEquals(ast, AstCodec.decode(AstCodec.encode(ast)));
+    }
+
+    @Test
+    void testDecodeCorrupt() {
+        byte[] bytes = AstCodec.encode(new Parser(new Lexer("VAR x = 1;\nFUN f() DO\n    print(x);\nEND\n").lex()).parseSource());
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> AstCodec.decode(truncated));
+        }
+        byte[] magic = bytes.clone();
+        magic[0] ^= 1;
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AstCodec.decode(magic));
+        byte[] trailing = Arrays.copyOf(bytes, bytes.length + 1);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AstCodec.decode(trailing));
+    }
+
+    @Test
+    void testCache() throws IOException {
+        Path directory = Files.createTempDirectory("plc");
+        String source = "VAR x = 1;\nFUN main() DO\n    print(x);\nEND\n";
+        AstCache cache = new AstCache(directory.resolve("cache"));
+        Assertions.assertNull(cache.get(source));
+        Ast.Source ast = cache.parse(source);
+        Assertions.assertEquals(new Parser(new Lexer(source).lex()).parseSource(), ast);
+        Assertions.assertEquals(ast, cache.get(source));
+        Assertions.assertNull(cache.get(source + " "));
+
+        Path entry = directory.resolve("cache").resolve(AstCache.hash(source) + ".ast");
+        Assertions.assertTrue(Files.exists(entry));
+        Files.write(entry, new byte[] {1, 2, 3});
+        Assertions.assertNull(cache.get(source));
+        Assertions.assertEquals(ast, cache.parse(source));
+        Assertions.assertEquals(ast, cache.get(source));
+    }
+
+    @Test
+    void testCacheGrammarVersion() throws IOException {
+        Path directory = Files.createTempDirectory("plc");
+        String source = "VAR x = 1;\nFUN main() DO\n    print(x - 2 - 3);\nEND\n";
+        AstCache cache = new AstCache(directory);
+        Ast.Source ast = new Parser(new Lexer(source).lex()).parseSource();
+        Path entry = directory.resolve(AstCache.hash(source) + ".ast");
+        Files.write(entry, AstCodec.encode(ast, Parser.GRAMMAR_VERSION + 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> AstCodec.decode(Files.readAllBytes(entry)));
+        Assertions.assertNull(cache.get(source));
+        Assertions.assertEquals(ast, cache.parse(source));
+        Assertions.assertEquals(ast, cache.get(source));
+    }
+
+}
@@ -0,0 +1,304 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import plc.project.vm.VirtualMachine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Conformance tests for the {@link CompilingBackend}s, which run each case
+ * with the {@link Interpreter} and with every backend and check that all of
+ * them give the expected result (or throw if it is null) and print the same
+ * output. Besides the programs here, the cases of {@link InterpreterTests}
+ * are run as well, with statements and expressions wrapped in a main.
+ */
+final class CompilingBackendTests {
+
+    private static final List<Function<Scope, CompilingBackend>> BACKENDS = Arrays.asList(ClosureCompiler::new, VirtualMachine::new);
+
+    @ParameterizedTest
+    @MethodSource
+    void testProgram(String test, String input, Object expected) {
+        test(new Parser(new Lexer(input).lex()).parseSource(), expected);
+    }
+
+    private static Stream<Arguments> testProgram() {
+        return Stream.of(
+                Arguments.of("Main", "FUN main(): Integer DO\n    RETURN 0;\nEND\n", BigInteger.ZERO),
+                Arguments.of("No Return", "FUN main(): Integer DO\n    print(1);\nEND\n", Environment.NIL.getValue()),
+                Arguments.of("Globals", "VAR x: Integer = 1;\nVAL y: Integer = 10;\n"
+                        + "FUN main(): Integer DO\n    x = x + y;\n    RETURN x;\nEND\n", BigInteger.valueOf(11)),
+                Arguments.of("Declaration", "FUN main(): Integer DO\n    LET x;\n    print(x);\n    LET y = 2;\n    RETURN y;\nEND\n", BigInteger.valueOf(2)),
+                Arguments.of("If Else", "FUN main(): Integer DO\n"
+                        + "    IF 1 > 2 DO\n        RETURN 1;\n    ELSE\n        print(2);\n    END\n"
+                        + "    IF TRUE DO\n        print(3);\n    END\n"
+                        + "    RETURN 4;\n"
+                        + "END\n", BigInteger.valueOf(4)),
+                Arguments.of("Recursion", "FUN fib(n: Integer): Integer DO\n"
+                        + "    IF n < 2 DO\n        RETURN n;\n    END\n"
+                        + "    RETURN fib(n - 1) + fib(n - 2);\n"
+                        + "END\n"
+                        + "FUN main(): Integer DO\n    RETURN fib(20);\nEND\n", BigInteger.valueOf(6765)),
+                Arguments.of("Loop", "VAR total: Integer = 0;\n"
+                        + "FUN main(): Integer DO\n"
+                        + "    LET i = 0;\n"
+                        + "    WHILE i < 100 DO\n"
+                        + "        LET square = i * i;\n"
+                        + "        IF (square / 2) * 2 == square DO\n            total = total + square;\n        ELSE\n            print(square);\n        END\n"
+                        + "        i = i + 1;\n"
+                        + "    END\n"
+                        + "    RETURN total - i;\n"
+                        + "END\n", BigInteger.valueOf(161600)),
+                Arguments.of("Return From Loop", "FUN main(): Integer DO\n"
+                        + "    LET i = 1;\n"
+                        + "    WHILE TRUE DO\n        IF i > 1000 DO\n            RETURN i;\n        END\n        i = i * 3;\n    END\n"
+                        + "END\n", BigInteger.valueOf(2187)),
+                Arguments.of("Overflow", "FUN main(): Integer DO\n"
+                        + "    LET i = 0;\n    LET x = 1;\n    LET y = 0 - 1;\n"
+                        + "    WHILE i < 70 DO\n        x = x * 2;\n        y = y - x;\n        i = i + 1;\n    END\n"
+                        + "    RETURN x + y;\n"
+                        + "END\n", BigInteger.ONE.subtract(BigInteger.ONE.shiftLeft(70))),
+                Arguments.of("Decimals & Strings", "VAL greeting: String = \"Hello\";\n"
+                        + "FUN main(): Integer DO\n"
+                        + "    print(greeting + \", World!\");\n"
+                        + "    print(1.2 + 3.4);\n"
+                        + "    print(1.2 / 3.4);\n"
+                        + "    print(2 ^ 10);\n"
+                        + "    print(7 / 2);\n"
+                        + "    print(\"a\" < \"b\");\n"
+                        + "    RETURN 0;\n"
+                        + "END\n", BigInteger.ZERO),
+                Arguments.of("Parameters", "FUN f(x: Integer, y: Integer): Integer DO\n    x = x - y;\n    RETURN x;\nEND\n"
+                        + "FUN main(): Integer DO\n    LET x = 10;\n    RETURN f(x, 3) + x;\nEND\n", BigInteger.valueOf(17)),
+                Arguments.of("Nested Calls", "FUN square(x: Integer): Integer DO\n    RETURN x * x;\nEND\n"
+                        + "FUN sum(x: Integer, y: Integer): Integer DO\n    RETURN x + y;\nEND\n"
+                        + "FUN main(): Integer DO\n    RETURN sum(square(3), sum(square(4), 1));\nEND\n", BigInteger.valueOf(26)),
+                Arguments.of("Redefinition", "FUN main(): Integer DO\n    LET x = 1;\n    LET x = 2;\n    RETURN x;\nEND\n", null),
+                Arguments.of("Undefined Variable", "FUN main(): Integer DO\n    RETURN x;\nEND\n", null),
+                Arguments.of("Undefined Function", "FUN main(): Integer DO\n    RETURN f(1);\nEND\n", null),
+                Arguments.of("Type Error", "FUN main(): Integer DO\n    RETURN 1 + \"a\";\nEND\n", null),
+                Arguments.of("Comparison Type Error", "FUN main(): Integer DO\n    RETURN 1 < 1.0;\nEND\n", null),
+                Arguments.of("Divide By Zero", "FUN main(): Integer DO\n    RETURN 1 / 0;\nEND\n", null),
+                Arguments.of("Condition Type Error", "FUN main(): Integer DO\n    WHILE 1 DO\n    END\nEND\n", null)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testAst(String test, Ast.Source ast, Object expected) {
+        test(ast, expected);
+    }
+
+    private static Stream<Arguments> testAst() {
+        return Stream.of(
+                // FUN main() DO LET c = 'b'; SWITCH c CASE 'a': print(1); CASE 'b': RETURN 2; DEFAULT RETURN 3; END END
+                Arguments.of("Switch", source(
+                        new Ast.Statement.Declaration("c", Optional.of(new Ast.Expression.Literal('b'))),
+                        new Ast.Statement.Switch(new Ast.Expression.Access(Optional.empty(), "c"), Arrays.asList(
+                                new Ast.Statement.Case(Optional.of(new Ast.Expression.Literal('a')), Arrays.asList(
+                                        new Ast.Statement.Expression(call("print", literal(1)))
+                                )),
+                                new Ast.Statement.Case(Optional.of(new Ast.Expression.Literal('b')), Arrays.asList(
+                                        new Ast.Statement.Return(literal(2))
+                                )),
+                                new Ast.Statement.Case(Optional.empty(), Arrays.asList(
+                                        new Ast.Statement.Return(literal(3))
+                                ))
+                        ))
+                ), BigInteger.valueOf(2)),
+                // FUN main() DO LET c = 'z'; SWITCH c CASE 'a': RETURN 1; DEFAULT print(3); END RETURN 4; END
+                Arguments.of("Switch Default", source(
+                        new Ast.Statement.Declaration("c", Optional.of(new Ast.Expression.Literal('z'))),
+                        new Ast.Statement.Switch(new Ast.Expression.Access(Optional.empty(), "c"), Arrays.asList(
+                                new Ast.Statement.Case(Optional.of(new Ast.Expression.Literal('a')), Arrays.asList(
+                                        new Ast.Statement.Return(literal(1))
+                                )),
+                                new Ast.Statement.Case(Optional.empty(), Arrays.asList(
+                                        new Ast.Statement.Expression(call("print", literal(3)))
+                                ))
+                        )),
+                        new Ast.Statement.Return(literal(4))
+                ), BigInteger.valueOf(4)),
+                // FUN main() DO LET c = 1; SWITCH c DEFAULT print(1); END END
+                Arguments.of("Switch Type Error", source(
+                        new Ast.Statement.Declaration("c", Optional.of(literal(1))),
+                        new Ast.Statement.Switch(new Ast.Expression.Access(Optional.empty(), "c"), Arrays.asList(
+                                new Ast.Statement.Case(Optional.empty(), Arrays.asList(
+                                        new Ast.Statement.Expression(call("print", literal(1)))
+                                ))
+                        ))
+                ), null),
+                // FUN main() DO IF 1 > 2 && undefined() DO RETURN 1; END IF 1 < 2 || undefined() DO RETURN 2; END END
+                Arguments.of("Short Circuit", source(
+                        new Ast.Statement.If(new Ast.Expression.Binary("&&",
+                                new Ast.Expression.Binary(">", literal(1), literal(2)),
+                                call("undefined")
+                        ), Arrays.asList(new Ast.Statement.Return(literal(1))), Arrays.asList()),
+                        new Ast.Statement.If(new Ast.Expression.Binary("||",
+                                new Ast.Expression.Binary("<", literal(1), literal(2)),
+                                call("undefined")
+                        ), Arrays.asList(new Ast.Statement.Return(literal(2))), Arrays.asList())
+                ), BigInteger.valueOf(2)),
+                // FUN main() DO LET a = TRUE && (FALSE || TRUE); LET b = FALSE || (TRUE && FALSE); print(a); RETURN b; END
+                Arguments.of("Logical Values", source(
+                        new Ast.Statement.Declaration("a", Optional.of(new Ast.Expression.Binary("&&",
+                                new Ast.Expression.Literal(true),
+                                new Ast.Expression.Group(new Ast.Expression.Binary("||", new Ast.Expression.Literal(false), new Ast.Expression.Literal(true)))
+                        ))),
+                        new Ast.Statement.Declaration("b", Optional.of(new Ast.Expression.Binary("||",
+                                new Ast.Expression.Literal(false),
+                                new Ast.Expression.Group(new Ast.Expression.Binary("&&", new Ast.Expression.Literal(true), new Ast.Expression.Literal(false)))
+                        ))),
+                        new Ast.Statement.Expression(call("print", new Ast.Expression.Access(Optional.empty(), "a"))),
+                        new Ast.Statement.Return(new Ast.Expression.Access(Optional.empty(), "b"))
+                ), false),
+                // FUN main() DO RETURN TRUE && 1; END
+                Arguments.of("Logical Type Error", source(
+                        new Ast.Statement.Return(new Ast.Expression.Binary("&&", new Ast.Expression.Literal(true), literal(1)))
+                ), null),
+                // LIST values = [1, 2, 3]; FUN main() DO LET local = [4, 5]; values[1] = values[0] + values[2]; local[0] = local[1] * values[1]; print(local); RETURN values[1] + local[0]; END
+                Arguments.of("Lists", new Ast.Source(
+                        Arrays.asList(new Ast.Global("values", true, Optional.of(list(1, 2, 3)))),
+                        Arrays.asList(new Ast.Function("main", Arrays.asList(), Arrays.asList(
+                                new Ast.Statement.Declaration("local", Optional.of(list(4, 5))),
+                                new Ast.Statement.Assignment(element("values", 1), new Ast.Expression.Binary("+", element("values", 0), element("values", 2))),
+                                new Ast.Statement.Assignment(element("local", 0), new Ast.Expression.Binary("*", element("local", 1), element("values", 1))),
+                                new Ast.Statement.Expression(call("print", new Ast.Expression.Access(Optional.empty(), "local"))),
+                                new Ast.Statement.Return(new Ast.Expression.Binary("+", element("values", 1), element("local", 0)))
+                        )))
+                ), BigInteger.valueOf(24)),
+                // FUN main() DO LET list = [1, 2]; LET i = 0; RETURN list[i]; END
+                Arguments.of("Variable Offset", source(
+                        new Ast.Statement.Declaration("list", Optional.of(list(1, 2))),
+                        new Ast.Statement.Declaration("i", Optional.of(literal(0))),
+                        new Ast.Statement.Return(new Ast.Expression.Access(Optional.of(new Ast.Expression.Access(Optional.empty(), "i")), "list"))
+                ), null),
+                // FUN main() DO RETURN 1.5 * 2.0 - 0.5; END
+                Arguments.of("Decimal", source(
+                        new Ast.Statement.Return(new Ast.Expression.Binary("-",
+                                new Ast.Expression.Binary("*", new Ast.Expression.Literal(new BigDecimal("1.5")), new Ast.Expression.Literal(new BigDecimal("2.0"))),
+                                new Ast.Expression.Literal(new BigDecimal("0.5"))
+                        ))
+                ), new BigDecimal("2.5")),
+                // FUN main() DO 1 % 2; END
+                Arguments.of("Unknown Operator", source(
+                        new Ast.Statement.Expression(new Ast.Expression.Binary("%", literal(1), literal(2)))
+                ), null)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testSource")
+    void testInterpreterSource(String test, Ast.Source ast, Object expected) {
+        test(ast, expected);
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testFunction")
+    void testInterpreterFunction(String test, Ast.Function ast, List<Environment.PlcObject> args, Object expected) {
+        String interpreted = run(() -> {
+            Interpreter interpreter = new Interpreter(new Scope(null));
+            interpreter.visit(ast);
+            return interpreter.getScope().lookupFunction(ast.getName(), args.size()).invoke(args);
+        }, expected);
+        for (Function<Scope, CompilingBackend> backend : BACKENDS) {
+            Assertions.assertEquals(interpreted, run(() -> {
+                CompilingBackend compiled = backend.apply(new Scope(null));
+                compiled.define(ast);
+                return compiled.getScope().lookupFunction(ast.getName(), args.size()).invoke(args);
+            }, expected));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testDeclarationStatement")
+    void testInterpreterDeclaration(String test, Ast.Statement.Declaration ast, Object expected) {
+        test(source(ast, new Ast.Statement.Return(new Ast.Expression.Access(Optional.empty(), ast.getName()))), expected);
+    }
+
+    @ParameterizedTest
+    @MethodSource("plc.project.InterpreterTests#testIfStatement")
+    void testInterpreterIf(String test, Ast.Statement.If ast, Object expected) {
+        Ast.Source source = new Ast.Source(
+                Arrays.asList(new Ast.Global("num", true, Optional.empty())),
+                Arrays.asList(new Ast.Function("main", Arrays.asList(), Arrays.asList(
+                        ast,
+                        new Ast.Statement.Return(new Ast.Expression.Access(Optional.empty(), "num"))
+                )))
+        );
+        test(source, expected);
+    }
+
+    @ParameterizedTest
+    @MethodSource({"plc.project.InterpreterTests#testLiteralExpression", "plc.project.InterpreterTests#testGroupExpression", "plc.project.InterpreterTests#testBinaryExpression"})
+    void testInterpreterExpression(String test, Ast.Expression ast, Object expected) {
+        test(source(new Ast.Statement.Return(ast)), expected);
+    }
+
+    private static Ast.Expression literal(int value) {
+        return new Ast.Expression.Literal(BigInteger.valueOf(value));
+    }
+
+    private static Ast.Expression call(String name, Ast.Expression... arguments) {
+        return new Ast.Expression.Function(name, Arrays.asList(arguments));
+    }
+
+    private static Ast.Expression list(int... values) {
+        Ast.Expression[] elements = new Ast.Expression[values.length];
+        for (int i = 0; i < values.length; i++) {
+            elements[i] = literal(values[i]);
+        }
+        return new Ast.Expression.PlcList(Arrays.asList(elements));
+    }
+
+    private static Ast.Expression element(String name, int offset) {
+        return new Ast.Expression.Access(Optional.of(literal(offset)), name);
+    }
+
+    private static Ast.Source source(Ast.Statement... statements) {
+        return new Ast.Source(Arrays.asList(), Arrays.asList(
+                new Ast.Function("main", Arrays.asList(), Arrays.asList(statements))
+        ));
+    }
+
+    /**
+     * Runs the source with the interpreter and with every backend, checking
+     * each gives the expected result (or throws if it is null) and prints the
+     * same output as the interpreter.
+     */
+    private static void test(Ast.Source ast, Object expected) {
+        String interpreted = run(() -> new Interpreter(new Scope(null)).visit(ast), expected);
+        for (Function<Scope, CompilingBackend> backend : BACKENDS) {
+            Assertions.assertEquals(interpreted, run(() -> backend.apply(new Scope(null)).execute(ast), expected));
+        }
+    }
+
+    private static String run(Supplier<Environment.PlcObject> program, Object expected) {
+        PrintStream sysout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        try {
+            if (expected != null) {
+                Assertions.assertEquals(expected, program.get().getValue());
+            } else {
+                Assertions.assertThrows(RuntimeException.class, program::get);
+            }
+        } finally {
+            System.setOut(sysout);
+        }
+        return out.toString();
+    }
+
+}
@@ -0,0 +1,82 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+
+final class ExecutionServiceTests {
+
+    private static final Program FIB = load("FUN fib(n: Integer): Integer DO\n"
+            + "    IF n < 2 DO\n        RETURN n;\n    END\n"
+            + "    RETURN fib(n - 1) + fib(n - 2);\n"
+            + "END\n");
+
+    private static final Program LOOP = load("VAR x: Integer = 0;\n"
+            + "FUN main(): Integer DO\n"
+            + "    WHILE TRUE DO\n        x = x + 1;\n    END\n"
+            + "    RETURN x;\n"
+            + "END\n");
+
+    @Test
+    void testResult() throws Exception {
+        try (ExecutionService service = new ExecutionService(16)) {
+            CompletableFuture<Environment.PlcObject> result = service.submit(FIB, "fib", Arrays.asList(Environment.create(BigInteger.valueOf(15))), 1_000_000, Duration.ofSeconds(10));
+            Assertions.assertEquals(BigInteger.valueOf(610), result.get().getValue());
+            Assertions.assertEquals(1, service.getMetrics(FIB).getCompleted());
+        }
+    }
+
+    @Test
+    void testStepBudget() {
+        try (ExecutionService service = new ExecutionService(16)) {
+            CompletableFuture<Environment.PlcObject> result = service.submit(LOOP, "main", Arrays.asList(), 10_000, null);
+            ExecutionException exception = Assertions.assertThrows(ExecutionException.class, result::get);
+            Assertions.assertTrue(exception.getCause() instanceof Budget.Exceeded);
+            // fib(15) makes 1973 calls
+            CompletableFuture<Environment.PlcObject> fib = service.submit(FIB, "fib", Arrays.asList(Environment.create(BigInteger.valueOf(15))), 1000, null);
+            Assertions.assertThrows(ExecutionException.class, fib::get);
+            Assertions.assertEquals(1, service.getMetrics(LOOP).getExceeded());
+            Assertions.assertEquals(1, service.getMetrics(FIB).getExceeded());
+        }
+    }
+
+    @Test
+    void testDeadline() {
+        try (ExecutionService service = new ExecutionService(16)) {
+            CompletableFuture<Environment.PlcObject> result = service.submit(LOOP, "main", Arrays.asList(), Long.MAX_VALUE, Duration.ofMillis(100));
+            ExecutionException exception = Assertions.assertThrows(ExecutionException.class, result::get);
+            Assertions.assertTrue(exception.getCause() instanceof Budget.Exceeded);
+        }
+    }
+
+    @Test
+    void testCapacity() {
+        try (ExecutionService service = new ExecutionService(1)) {
+            CompletableFuture<Environment.PlcObject> running = service.submit(LOOP, "main", Arrays.asList(), Long.MAX_VALUE, Duration.ofMillis(500));
+            Assertions.assertThrows(RejectedExecutionException.class, () -> service.submit(FIB, "fib", Arrays.asList(Environment.create(BigInteger.ONE)), 100, null));
+            Assertions.assertEquals(1, service.getMetrics(FIB).getRejected());
+            Assertions.assertThrows(ExecutionException.class, running::get);
+        }
+    }
+
+    @Test
+    void testFailure() {
+        try (ExecutionService service = new ExecutionService(16)) {
+            CompletableFuture<Environment.PlcObject> result = service.submit(FIB, "fib", Arrays.asList(Environment.create("1")), 100, null);
+            ExecutionException exception = Assertions.assertThrows(ExecutionException.class, result::get);
+            Assertions.assertFalse(exception.getCause() instanceof Budget.Exceeded);
+            Assertions.assertEquals(1, service.getMetrics(FIB).getFailed());
+        }
+    }
+
+    private static Program load(String input) {
+        return new Program(new Scope(null), new Parser(new Lexer(input).lex()).parseSource());
+    }
+
+}
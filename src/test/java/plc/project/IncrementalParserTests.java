@@ -0,0 +1,129 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+final class IncrementalParserTests {
+
+    private static final String SOURCE = "VAR count: Integer = 0;\n"
+            + "LIST values = [1, 2, 3];\n"
+            + "\n"
+            + "FUN first(x: Integer): Integer DO\n"
+            + "    IF x > 0 DO\n"
+            + "        RETURN x;\n"
+            + "    END\n"
+            + "    RETURN 0;\n"
+            + "END\n"
+            + "\n"
+            + "FUN second() DO\n"
+            + "    WHILE count < 10 DO\n"
+            + "        count = count + 1;\n"
+            + "    END\n"
+            + "END\n"
+            + "\n"
+            + "FUN main(): Integer DO\n"
+            + "    print(\"Hello, World!\");\n"
+            + "    RETURN first(count);\n"
+            + "END\n";
+
+    @ParameterizedTest
+    @MethodSource
+    void testEdit(String test, int offset, int removed, String inserted) {
+        IncrementalParser parser = new IncrementalParser(SOURCE);
+        String expected = SOURCE.substring(0, offset) + inserted + SOURCE.substring(offset + removed);
+        test(parser, offset, removed, inserted, expected);
+    }
+
+    private static Stream<Arguments> testEdit() {
+        return Stream.of(
+                Arguments.of("Rename Function", SOURCE.indexOf("second"), 6, "third"),
+                Arguments.of("Extend Identifier", SOURCE.indexOf("count =") + 5, 0, "er"),
+                Arguments.of("Insert Statement", SOURCE.indexOf("    RETURN 0;"), 0, "    print(x);\n"),
+                Arguments.of("Insert Function", SOURCE.indexOf("FUN main"), 0, "FUN other() DO\nEND\n"),
+                Arguments.of("Insert Global", SOURCE.indexOf("LIST"), 0, "VAL name = \"name\";\n"),
+                Arguments.of("Whitespace", SOURCE.indexOf("\n\nFUN second"), 1, "\n    \n"),
+                Arguments.of("Remove End", SOURCE.indexOf("END\n\nFUN second"), 3, ""),
+                Arguments.of("Remove Semicolon", SOURCE.indexOf("3];") + 2, 1, ""),
+                Arguments.of("Open String", SOURCE.indexOf("\"Hello"), 0, "\""),
+                Arguments.of("Global After Function", SOURCE.length(), 0, "VAR late = 1;\n"),
+                Arguments.of("Append", SOURCE.length(), 0, "FUN last() DO\nEND\n"),
+                Arguments.of("Clear", 0, SOURCE.length(), "")
+        );
+    }
+
+    @Test
+    void testEditSequence() {
+        IncrementalParser parser = new IncrementalParser(SOURCE);
+        String source = SOURCE;
+        Random random = new Random(4020);
+        for (int i = 0; i < 1000; i++) {
+            List<Token> tokens = new Lexer(source).lex();
+            Token token = tokens.get(random.nextInt(tokens.size()));
+            int offset = token.getIndex();
+            int removed = 0;
+            String inserted;
+            switch (random.nextInt(5)) {
+                case 0:
+                    inserted = random.nextBoolean() ? " " : "\n";
+                    break;
+                case 1:
+                    removed = token.getLiteral().length();
+                    inserted = token.getType() == Token.Type.IDENTIFIER && token.getKind() == Token.Kind.NONE
+                            ? token.getLiteral() + "x"
+                            : token.getLiteral();
+                    break;
+                case 2:
+                    offset += token.getLiteral().length();
+                    inserted = token.getKind() == Token.Kind.SEMICOLON ? "\n    print(" + i + ");" : "";
+                    break;
+                case 3:
+                    inserted = token.getKind() == Token.Kind.FUN ? "FUN f" + i + "() DO\nEND\n" : "";
+                    break;
+                default:
+                    removed = token.getLiteral().length();
+                    inserted = "";
+                    break;
+            }
+            String removedText = source.substring(offset, offset + removed);
+            source = source.substring(0, offset) + inserted + source.substring(offset + removed);
+            if (test(parser, offset, removed, inserted, source) == null) {
+                source = source.substring(0, offset) + removedText + source.substring(offset + inserted.length());
+                test(parser, offset, inserted.length(), removedText, source);
+            }
+        }
+    }
+
+    /**
+     * Applies the edit and checks the result against lexing and parsing the
+     * expected source from scratch, including any exception. Returns the
+     * expected AST, or null if an exception was expected.
+     */
+    private static Ast.Source test(IncrementalParser parser, int offset, int removed, String inserted, String expected) {
+        ParseException expectedException = null;
+        Ast.Source expectedAst = null;
+        try {
+            expectedAst = new Parser(new Lexer(expected).lex()).parseSource();
+        } catch (ParseException e) {
+            expectedException = e;
+        }
+        if (expectedException == null) {
+            Assertions.assertEquals(expectedAst, parser.edit(offset, removed, inserted));
+            Assertions.assertEquals(new Lexer(expected).lex(), parser.getTokens().asList());
+        } else {
+            ParseException actual = Assertions.assertThrows(ParseException.class, () -> parser.edit(offset, removed, inserted));
+            Assertions.assertEquals(expectedException.getMessage(), actual.getMessage());
+            Assertions.assertEquals(expectedException.getIndex(), actual.getIndex());
+            Assertions.assertNull(parser.getAst());
+        }
+        Assertions.assertEquals(expected, parser.getSource().toString());
+        return expectedAst;
+    }
+
+}
@@ -10,6 +10,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -108,10 +109,59 @@ final class InterpreterTests {
                         )),
                         Arrays.asList(Environment.create(BigInteger.TEN)),
                         BigInteger.valueOf(100)
+                ),
+                // FUN find(n) DO LET i = 0; WHILE TRUE DO IF i == n DO RETURN i; END i = i + 1; END RETURN -1; END
+                Arguments.of("Return In Loop",
+                        new Ast.Function("find", Arrays.asList("n"), Arrays.asList(
+                                new Ast.Statement.Declaration("i", Optional.of(new Ast.Expression.Literal(BigInteger.ZERO))),
+                                new Ast.Statement.While(new Ast.Expression.Literal(true), Arrays.asList(
+                                        new Ast.Statement.If(new Ast.Expression.Binary("==",
+                                                new Ast.Expression.Access(Optional.empty(), "i"),
+                                                new Ast.Expression.Access(Optional.empty(), "n")
+                                        ), Arrays.asList(new Ast.Statement.Return(new Ast.Expression.Access(Optional.empty(), "i"))), Arrays.asList()),
+                                        new Ast.Statement.Assignment(new Ast.Expression.Access(Optional.empty(), "i"),
+                                                new Ast.Expression.Binary("+", new Ast.Expression.Access(Optional.empty(), "i"), new Ast.Expression.Literal(BigInteger.ONE)))
+                                )),
+                                new Ast.Statement.Return(new Ast.Expression.Literal(BigInteger.valueOf(-1)))
+                        )),
+                        Arrays.asList(Environment.create(BigInteger.valueOf(5))),
+                        BigInteger.valueOf(5)
+                ),
+                // FUN grade(c) DO SWITCH c CASE 'a': RETURN 1; DEFAULT RETURN 0; END RETURN -1; END
+                Arguments.of("Return In Switch",
+                        new Ast.Function("grade", Arrays.asList("c"), Arrays.asList(
+                                new Ast.Statement.Switch(new Ast.Expression.Access(Optional.empty(), "c"), Arrays.asList(
+                                        new Ast.Statement.Case(Optional.of(new Ast.Expression.Literal('a')), Arrays.asList(new Ast.Statement.Return(new Ast.Expression.Literal(BigInteger.ONE)))),
+                                        new Ast.Statement.Case(Optional.empty(), Arrays.asList(new Ast.Statement.Return(new Ast.Expression.Literal(BigInteger.ZERO))))
+                                )),
+                                new Ast.Statement.Return(new Ast.Expression.Literal(BigInteger.valueOf(-1)))
+                        )),
+                        Arrays.asList(Environment.create('b')),
+                        BigInteger.ZERO
                 )
         );
     }
 
+    @Test
+    void testRecursiveReturn() {
+        // FUN sum(n) DO IF n == 0 DO RETURN 0; END RETURN n + sum(n - 1); END
+        Ast.Function ast = new Ast.Function("sum", Arrays.asList("n"), Arrays.asList(
+                new Ast.Statement.If(new Ast.Expression.Binary("==",
+                        new Ast.Expression.Access(Optional.empty(), "n"),
+                        new Ast.Expression.Literal(BigInteger.ZERO)
+                ), Arrays.asList(new Ast.Statement.Return(new Ast.Expression.Literal(BigInteger.ZERO))), Arrays.asList()),
+                new Ast.Statement.Return(new Ast.Expression.Binary("+",
+                        new Ast.Expression.Access(Optional.empty(), "n"),
+                        new Ast.Expression.Function("sum", Arrays.asList(new Ast.Expression.Binary("-",
+                                new Ast.Expression.Access(Optional.empty(), "n"),
+                                new Ast.Expression.Literal(BigInteger.ONE)
+                        )))
+                ))
+        ));
+        Scope scope = test(ast, Environment.NIL.getValue(), new Scope(null));
+        Assertions.assertEquals(BigInteger.valueOf(5050), scope.lookupFunction("sum", 1).invoke(Arrays.asList(Environment.create(BigInteger.valueOf(100)))).getValue());
+    }
+
     @Test
     void testExpressionStatement() {
         // print("Hello, World!");
@@ -311,6 +361,64 @@ final class InterpreterTests {
         Assertions.assertEquals(BigInteger.TEN, scope.lookupVariable("num").getValue().getValue());
     }
 
+    @Test
+    void testWhileDeclaration() {
+        // WHILE num < 3 DO LET next = num + 1; num = next; END
+        Scope scope = new Scope(null);
+        scope.defineVariable("num", true, Environment.create(BigInteger.ZERO));
+        Scope global = test(new Ast.Statement.While(
+                new Ast.Expression.Binary("<",
+                        new Ast.Expression.Access(Optional.empty(),"num"),
+                        new Ast.Expression.Literal(BigInteger.valueOf(3))
+                ),
+                Arrays.asList(
+                        new Ast.Statement.Declaration("next", Optional.of(new Ast.Expression.Binary("+",
+                                new Ast.Expression.Access(Optional.empty(),"num"),
+                                new Ast.Expression.Literal(BigInteger.ONE)
+                        ))),
+                        new Ast.Statement.Assignment(
+                                new Ast.Expression.Access(Optional.empty(),"num"),
+                                new Ast.Expression.Access(Optional.empty(),"next")
+                        )
+                )
+        ),Environment.NIL.getValue(), scope);
+        Assertions.assertEquals(BigInteger.valueOf(3), scope.lookupVariable("num").getValue().getValue());
+        Assertions.assertThrows(RuntimeException.class, () -> global.lookupVariable("next"));
+    }
+
+    @Test
+    void testShortCircuitGuards() {
+        // WHILE num < 3 && check() DO num = num + 1; END
+        // IF num < 3 && check() DO num = 0; END
+        int[] calls = {0};
+        Scope scope = new Scope(null);
+        scope.defineVariable("num", true, Environment.create(BigInteger.ZERO));
+        scope.defineFunction("check", 0, args -> {
+            calls[0]++;
+            return Environment.create(true);
+        });
+        Ast.Expression guard = new Ast.Expression.Binary("&&",
+                new Ast.Expression.Binary("<",
+                        new Ast.Expression.Access(Optional.empty(), "num"),
+                        new Ast.Expression.Literal(BigInteger.valueOf(3))
+                ),
+                new Ast.Expression.Function("check", Arrays.asList())
+        );
+        test(new Ast.Statement.While(guard, Arrays.asList(new Ast.Statement.Assignment(
+                new Ast.Expression.Access(Optional.empty(), "num"),
+                new Ast.Expression.Binary("+",
+                        new Ast.Expression.Access(Optional.empty(), "num"),
+                        new Ast.Expression.Literal(BigInteger.ONE)
+                )
+        ))), Environment.NIL.getValue(), scope);
+        test(new Ast.Statement.If(guard, Arrays.asList(new Ast.Statement.Assignment(
+                new Ast.Expression.Access(Optional.empty(), "num"),
+                new Ast.Expression.Literal(BigInteger.ZERO)
+        )), Arrays.asList()), Environment.NIL.getValue(), scope);
+        Assertions.assertEquals(BigInteger.valueOf(3), scope.lookupVariable("num").getValue().getValue());
+        Assertions.assertEquals(3, calls[0]);
+    }
+
     @ParameterizedTest
     @MethodSource
     void testLiteralExpression(String test, Ast ast, Object expected) {
@@ -379,6 +487,33 @@ final class InterpreterTests {
 //                        ),
 //                        true
 //                ),
+                // FALSE && undefined
+                Arguments.of("And (False Short Circuit)",
+                        new Ast.Expression.Binary("&&",
+                                new Ast.Expression.Literal(false),
+                                new Ast.Expression.Access(Optional.empty(), "undefined")
+                        ),
+                        false
+                ),
+                // TRUE && undefined
+                Arguments.of("And (Undefined)",
+                        new Ast.Expression.Binary("&&",
+                                new Ast.Expression.Literal(true),
+                                new Ast.Expression.Access(Optional.empty(), "undefined")
+                        ),
+                        null
+                ),
+                // (FALSE || FALSE) && undefined
+                Arguments.of("Grouped Short Circuit",
+                        new Ast.Expression.Binary("&&",
+                                new Ast.Expression.Group(new Ast.Expression.Binary("||",
+                                        new Ast.Expression.Literal(false),
+                                        new Ast.Expression.Literal(false)
+                                )),
+                                new Ast.Expression.Access(Optional.empty(), "undefined")
+                        ),
+                        false
+                ),
                 // TRUE || FALSE
                 Arguments.of("Or",
                         new Ast.Expression.Binary("||",
@@ -427,6 +562,30 @@ final class InterpreterTests {
                         ),
                         true
                 ),
+                // 10 <= 10
+                Arguments.of("Less Than Or Equal",
+                        new Ast.Expression.Binary("<=",
+                                new Ast.Expression.Literal(BigInteger.TEN),
+                                new Ast.Expression.Literal(BigInteger.TEN)
+                        ),
+                        true
+                ),
+                // 1 >= 10
+                Arguments.of("Greater Than Or Equal",
+                        new Ast.Expression.Binary(">=",
+                                new Ast.Expression.Literal(BigInteger.ONE),
+                                new Ast.Expression.Literal(BigInteger.TEN)
+                        ),
+                        false
+                ),
+                // 1 < 1.0
+                Arguments.of("Comparison Type Mismatch",
+                        new Ast.Expression.Binary("<",
+                                new Ast.Expression.Literal(BigInteger.ONE),
+                                new Ast.Expression.Literal(BigDecimal.ONE)
+                        ),
+                        null
+                ),
                 // 1 == 10
                 Arguments.of("False Equal",
                         new Ast.Expression.Binary("==",
@@ -467,6 +626,57 @@ final class InterpreterTests {
                         ),
                         BigInteger.valueOf(11)
                 ),
+                // 9223372036854775807 + 1
+                Arguments.of("Addition Overflow",
+                        new Ast.Expression.Binary("+",
+                                new Ast.Expression.Literal(BigInteger.valueOf(Long.MAX_VALUE)),
+                                new Ast.Expression.Literal(BigInteger.ONE)
+                        ),
+                        new BigInteger("9223372036854775808")
+                ),
+                // 18446744073709551616 - 18446744073709551615 + 1
+                Arguments.of("Overflow Demotion",
+                        new Ast.Expression.Binary("+",
+                                new Ast.Expression.Binary("-",
+                                        new Ast.Expression.Literal(new BigInteger("18446744073709551616")),
+                                        new Ast.Expression.Literal(new BigInteger("18446744073709551615"))
+                                ),
+                                new Ast.Expression.Literal(BigInteger.ONE)
+                        ),
+                        BigInteger.valueOf(2)
+                ),
+                // 4611686018427387904 * -4
+                Arguments.of("Multiplication Overflow",
+                        new Ast.Expression.Binary("*",
+                                new Ast.Expression.Literal(BigInteger.ONE.shiftLeft(62)),
+                                new Ast.Expression.Literal(BigInteger.valueOf(-4))
+                        ),
+                        BigInteger.ONE.shiftLeft(64).negate()
+                ),
+                // -9223372036854775808 / -1
+                Arguments.of("Division Overflow",
+                        new Ast.Expression.Binary("/",
+                                new Ast.Expression.Literal(BigInteger.valueOf(Long.MIN_VALUE)),
+                                new Ast.Expression.Literal(BigInteger.valueOf(-1))
+                        ),
+                        new BigInteger("9223372036854775808")
+                ),
+                // 7 / -2
+                Arguments.of("Integer Division",
+                        new Ast.Expression.Binary("/",
+                                new Ast.Expression.Literal(BigInteger.valueOf(7)),
+                                new Ast.Expression.Literal(BigInteger.valueOf(-2))
+                        ),
+                        BigInteger.valueOf(-3)
+                ),
+                // 1 / 0
+                Arguments.of("Integer Division by Zero",
+                        new Ast.Expression.Binary("/",
+                                new Ast.Expression.Literal(BigInteger.ONE),
+                                new Ast.Expression.Literal(BigInteger.ZERO)
+                        ),
+                        null
+                ),
                 // 1.2 + 3.4
                 Arguments.of("Decimal Addition",
                         new Ast.Expression.Binary("+",
@@ -533,6 +743,24 @@ final class InterpreterTests {
         );
     }
 
+    @Test
+    void testBinaryOperandsEvaluatedOnce() {
+        // count() + (count() * (count() - ...)), nested 30 deep
+        int[] calls = {0};
+        Scope scope = new Scope(null);
+        scope.defineFunction("count", 0, args -> {
+            calls[0]++;
+            return Environment.create(BigInteger.ONE);
+        });
+        Ast.Expression expression = new Ast.Expression.Function("count", Arrays.asList());
+        String[] operators = {"+", "*", "-"};
+        for (int i = 0; i < 30; i++) {
+            expression = new Ast.Expression.Binary(operators[i % 3], new Ast.Expression.Function("count", Arrays.asList()), expression);
+        }
+        test(expression, BigInteger.ONE, scope);
+        Assertions.assertEquals(31, calls[0]);
+    }
+
     @ParameterizedTest
     @MethodSource
     void testAccessExpression(String test, Ast ast, Object expected) {
@@ -595,6 +823,47 @@ final class InterpreterTests {
         );
     }
 
+    @Test
+    void testFunctionRedefined() {
+        // f(), before and after f/0 is shadowed by the interpreter's scope
+        Scope scope = new Scope(null);
+        scope.defineFunction("f", 0, args -> Environment.create("parent"));
+        Interpreter interpreter = new Interpreter(scope);
+        Ast.Expression.Function ast = new Ast.Expression.Function("f", Arrays.asList());
+        Assertions.assertEquals("parent", interpreter.visit(ast).getValue());
+        Assertions.assertEquals("parent", interpreter.visit(ast).getValue());
+        interpreter.getScope().defineFunction("f", 0, args -> Environment.create("global"));
+        Assertions.assertEquals("global", interpreter.visit(ast).getValue());
+        Assertions.assertEquals("parent", new Interpreter(scope).visit(ast).getValue());
+    }
+
+    @Test
+    void testFunctionArguments() {
+        // join(1, 2, 3) and join(1, 2, 3, 4), each argument evaluated in order
+        List<Object> evaluated = new ArrayList<>();
+        Scope scope = new Scope(null);
+        scope.defineFunction("next", 1, args -> {
+            evaluated.add(args.get(0).getValue());
+            return args.get(0);
+        });
+        java.util.function.Function<List<Environment.PlcObject>, Environment.PlcObject> join = args -> {
+            StringBuilder builder = new StringBuilder();
+            for (Environment.PlcObject arg : args) {
+                builder.append(arg.getValue());
+            }
+            return Environment.create(builder.toString());
+        };
+        scope.defineFunction("join", 3, join);
+        scope.defineFunction("join", 4, join);
+        List<Ast.Expression> arguments = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            arguments.add(new Ast.Expression.Function("next", Arrays.asList(new Ast.Expression.Literal(BigInteger.valueOf(i)))));
+        }
+        test(new Ast.Expression.Function("join", arguments.subList(0, 3)), "123", scope);
+        test(new Ast.Expression.Function("join", arguments), "1234", scope);
+        Assertions.assertEquals(Arrays.asList(BigInteger.ONE, BigInteger.valueOf(2), BigInteger.valueOf(3), BigInteger.ONE, BigInteger.valueOf(2), BigInteger.valueOf(3), BigInteger.valueOf(4)), evaluated);
+    }
+
     @Test
     void testPlcList() {
         // [1, 5, 10]
@@ -609,6 +878,20 @@ final class InterpreterTests {
         test(ast, expected, new Scope(null));
     }
 
+    @Test
+    void testCreate() {
+        Assertions.assertSame(Environment.create(true), Environment.create(Boolean.TRUE));
+        Assertions.assertSame(Environment.create(BigInteger.TEN), Environment.create(BigInteger.valueOf(10)));
+        Assertions.assertEquals(Environment.Type.INTEGER, Environment.create(new BigInteger("123456789012345678901234567890")).getType());
+        Assertions.assertEquals(Environment.Type.INTEGER, Environment.create(BigInteger.valueOf(Long.MIN_VALUE)).getType());
+        Assertions.assertEquals(Environment.Type.DECIMAL, Environment.create(BigDecimal.ONE).getType());
+        Assertions.assertEquals(Environment.Type.BOOLEAN, Environment.create(false).getType());
+        Assertions.assertEquals(Environment.Type.CHARACTER, Environment.create('c').getType());
+        Assertions.assertEquals(Environment.Type.STRING, Environment.create("string").getType());
+        Assertions.assertEquals(Environment.Type.LIST, Environment.create(Arrays.asList()).getType());
+        Assertions.assertEquals(BigInteger.valueOf(Long.MIN_VALUE), Environment.create(BigInteger.valueOf(Long.MIN_VALUE)).getValue());
+    }
+
     private static Scope test(Ast ast, Object expected, Scope scope) {
         Interpreter interpreter = new Interpreter(scope);
         if (expected != null) {
@@ -6,7 +6,11 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Stream;
 
@@ -164,6 +168,70 @@ public class LexerTests {
         Assertions.assertEquals(13, exception.getIndex());
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testStreaming(String test, String input) {
+        List<Token> tokens = new ArrayList<>();
+        new Lexer(new TrickleReader(input)).iterator().forEachRemaining(tokens::add);
+        Assertions.assertEquals(new Lexer(input).lex(), tokens);
+    }
+
+    private static Stream<Arguments> testStreaming() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Source", "VAR x = 1;\nFUN main() DO\n    x = x + 1;\n    RETURN x;\nEND"),
+                Arguments.of("Token Longer Than Buffer", "x = \"" + String.join("", Collections.nCopies(20000, "a")) + "\";")
+        );
+    }
+
+    @Test
+    void testStreamingException() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer(new TrickleReader("\"unterminated")).iterator().next());
+        Assertions.assertEquals(13, exception.getIndex());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testKind(String test, String input, int kind) {
+        Token token = new Lexer(input).lexToken();
+        Assertions.assertEquals(kind, token.getKind());
+        Assertions.assertEquals(kind, new Token(token.getType(), token.getLiteral(), 0).getKind());
+        Assertions.assertEquals(kind, new Lexer(input).lexBuffer().getKind(0));
+    }
+
+    private static Stream<Arguments> testKind() {
+        return Stream.of(
+                Arguments.of("Keyword", "FUN", Token.Kind.FUN),
+                Arguments.of("Keyword Prefix", "DEFAULTS", Token.Kind.NONE),
+                Arguments.of("Keyword Case", "val", Token.Kind.NONE),
+                Arguments.of("Hash Slot", "VAX", Token.Kind.NONE),
+                Arguments.of("Identifier", "name", Token.Kind.NONE),
+                Arguments.of("Operator", ";", Token.Kind.SEMICOLON),
+                Arguments.of("Comparison", "!=", Token.Kind.NOT_EQUAL),
+                Arguments.of("Unknown Operator", "!", Token.Kind.NONE),
+                Arguments.of("Integer", "1", Token.Kind.NONE),
+                Arguments.of("String", "\"END\"", Token.Kind.NONE)
+        );
+    }
+
+    /**
+     * Hands out a single character per read, so the lexer has to refill its
+     * buffer at every step.
+     */
+    private static final class TrickleReader extends StringReader {
+
+        private TrickleReader(String input) {
+            super(input);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(length, 1));
+        }
+
+    }
+
     /**
      * Tests that lexing the input through {@link Lexer#lexToken()} produces a
      * single token with the expected type and literal matching the input.
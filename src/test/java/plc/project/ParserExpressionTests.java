@@ -8,6 +8,7 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -354,10 +355,62 @@ final class ParserExpressionTests {
                         ),
                         new Ast.Expression.Binary("!=", new Ast.Expression.Access(Optional.empty(), "a"),
                                 new Ast.Expression.Binary("==", new Ast.Expression.Access(Optional.empty(), "b"), new Ast.Expression.Access(Optional.empty(), "c")))
+                ),
+                Arguments.of("Precedence",
+                        Arrays.asList(
+                                //a * b + c
+                                new Token(Token.Type.IDENTIFIER, "a", 0),
+                                new Token(Token.Type.OPERATOR, "*", 2),
+                                new Token(Token.Type.IDENTIFIER, "b", 4),
+                                new Token(Token.Type.OPERATOR, "+", 6),
+                                new Token(Token.Type.IDENTIFIER, "c", 8)
+                        ),
+                        new Ast.Expression.Binary("+",
+                                new Ast.Expression.Binary("*", new Ast.Expression.Access(Optional.empty(), "a"), new Ast.Expression.Access(Optional.empty(), "b")),
+                                new Ast.Expression.Access(Optional.empty(), "c"))
+                ),
+                Arguments.of("Comparison Precedence",
+                        Arrays.asList(
+                                //a <= b + c && d
+                                new Token(Token.Type.IDENTIFIER, "a", 0),
+                                new Token(Token.Type.OPERATOR, "<=", 2),
+                                new Token(Token.Type.IDENTIFIER, "b", 5),
+                                new Token(Token.Type.OPERATOR, "+", 7),
+                                new Token(Token.Type.IDENTIFIER, "c", 9),
+                                new Token(Token.Type.OPERATOR, "&&", 11),
+                                new Token(Token.Type.IDENTIFIER, "d", 14)
+                        ),
+                        new Ast.Expression.Binary("&&",
+                                new Ast.Expression.Binary("<=", new Ast.Expression.Access(Optional.empty(), "a"),
+                                        new Ast.Expression.Binary("+", new Ast.Expression.Access(Optional.empty(), "b"), new Ast.Expression.Access(Optional.empty(), "c"))),
+                                new Ast.Expression.Access(Optional.empty(), "d"))
+                ),
+                Arguments.of("Right Associative",
+                        Arrays.asList(
+                                //a - b - c
+                                new Token(Token.Type.IDENTIFIER, "a", 0),
+                                new Token(Token.Type.OPERATOR, "-", 2),
+                                new Token(Token.Type.IDENTIFIER, "b", 4),
+                                new Token(Token.Type.OPERATOR, "-", 6),
+                                new Token(Token.Type.IDENTIFIER, "c", 8)
+                        ),
+                        new Ast.Expression.Binary("-", new Ast.Expression.Access(Optional.empty(), "a"),
+                                new Ast.Expression.Binary("-", new Ast.Expression.Access(Optional.empty(), "b"), new Ast.Expression.Access(Optional.empty(), "c")))
                 )
         );
     }
 
+    @Test
+    void testLongBinaryExpression() {
+        List<Token> tokens = new ArrayList<>();
+        tokens.add(new Token(Token.Type.INTEGER, "0", 0));
+        for (int i = 1; i < 100000; i++) {
+            tokens.add(new Token(Token.Type.OPERATOR, i % 2 == 0 ? "+" : "*", 2 * i - 1));
+            tokens.add(new Token(Token.Type.INTEGER, "1", 2 * i));
+        }
+        Assertions.assertTrue(new Parser(tokens).parseExpression() instanceof Ast.Expression.Binary);
+    }
+
     @ParameterizedTest
     @MethodSource
     void testAccessExpression(String test, List<Token> tokens, Ast.Expression.Access expected) {
@@ -11,6 +11,7 @@ import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -548,6 +549,72 @@ final class ParserTests {
         test(input, expected, Parser::parseSource);
     }
 
+    @ParameterizedTest
+    @MethodSource
+    void testParallel(String test, String input) {
+        List<Token> tokens = new Lexer(input).lex();
+        Ast.Source expected;
+        try {
+            expected = new Parser(tokens).parseSource();
+        } catch (ParseException e) {
+            ParseException actual = Assertions.assertThrows(ParseException.class, () -> new Parser(tokens).parseSourceParallel());
+            Assertions.assertEquals(e.getMessage(), actual.getMessage());
+            Assertions.assertEquals(e.getIndex(), actual.getIndex());
+            return;
+        }
+        Assertions.assertEquals(expected, new Parser(tokens).parseSourceParallel());
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lexBuffer()).parseSourceParallel());
+    }
+
+    private static Stream<Arguments> testParallel() {
+        String function = "FUN f%d(x: Integer): Integer DO\n"
+                + "    IF x > 0 DO\n        RETURN x;\n    ELSE\n        print(x);\n    END\n"
+                + "    WHILE x < 10 DO\n        x = x + 1;\n    END\n"
+                + "    RETURN 0;\nEND\n";
+        StringBuilder many = new StringBuilder("VAR count: Integer = 0;\nLIST values = [1, 2];\n");
+        for (int i = 0; i < 100; i++) {
+            many.append(String.format(function, i));
+        }
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Globals", "VAR x: Integer = 1;\nVAL y: String = \"y\";\n"),
+                Arguments.of("Functions", many.toString()),
+                Arguments.of("Global After Function", String.format(function, 0) + "VAR x = 1;\n" + String.format(function, 1)),
+                Arguments.of("Missing End", String.format(function, 0) + "FUN g() DO\n    RETURN 1;\n" + String.format(function, 1)),
+                Arguments.of("Invalid Statement", String.format(function, 0) + "FUN g() DO\n    RETURN ;\nEND\n" + String.format(function, 1))
+        );
+    }
+
+    @Test
+    void testParallelIterator() throws ParseException {
+        // an iterator can't be pre-scanned, so this parses sequentially
+        String function = "FUN f%d(x: Integer): Integer DO\n    WHILE x < 10 DO\n        x = x + 1;\n    END\n    RETURN x;\nEND\n";
+        StringBuilder input = new StringBuilder("VAR count: Integer = 0;\n");
+        for (int i = 0; i < 8; i++) {
+            input.append(String.format(function, i));
+        }
+        List<Token> tokens = new Lexer(input.toString()).lex();
+        Assertions.assertEquals(new Parser(tokens).parseSource(), new Parser(tokens.iterator()).parseSource(ForkJoinPool.commonPool()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("testSource")
+    void testSourceIterator(String test, List<Token> tokens, Ast.Source expected) {
+        Assertions.assertEquals(expected, new Parser(tokens.iterator()).parseSource());
+    }
+
+    @ParameterizedTest
+    @MethodSource({"testExpressionStatement", "testDeclarationStatement", "testAssignmentStatement", "testIfStatement", "testWhileStatement", "testReturnStatement"})
+    void testStatementIterator(String test, List<Token> tokens, Ast.Statement expected) {
+        Assertions.assertEquals(expected, new Parser(tokens.iterator()).parseStatement());
+    }
+
+    @ParameterizedTest
+    @MethodSource({"testLiteralExpression", "testGroupExpression", "testBinaryExpression", "testAccessExpression", "testFunctionExpression"})
+    void testExpressionIterator(String test, List<Token> tokens, Ast.Expression expected) {
+        Assertions.assertEquals(expected, new Parser(tokens.iterator()).parseExpression());
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).
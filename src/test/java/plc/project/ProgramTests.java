@@ -0,0 +1,69 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+final class ProgramTests {
+
+    private static final String SOURCE = "VAR calls: Integer = 0;\n"
+            + "FUN fib(n: Integer): Integer DO\n"
+            + "    calls = calls + 1;\n"
+            + "    IF n < 2 DO\n        RETURN n;\n    END\n"
+            + "    RETURN fib(n - 1) + fib(n - 2);\n"
+            + "END\n"
+            + "FUN main(): Integer DO\n"
+            + "    fib(10);\n"
+            + "    RETURN calls;\n"
+            + "END\n";
+
+    @Test
+    void testRun() {
+        Program program = new Program(new Scope(null), parse(SOURCE));
+        Assertions.assertEquals(BigInteger.valueOf(177), program.run().getValue());
+        Assertions.assertEquals(BigInteger.valueOf(177), program.run().getValue()); // the globals are not shared
+    }
+
+    @Test
+    void testInvoke() {
+        Program program = new Program(new Scope(null), parse(SOURCE));
+        Assertions.assertEquals(BigInteger.valueOf(55), program.invoke("fib", Arrays.asList(Environment.create(BigInteger.TEN))).getValue());
+        Assertions.assertThrows(RuntimeException.class, () -> program.invoke("fib", Arrays.asList()));
+    }
+
+    @Test
+    void testConcurrent() throws Exception {
+        Program program = new Program(new Scope(null), parse(SOURCE));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Environment.PlcObject>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                BigInteger n = BigInteger.valueOf(i % 16);
+                results.add(executor.submit(() -> program.invoke("fib", Arrays.asList(Environment.create(n)))));
+            }
+            BigInteger[] expected = new BigInteger[16];
+            expected[0] = BigInteger.ZERO;
+            expected[1] = BigInteger.ONE;
+            for (int i = 2; i < expected.length; i++) {
+                expected[i] = expected[i - 1].add(expected[i - 2]);
+            }
+            for (int i = 0; i < results.size(); i++) {
+                Assertions.assertEquals(expected[i % 16], results.get(i).get().getValue());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+}
@@ -0,0 +1,101 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigInteger;
+import java.util.stream.Stream;
+
+final class ResolverTests {
+
+    @Test
+    void testSlots() {
+        // FUN f(a, b) DO LET c = a; IF c DO LET a = b; print(a); END RETURN g; END
+        Ast.Function function = parse("FUN f(a: Integer, b: Integer): Integer DO\n"
+                + "    LET c = a;\n"
+                + "    IF c DO\n"
+                + "        LET a = b;\n"
+                + "        print(a);\n"
+                + "    END\n"
+                + "    RETURN g;\n"
+                + "END\n").getFunctions().get(0);
+        Ast.Function expected = parse("FUN f(a: Integer, b: Integer): Integer DO\n"
+                + "    LET c = a;\n"
+                + "    IF c DO\n"
+                + "        LET a = b;\n"
+                + "        print(a);\n"
+                + "    END\n"
+                + "    RETURN g;\n"
+                + "END\n").getFunctions().get(0);
+        new Resolver().visit(function);
+        Assertions.assertEquals(expected, function);
+        Assertions.assertEquals(4, function.getFrameSize());
+
+        Ast.Statement.Declaration c = (Ast.Statement.Declaration) function.getStatements().get(0);
+        Assertions.assertEquals(2, c.getSlot());
+        Assertions.assertEquals(0, ((Ast.Expression.Access) c.getValue().get()).getSlot());
+
+        Ast.Statement.If statement = (Ast.Statement.If) function.getStatements().get(1);
+        Assertions.assertEquals(2, ((Ast.Expression.Access) statement.getCondition()).getSlot());
+        Ast.Statement.Declaration a = (Ast.Statement.Declaration) statement.getThenStatements().get(0);
+        Assertions.assertEquals(3, a.getSlot());
+        Assertions.assertEquals(1, ((Ast.Expression.Access) a.getValue().get()).getSlot());
+        Ast.Expression.Function print = (Ast.Expression.Function) ((Ast.Statement.Expression) statement.getThenStatements().get(1)).getExpression();
+        Assertions.assertEquals(3, ((Ast.Expression.Access) print.getArguments().get(0)).getSlot());
+
+        Ast.Statement.Return ret = (Ast.Statement.Return) function.getStatements().get(2);
+        Assertions.assertEquals(-1, ((Ast.Expression.Access) ret.getValue()).getSlot());
+    }
+
+    @Test
+    void testRedefinition() {
+        Ast.Function function = parse("FUN f() DO\n    LET x = 1;\n    LET x = 2;\nEND\n").getFunctions().get(0);
+        new Resolver().visit(function);
+        Assertions.assertEquals(-1, function.getFrameSize());
+        Assertions.assertEquals(-1, ((Ast.Statement.Declaration) function.getStatements().get(0)).getSlot());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testInterpret(String test, String input, Object expected) {
+        Ast.Source ast = parse(input);
+        Interpreter interpreter = new Interpreter(new Scope(null));
+        if (expected == null) {
+            Assertions.assertThrows(RuntimeException.class, () -> interpreter.visit(ast));
+        } else {
+            Assertions.assertEquals(expected, interpreter.visit(ast).getValue());
+        }
+    }
+
+    private static Stream<Arguments> testInterpret() {
+        return Stream.of(
+                Arguments.of("Recursion", "FUN fact(n: Integer): Integer DO\n"
+                        + "    IF n < 2 DO\n        RETURN 1;\n    END\n"
+                        + "    RETURN n * fact(n - 1);\n"
+                        + "END\n"
+                        + "FUN main(): Integer DO\n    RETURN fact(10);\nEND\n", BigInteger.valueOf(3628800)),
+                Arguments.of("Loop & Shadowing", "VAR total: Integer = 0;\n"
+                        + "FUN main(): Integer DO\n"
+                        + "    LET i = 0;\n"
+                        + "    WHILE i < 5 DO\n"
+                        + "        LET twice = i * 2;\n"
+                        + "        total = total + twice;\n"
+                        + "        i = i + 1;\n"
+                        + "    END\n"
+                        + "    IF total > 0 DO\n        LET i = 100;\n        total = total + i;\n    END\n"
+                        + "    RETURN total + i;\n"
+                        + "END\n", BigInteger.valueOf(125)),
+                Arguments.of("Parameter Assignment", "FUN f(x: Integer): Integer DO\n    x = x + 1;\n    RETURN x;\nEND\n"
+                        + "FUN main(): Integer DO\n    LET x = 1;\n    RETURN f(x) + x;\nEND\n", BigInteger.valueOf(3)),
+                Arguments.of("Redefinition", "FUN main(): Integer DO\n    LET x = 1;\n    LET x = 2;\n    RETURN x;\nEND\n", null)
+        );
+    }
+
+    private static Ast.Source parse(String input) {
+        return new Parser(new Lexer(input).lex()).parseSource();
+    }
+
+}
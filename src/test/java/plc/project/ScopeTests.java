@@ -0,0 +1,54 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+final class ScopeTests {
+
+    @Test
+    void testFunctionArities() {
+        Scope scope = new Scope(null);
+        scope.defineFunction("f", 2, args -> Environment.create("f/2"));
+        scope.defineFunction("f", 0, args -> Environment.create("f/0"));
+        Assertions.assertEquals("f/0", scope.lookupFunction("f", 0).invoke(CallSite.arguments()).getValue());
+        Assertions.assertEquals(2, scope.lookupFunction("f", 2).getArity());
+        Assertions.assertThrows(RuntimeException.class, () -> scope.lookupFunction("f", 1));
+        Assertions.assertThrows(RuntimeException.class, () -> scope.lookupFunction("f", 3));
+        Assertions.assertThrows(RuntimeException.class, () -> scope.lookupFunction("g", 0));
+    }
+
+    @Test
+    void testFunctionRedefined() {
+        Scope scope = new Scope(null);
+        scope.defineFunction("f", 1, args -> Environment.NIL);
+        Assertions.assertThrows(RuntimeException.class, () -> scope.defineFunction("f", 1, args -> Environment.NIL));
+    }
+
+    @Test
+    void testFunctionShadowed() {
+        Scope parent = new Scope(null);
+        parent.defineFunction("f", 1, args -> Environment.create("parent"));
+        parent.defineFunction("f", 2, args -> Environment.create("parent"));
+        Scope child = new Scope(parent);
+        child.defineFunction("f", 2, args -> Environment.create("child"));
+        Assertions.assertEquals("parent", child.lookupFunction("f", 1).invoke(CallSite.arguments(Environment.NIL)).getValue());
+        Assertions.assertEquals("child", child.lookupFunction("f", 2).invoke(CallSite.arguments(Environment.NIL, Environment.NIL)).getValue());
+    }
+
+    @Test
+    void testCallSiteInvalidated() {
+        Scope parent = new Scope(null);
+        parent.defineFunction("f", 0, args -> Environment.create("parent"));
+        Scope child = new Scope(parent);
+        CallSite site = new CallSite("f", 0);
+        Assertions.assertSame(parent.lookupFunction("f", 0), site.resolve(child));
+        int version = child.getFunctionVersion(parent);
+        new Scope(null).defineFunction("g", 0, args -> Environment.NIL); // in another program
+        new Scope(parent).defineFunction("f", 0, args -> Environment.NIL); // in a sibling, which can't shadow it
+        Assertions.assertEquals(version, child.getFunctionVersion(parent));
+        Assertions.assertSame(parent.lookupFunction("f", 0), site.resolve(child));
+        child.defineFunction("f", 0, args -> Environment.create("child"));
+        Assertions.assertEquals("child", site.resolve(child).invoke(CallSite.arguments()).getValue());
+    }
+
+}
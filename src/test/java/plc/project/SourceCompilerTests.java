@@ -0,0 +1,89 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Stream;
+
+final class SourceCompilerTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testRun(String test, String input, String output, int expected) throws IOException {
+        String source = generate(input);
+        Path directory = Files.createTempDirectory("plc-cache");
+        Map<String, byte[]> classes = new SourceCompiler(directory).compile(source);
+        test(classes, output, expected);
+        Map<String, byte[]> cached = new SourceCompiler(directory).get(source);
+        Assertions.assertNotNull(cached);
+        test(cached, output, expected);
+    }
+
+    private static Stream<Arguments> testRun() {
+        return Stream.of(
+                Arguments.of("Hello, World!", "FUN main(): Integer DO\n    print(\"Hello, World!\");\n    RETURN 0;\nEND\n", "Hello, World!\n", 0),
+                Arguments.of("Loop", "VAR i: Integer = 0;\nVAR total: Integer = 0;\n"
+                        + "FUN main(): Integer DO\n"
+                        + "    WHILE i < 10 DO\n        total = total + i * i;\n        i = i + 1;\n    END\n"
+                        + "    print(total);\n"
+                        + "    RETURN total - 200;\n"
+                        + "END\n", "285\n", 85)
+        );
+    }
+
+    @Test
+    void testCorruptCache() throws IOException {
+        String source = generate("FUN main(): Integer DO\n    RETURN 3;\nEND\n");
+        Path directory = Files.createTempDirectory("plc-cache");
+        SourceCompiler compiler = new SourceCompiler(directory);
+        Files.write(compiler.path(AstCache.hash(source)), new byte[] {0, 0, 0, 1, 0});
+        Assertions.assertNull(compiler.get(source));
+        test(compiler.compile(source), "", 3);
+        Assertions.assertNotNull(new SourceCompiler(directory).get(source));
+    }
+
+    @Test
+    void testOtherJdk() throws IOException {
+        String source = generate("FUN main(): Integer DO\n    RETURN 3;\nEND\n");
+        Path directory = Files.createTempDirectory("plc-cache");
+        Path entry = new SourceCompiler(directory).path(AstCache.hash(source));
+        new SourceCompiler(directory).compile(source);
+        Path other = directory.resolve(AstCache.hash(source) + "-" + (Runtime.version().feature() + 1) + ".classes");
+        Files.move(entry, other); // as if written by a newer javac
+        Assertions.assertNull(new SourceCompiler(directory).get(source));
+    }
+
+    @Test
+    void testCompileError() throws IOException {
+        SourceCompiler compiler = new SourceCompiler(Files.createTempDirectory("plc-cache"));
+        Assertions.assertThrows(RuntimeException.class, () -> compiler.compile("public class Main { int main() { return \"\"; } }"));
+    }
+
+    private static String generate(String input) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        return SourceCompiler.generate(ast);
+    }
+
+    private static void test(Map<String, byte[]> classes, String output, int expected) {
+        PrintStream sysout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        try {
+            Assertions.assertEquals(expected, SourceCompiler.run(classes));
+        } finally {
+            System.setOut(sysout);
+        }
+        Assertions.assertEquals(output.replace("\n", System.lineSeparator()), out.toString());
+    }
+
+}
@@ -0,0 +1,38 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+final class SourceFileTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testMap(String test, String contents) throws IOException {
+        Path path = Files.createTempFile("source", ".plc");
+        try {
+            Files.write(path, contents.getBytes(StandardCharsets.UTF_8));
+            CharSequence source = SourceFile.map(path);
+            Assertions.assertEquals(contents, source.toString());
+            Assertions.assertEquals(new Lexer(contents).lex(), new Lexer(source).lex());
+        } finally {
+            Files.delete(path);
+        }
+    }
+
+    private static Stream<Arguments> testMap() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Ascii", "VAL name: String = \"Sample\";\n\nFUN main(): Integer DO\n    print(\"Hello \" + name);\n    RETURN 0;\nEND\n"),
+                Arguments.of("Unicode", "VAL name: String = \"S\u00e4mple \u2603\";\nFUN main(): Integer DO RETURN 0; END\n")
+        );
+    }
+
+}
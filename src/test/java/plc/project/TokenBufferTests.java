@@ -0,0 +1,71 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.StringReader;
+import java.util.stream.Stream;
+
+final class TokenBufferTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testLexBuffer(String test, String input) {
+        TokenBuffer tokens = new Lexer(input).lexBuffer();
+        Assertions.assertEquals(new Lexer(input).lex(), tokens.asList());
+        for (int i = 0; i < tokens.size(); i++) {
+            String literal = tokens.getLiteral(i);
+            Assertions.assertTrue(tokens.literalEquals(i, literal));
+            Assertions.assertFalse(tokens.literalEquals(i, literal + " "));
+        }
+    }
+
+    private static Stream<Arguments> testLexBuffer() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Whitespace", " \t\n"),
+                Arguments.of("Source", "VAR x = 'c';\nFUN main(): Integer DO\n    print(\"Hello, World!\");\n    RETURN -1.5;\nEND\n")
+        );
+    }
+
+    @Test
+    void testLexBufferException() {
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> new Lexer("VAR x = \"unterminated").lexBuffer());
+        Assertions.assertEquals(21, exception.getIndex());
+    }
+
+    @Test
+    void testLexBufferReader() {
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> new Lexer(new StringReader("x")).lexBuffer());
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testParse(String test, String input) {
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lexBuffer()).parseSource());
+    }
+
+    private static Stream<Arguments> testParse() {
+        return Stream.of(
+                Arguments.of("Empty", ""),
+                Arguments.of("Globals", "VAR x: Integer = 1;\nVAL y: String = \"y\";\nLIST z = [1, 2, 3];\n"),
+                Arguments.of("Function", "FUN main(): Integer DO\n    LET i = 0;\n    WHILE i < 10 DO\n        print(i);\n        i = i + 1;\n    END\n    RETURN 0;\nEND\n")
+        );
+    }
+
+    @Test
+    void testParseException() {
+        ParseException expected = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer("VAR x = ").lex()).parseSource());
+        ParseException actual = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer("VAR x = ").lexBuffer()).parseSource());
+        Assertions.assertEquals(expected.getIndex(), actual.getIndex());
+    }
+
+}
@@ -0,0 +1,150 @@
+package plc.project.jvm;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import plc.project.Analyzer;
+import plc.project.Ast;
+import plc.project.Environment;
+import plc.project.Lexer;
+import plc.project.Parser;
+import plc.project.Scope;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+final class ClassGeneratorTests {
+
+    private static final Environment.Function PRINT = new Environment.Function("print", "System.out.println", Arrays.asList(Environment.Type.ANY), Environment.Type.NIL, args -> Environment.NIL);
+
+    @ParameterizedTest
+    @MethodSource
+    void testSource(String test, String input, String output, int expected) {
+        Ast.Source ast = new Parser(new Lexer(input).lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        test(ast, output, expected);
+    }
+
+    private static Stream<Arguments> testSource() {
+        return Stream.of(
+                Arguments.of("Hello, World!", "FUN main(): Integer DO\n    print(\"Hello, World!\");\n    RETURN 0;\nEND\n", "Hello, World!\n", 0),
+                Arguments.of("Loop", "VAR i: Integer = 0;\nVAR total: Integer = 0;\n"
+                        + "FUN main(): Integer DO\n"
+                        + "    WHILE i < 10 DO\n        total = total + i * i;\n        i = i + 1;\n    END\n"
+                        + "    print(total);\n"
+                        + "    RETURN total - 200;\n"
+                        + "END\n", "285\n", 85),
+                Arguments.of("Decimal", "VAR x: Decimal = 1.5;\n"
+                        + "FUN main(): Integer DO\n    x = x * 2.0 + 0.25;\n    print(x);\n    print(x > 3.0);\n    RETURN 0;\nEND\n", "3.25\ntrue\n", 0),
+                Arguments.of("Strings & Characters", "VAL name: String = \"PLC\";\nVAR c: Character = 'a';\n"
+                        + "FUN main(): Integer DO\n    print(\"Hello, \" + name + 1);\n    print(c);\n    print(c == 'a');\n    RETURN 0;\nEND\n",
+                        "Hello, PLC1\na\ntrue\n", 0),
+                Arguments.of("Power", "FUN main(): Integer DO\n    print(2 ^ 10);\n    RETURN 7 / 2;\nEND\n", "1024.0\n", 3),
+                Arguments.of("If Else", "VAR x: Integer = 5;\n"
+                        + "FUN main(): Integer DO\n"
+                        + "    IF x != 5 DO\n        print(1);\n    ELSE\n        print(2);\n    END\n"
+                        + "    IF x >= 5 DO\n        RETURN 3;\n    END\n"
+                        + "    RETURN 4;\n"
+                        + "END\n", "2\n", 3)
+        );
+    }
+
+    @Test
+    void testFunctions() {
+        // FUN square(x: Integer): Integer DO LET y: Integer = x * x; RETURN y; END
+        Environment.Function square = new Environment.Function("square", "square", Arrays.asList(Environment.Type.INTEGER), Environment.Type.INTEGER, args -> Environment.NIL);
+        Ast.Function squareFunction = init(new Ast.Function("square", Arrays.asList("x"), Arrays.asList("Integer"), Optional.of("Integer"), Arrays.asList(
+                init(new Ast.Statement.Declaration("y", Optional.of("Integer"), Optional.of(
+                        new Ast.Expression.Binary("*", access("x", Environment.Type.INTEGER), access("x", Environment.Type.INTEGER))
+                )), ast -> ast.setVariable(variable("y", Environment.Type.INTEGER))),
+                new Ast.Statement.Return(access("y", Environment.Type.INTEGER))
+        )), ast -> ast.setFunction(square));
+        // FUN main(): Integer DO
+        //     LET c: Character = 'b';
+        //     SWITCH c CASE 'a': print(1); CASE 'b': print(square(3)); DEFAULT print(0); END
+        //     IF TRUE && square(2) == 4 DO print("yes"); END
+        //     IF FALSE || (1 > 2) DO print("no"); END
+        //     RETURN square(5);
+        // END
+        Ast.Function main = init(new Ast.Function("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+                init(new Ast.Statement.Declaration("c", Optional.of("Character"), Optional.of(new Ast.Expression.Literal('b'))),
+                        ast -> ast.setVariable(variable("c", Environment.Type.CHARACTER))),
+                new Ast.Statement.Switch(access("c", Environment.Type.CHARACTER), Arrays.asList(
+                        new Ast.Statement.Case(Optional.of(new Ast.Expression.Literal('a')), Arrays.asList(print(literal(1)))),
+                        new Ast.Statement.Case(Optional.of(new Ast.Expression.Literal('b')), Arrays.asList(print(call(square, literal(3))))),
+                        new Ast.Statement.Case(Optional.empty(), Arrays.asList(print(literal(0))))
+                )),
+                new Ast.Statement.If(new Ast.Expression.Binary("&&",
+                        new Ast.Expression.Literal(true),
+                        new Ast.Expression.Binary("==", call(square, literal(2)), literal(4))
+                ), Arrays.asList(print(new Ast.Expression.Literal("yes"))), Arrays.asList()),
+                new Ast.Statement.If(new Ast.Expression.Binary("||",
+                        new Ast.Expression.Literal(false),
+                        new Ast.Expression.Group(new Ast.Expression.Binary(">", literal(1), literal(2)))
+                ), Arrays.asList(print(new Ast.Expression.Literal("no"))), Arrays.asList()),
+                new Ast.Statement.Return(call(square, literal(5)))
+        )), ast -> ast.setFunction(new Environment.Function("main", "main", Arrays.asList(), Environment.Type.INTEGER, args -> Environment.NIL)));
+        test(new Ast.Source(Arrays.asList(), Arrays.asList(squareFunction, main)), "9\nyes\n", 25);
+    }
+
+    @Test
+    void testDivideByZero() {
+        Ast.Source ast = new Parser(new Lexer("VAR z: Integer = 0;\nFUN main(): Integer DO\n    RETURN 1 / z;\nEND\n").lex()).parseSource();
+        new Analyzer(new Scope(null)).visit(ast);
+        Assertions.assertThrows(ArithmeticException.class, () -> ClassGenerator.execute(ast));
+    }
+
+    @Test
+    void testUnsupported() {
+        // FUN main(): Integer DO RETURN "a" < "b"; END
+        Ast.Source ast = new Ast.Source(Arrays.asList(), Arrays.asList(init(new Ast.Function("main", Arrays.asList(), Arrays.asList(), Optional.of("Integer"), Arrays.asList(
+                new Ast.Statement.Return(new Ast.Expression.Binary("<", new Ast.Expression.Literal("a"), new Ast.Expression.Literal("b")))
+        )), function -> function.setFunction(new Environment.Function("main", "main", Arrays.asList(), Environment.Type.INTEGER, args -> Environment.NIL)))));
+        Assertions.assertThrows(RuntimeException.class, () -> ClassGenerator.generate(ast));
+    }
+
+    private static void test(Ast.Source ast, String output, int expected) {
+        PrintStream sysout = System.out;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(out));
+        try {
+            Assertions.assertEquals(expected, ClassGenerator.execute(ast));
+        } finally {
+            System.setOut(sysout);
+        }
+        Assertions.assertEquals(output.replace("\n", System.lineSeparator()), out.toString());
+    }
+
+    private static Ast.Expression literal(int value) {
+        return new Ast.Expression.Literal(BigInteger.valueOf(value));
+    }
+
+    private static Ast.Expression access(String name, Environment.Type type) {
+        return init(new Ast.Expression.Access(Optional.empty(), name), ast -> ast.setVariable(variable(name, type)));
+    }
+
+    private static Ast.Expression call(Environment.Function function, Ast.Expression... arguments) {
+        return init(new Ast.Expression.Function(function.getName(), Arrays.asList(arguments)), ast -> ast.setFunction(function));
+    }
+
+    private static Ast.Statement print(Ast.Expression argument) {
+        return new Ast.Statement.Expression(call(PRINT, argument));
+    }
+
+    private static Environment.Variable variable(String name, Environment.Type type) {
+        return new Environment.Variable(name, name, type, true, Environment.NIL);
+    }
+
+    private static <T> T init(T value, Consumer<T> initializer) {
+        initializer.accept(value);
+        return value;
+    }
+
+}
@@ -0,0 +1,28 @@
+package plc.project.vm;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import plc.project.Ast;
+import plc.project.Lexer;
+import plc.project.Parser;
+import plc.project.Scope;
+
+import java.math.BigInteger;
+
+/**
+ * Tests specific to the virtual machine. Its results are checked against the
+ * interpreter's in {@code CompilingBackendTests}.
+ */
+final class VirtualMachineTests {
+
+    @Test
+    void testDeepRecursion() {
+        Ast.Source ast = new Parser(new Lexer("FUN sum(n: Integer): Integer DO\n"
+                + "    IF n == 0 DO\n        RETURN 0;\n    END\n"
+                + "    RETURN n + sum(n - 1);\n"
+                + "END\n"
+                + "FUN main(): Integer DO\n    RETURN sum(100000);\nEND\n").lex()).parseSource();
+        Assertions.assertEquals(BigInteger.valueOf(5000050000L), new VirtualMachine(new Scope(null)).execute(ast).getValue());
+    }
+
+}